@@ -0,0 +1,369 @@
+package ru.astrocode.sample;
+
+import android.annotation.TargetApi;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.v4.view.PagerAdapter;
+import android.support.v4.view.ViewPager;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ru.astrocode.ziv.ZIVImageSource;
+import ru.astrocode.ziv.ZIVImageSources;
+import ru.astrocode.ziv.ZIVImageView;
+import ru.astrocode.ziv.ZIVRegionTilePyramid;
+
+/**
+ * Benchmark host. Generates the test images, runs the scenarios one after another and prints one line per result:
+ * <pre>
+ * ZIVBENCH lib=1.0 api=28 model=Pixel_3 scenario=gestures run=1 frames=412 p50_ms=16.67 p90_ms=16.7 p99_ms=33.3 max_ms=50.0 janky=3 ...
+ * </pre>
+ * Started with
+ * <pre>
+ * adb shell am start -n ru.astrocode.sample/.ActivityBenchmark --es scenario all --ei size 8000 --ei pages 50 --ei runs 3
+ * adb logcat -s ZIVBench
+ * </pre>
+ * Scenarios: decode (decode throughput of the whole image and of the tiles), gestures (scripted double tap,
+ * pinch and fling on one view), pager (swiping through a view pager of many views) or all.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+public class ActivityBenchmark extends AppCompatActivity {
+    private static final String TAG = "ZIVBench";
+
+    static final String EXTRA_SCENARIO = "scenario";
+    static final String EXTRA_SIZE = "size";
+    static final String EXTRA_PAGES = "pages";
+    static final String EXTRA_RUNS = "runs";
+
+    private static final String SCENARIO_ALL = "all";
+    private static final String SCENARIO_DECODE = "decode";
+    private static final String SCENARIO_GESTURES = "gestures";
+    private static final String SCENARIO_PAGER = "pager";
+
+    private static final int DEFAULT_SIZE = 8000;
+    private static final int DEFAULT_PAGES = 50;
+    private static final int DEFAULT_RUNS = 3;
+
+    private static final int PAGE_SIZE = 3000;
+    private static final int PAGE_VARIANTS = 4;
+    private static final int MAX_DECODED_TILES = 64;
+    private static final long SWIPE_INTERVAL_MS = 400;
+    private static final long LOAD_POLL_MS = 50;
+
+    private String mScenario;
+    private int mSize, mPageCount, mRunCount;
+
+    private FrameLayout mContainer;
+    private final FrameStats mFrameStats = new FrameStats();
+
+    private File mImageFile;
+    private final File[] mPageFiles = new File[PAGE_VARIANTS];
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        final Intent intent = getIntent();
+        mScenario = intent.getStringExtra(EXTRA_SCENARIO);
+        if (mScenario == null) {
+            mScenario = SCENARIO_ALL;
+        }
+        mSize = intent.getIntExtra(EXTRA_SIZE, DEFAULT_SIZE);
+        mPageCount = intent.getIntExtra(EXTRA_PAGES, DEFAULT_PAGES);
+        mRunCount = intent.getIntExtra(EXTRA_RUNS, DEFAULT_RUNS);
+
+        mContainer = new FrameLayout(this);
+        setContentView(mContainer);
+
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            report("scenario=error reason=api_" + Build.VERSION.SDK_INT);
+            finish();
+            return;
+        }
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                generateImages();
+            }
+        }, "ZIVBenchGenerator").start();
+    }
+
+    private void generateImages() {
+        try {
+            long start = SystemClock.elapsedRealtime();
+            mImageFile = BenchmarkImages.generate(getCacheDir(), mSize, mSize * 3 / 4, 0);
+            reportImage("image", mImageFile, SystemClock.elapsedRealtime() - start);
+
+            start = SystemClock.elapsedRealtime();
+            for (int i = 0; i < PAGE_VARIANTS; i++) {
+                mPageFiles[i] = BenchmarkImages.generate(getCacheDir(), PAGE_SIZE, PAGE_SIZE * 4 / 3, i + 1);
+            }
+            reportImage("pages", mPageFiles[0], SystemClock.elapsedRealtime() - start);
+        } catch (IOException e) {
+            Log.e(TAG, e.getMessage(), e);
+            report("scenario=error reason=generate");
+            finish();
+            return;
+        }
+
+        if (isScenario(SCENARIO_DECODE)) {
+            runDecode();
+        }
+
+        runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                if (isScenario(SCENARIO_GESTURES)) {
+                    runGestures(1);
+                } else {
+                    runPagerOrFinish();
+                }
+            }
+        });
+    }
+
+    private boolean isScenario(String scenario) {
+        return SCENARIO_ALL.equals(mScenario) || scenario.equals(mScenario);
+    }
+
+    /**
+     * Decodes the whole image subsampled to the screen size and the full resolution tiles on a pool of decoders.
+     */
+    private void runDecode() {
+        final ZIVImageSource source = ZIVImageSources.fromFile(mImageFile.getPath());
+        final BitmapFactory.Options bounds = new BitmapFactory.Options();
+
+        try {
+            ZIVImageSources.decodeBounds(source, bounds);
+            final int width = bounds.outWidth, height = bounds.outHeight;
+
+            for (int run = 1; run <= mRunCount; run++) {
+                final BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inSampleSize = 1;
+                while (Math.max(width, height) / (options.inSampleSize * 2) >= getResources().getDisplayMetrics().heightPixels) {
+                    options.inSampleSize *= 2;
+                }
+
+                final long start = SystemClock.elapsedRealtime();
+                final Bitmap bitmap = source.decode(options);
+                final long time = Math.max(1, SystemClock.elapsedRealtime() - start);
+
+                report("scenario=decode_full run=" + run + " sample=" + options.inSampleSize + " ms=" + time +
+                        " mpix_per_s=" + Math.round((double) width * height / 1000 / time));
+                bitmap.recycle();
+
+                runTileDecode(source, run);
+            }
+        } catch (IOException | InterruptedException e) {
+            Log.e(TAG, e.getMessage(), e);
+            report("scenario=error reason=decode");
+        }
+    }
+
+    private void runTileDecode(ZIVImageSource source, int run) throws IOException, InterruptedException {
+        final ZIVRegionTilePyramid pyramid = ZIVRegionTilePyramid.open(source);
+        final int decoderCount = ZIVRegionTilePyramid.getDefaultDecoderCount();
+        final ExecutorService executor = Executors.newFixedThreadPool(decoderCount);
+
+        final int level = pyramid.getMaxLevel();
+        final int columns = pyramid.getColumnCount(level), rows = pyramid.getRowCount(level);
+        final int tileCount = Math.min(MAX_DECODED_TILES, columns * rows);
+        final AtomicInteger pixels = new AtomicInteger();
+
+        final long start = SystemClock.elapsedRealtime();
+
+        for (int i = 0; i < tileCount; i++) {
+            final int column = i % columns, row = i / columns;
+
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        final Bitmap tile = pyramid.decodeTile(level, column, row, new BitmapFactory.Options());
+                        pixels.addAndGet(tile.getWidth() * tile.getHeight());
+                    } catch (IOException e) {
+                        Log.e(TAG, e.getMessage(), e);
+                    }
+                }
+            });
+        }
+
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.HOURS);
+
+        final long time = Math.max(1, SystemClock.elapsedRealtime() - start);
+        pyramid.close();
+
+        report("scenario=decode_tiles run=" + run + " decoders=" + decoderCount + " tiles=" + tileCount +
+                " ms=" + time + " tiles_per_s=" + Math.round(tileCount * 1000.0 / time) +
+                " mpix_per_s=" + Math.round(pixels.get() / 1000.0 / time));
+    }
+
+    /**
+     * Double taps, pinches and flings the image, every run on a new view.
+     */
+    private void runGestures(final int run) {
+        if (run > mRunCount) {
+            runPagerOrFinish();
+            return;
+        }
+
+        mContainer.removeAllViews();
+
+        final ZIVImageView view = new ZIVImageView(this);
+        mContainer.addView(view, new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.MATCH_PARENT));
+
+        final long start = SystemClock.elapsedRealtime();
+        view.setImageSource(ZIVImageSources.fromFile(mImageFile.getPath()));
+
+        whenLoaded(view, new Runnable() {
+            @Override
+            public void run() {
+                final long loadTime = SystemClock.elapsedRealtime() - start;
+
+                final float w = view.getWidth(), h = view.getHeight();
+                final GestureScript script = new GestureScript(view)
+                        .doubleTap(w * 0.5f, h * 0.5f).pause(30)
+                        .fling(w * 0.8f, h * 0.7f, w * 0.2f, h * 0.3f, 6).pause(60)
+                        .pinch(w * 0.4f, h * 0.4f, w * 0.2f, w * 0.7f, 40).pause(30)
+                        .fling(w * 0.2f, h * 0.3f, w * 0.8f, h * 0.8f, 6).pause(60)
+                        .pinch(w * 0.5f, h * 0.5f, w * 0.7f, w * 0.2f, 40).pause(30)
+                        .doubleTap(w * 0.5f, h * 0.5f).pause(30);
+
+                mFrameStats.start();
+                script.run(new Runnable() {
+                    @Override
+                    public void run() {
+                        mFrameStats.stop();
+                        report("scenario=gestures run=" + run + " load_ms=" + loadTime +
+                                " script_frames=" + script.getFrameCount() +
+                                " view_frames=" + view.getPostedFrameCount() +
+                                " idle_transitions=" + view.getIdleTransitionCount() + " " + mFrameStats.format());
+
+                        runGestures(run + 1);
+                    }
+                });
+            }
+        });
+    }
+
+    private void runPagerOrFinish() {
+        if (isScenario(SCENARIO_PAGER)) {
+            runPager();
+        } else {
+            finishBenchmark();
+        }
+    }
+
+    /**
+     * Swipes through a view pager of image views. Retained bitmaps are disabled, so every page is decoded.
+     */
+    private void runPager() {
+        mContainer.removeAllViews();
+
+        final long retainedSize = ZIVImageView.getRetainedBitmapCacheSize();
+        ZIVImageView.setRetainedBitmapCacheSize(0);
+
+        final ViewPager pager = new ViewPager(this);
+        pager.setAdapter(new PagerAdapter() {
+            @Override
+            public int getCount() {
+                return mPageCount;
+            }
+
+            @Override
+            public boolean isViewFromObject(View view, Object object) {
+                return view == object;
+            }
+
+            @Override
+            public Object instantiateItem(ViewGroup container, int position) {
+                final ZIVImageView view = new ZIVImageView(container.getContext());
+                view.setImageSource(ZIVImageSources.fromFile(mPageFiles[position % PAGE_VARIANTS].getPath()));
+                container.addView(view);
+
+                return view;
+            }
+
+            @Override
+            public void destroyItem(ViewGroup container, int position, Object object) {
+                container.removeView((View) object);
+            }
+        });
+        mContainer.addView(pager, new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.MATCH_PARENT));
+
+        final long start = SystemClock.elapsedRealtime();
+        mFrameStats.start();
+
+        pager.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                final int next = pager.getCurrentItem() + 1;
+
+                if (next < mPageCount) {
+                    pager.setCurrentItem(next, true);
+                    pager.postDelayed(this, SWIPE_INTERVAL_MS);
+                    return;
+                }
+
+                mFrameStats.stop();
+                report("scenario=pager pages=" + mPageCount + " ms=" + (SystemClock.elapsedRealtime() - start) +
+                        " " + mFrameStats.format());
+
+                ZIVImageView.setRetainedBitmapCacheSize(retainedSize);
+                finishBenchmark();
+            }
+        }, SWIPE_INTERVAL_MS);
+    }
+
+    private void finishBenchmark() {
+        report("scenario=done");
+        finish();
+    }
+
+    /**
+     * Runs the task when the image of the view is decoded and laid out.
+     */
+    private static void whenLoaded(final ZIVImageView view, final Runnable task) {
+        view.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                if (view.getDrawable() != null && view.getViewportState() != null) {
+                    task.run();
+                } else {
+                    view.postDelayed(this, LOAD_POLL_MS);
+                }
+            }
+        }, LOAD_POLL_MS);
+    }
+
+    private void reportImage(String name, File file, long time) throws IOException {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        ZIVImageSources.decodeBounds(ZIVImageSources.fromFile(file.getPath()), options);
+
+        report("scenario=generate image=" + name + " width=" + options.outWidth + " height=" + options.outHeight +
+                " bytes=" + file.length() + " ms=" + time);
+    }
+
+    private static void report(String line) {
+        Log.i(TAG, "ZIVBENCH lib=" + ru.astrocode.ziv.BuildConfig.VERSION_NAME + " api=" + Build.VERSION.SDK_INT +
+                " model=" + Build.MODEL.replace(' ', '_') + " " + line);
+    }
+}
@@ -0,0 +1,92 @@
+package ru.astrocode.sample;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.LinearGradient;
+import android.graphics.Paint;
+import android.graphics.Shader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Generates the jpeg test images of the benchmarks.
+ * <p>
+ * Images are drawn into a RGB_565 bitmap, so their size is limited by the heap: a larger requested size
+ * is reduced keeping the aspect ratio and the actual size is read back from the file.
+ */
+final class BenchmarkImages {
+    private static final int JPEG_QUALITY = 90;
+    private static final int HEAP_DIVIDER = 3;
+    private static final int GRID_CELLS = 32;
+
+    private BenchmarkImages() {
+    }
+
+    /**
+     * Returns the generated image file, the file is reused if it exists.
+     *
+     * @param directory Directory of the images.
+     * @param width     Requested width(px).
+     * @param height    Requested height(px).
+     * @param variant   Variant of the colors, images of different variants don't share decoded bitmaps.
+     */
+    static File generate(File directory, int width, int height, int variant) throws IOException {
+        final double maxPixels = (double) Runtime.getRuntime().maxMemory() / HEAP_DIVIDER / 2;
+        final double reduce = Math.min(1, Math.sqrt(maxPixels / ((double) width * height)));
+
+        width = Math.max(1, (int) (width * reduce));
+        height = Math.max(1, (int) (height * reduce));
+
+        final File file = new File(directory, "ziv_bench_" + width + "x" + height + "_" + variant + ".jpg");
+        if (file.exists()) return file;
+
+        final Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+        final Canvas canvas = new Canvas(bitmap);
+        final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+        final int hue = variant * 67;
+        paint.setShader(new LinearGradient(0, 0, width, height,
+                Color.HSVToColor(new float[]{hue % 360, 0.6f, 0.9f}),
+                Color.HSVToColor(new float[]{(hue + 180) % 360, 0.6f, 0.4f}), Shader.TileMode.CLAMP));
+        canvas.drawPaint(paint);
+
+        // Fine details, so the jpeg and the decoders are not flattered by a smooth image.
+        paint.setShader(null);
+        paint.setColor(Color.WHITE);
+        paint.setStrokeWidth(Math.max(1, Math.min(width, height) / 2000f));
+
+        for (int i = 0; i <= GRID_CELLS * 4; i++) {
+            final float x = (float) width * i / (GRID_CELLS * 4);
+            final float y = (float) height * i / (GRID_CELLS * 4);
+
+            canvas.drawLine(x, 0, x, height, paint);
+            canvas.drawLine(0, y, width, y, paint);
+        }
+
+        paint.setColor(Color.BLACK);
+        for (int i = 0; i < GRID_CELLS; i++) {
+            canvas.drawLine(0, (float) height * i / GRID_CELLS, width, (float) height * (i + 1) / GRID_CELLS, paint);
+        }
+
+        final File tmp = new File(directory, file.getName() + ".tmp");
+        final FileOutputStream out = new FileOutputStream(tmp);
+
+        try {
+            if (!bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out)) {
+                throw new IOException("Cannot encode " + file);
+            }
+        } finally {
+            out.close();
+            bitmap.recycle();
+        }
+
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Cannot write " + file);
+        }
+
+        return file;
+    }
+}
@@ -0,0 +1,94 @@
+package ru.astrocode.sample;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.view.Choreographer;
+
+import java.util.Arrays;
+
+import ru.astrocode.ziv.ZIVImageView;
+import ru.astrocode.ziv.ZIVMemoryUsage;
+
+/**
+ * Records frame times and memory high-water marks while it is started.
+ * Memory is sampled every frame: the java heap and the memory retained by all {@link ZIVImageView} instances.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+final class FrameStats implements Choreographer.FrameCallback {
+    private static final long JANK_FRAME_NS = 17000000L;
+
+    private final ZIVMemoryUsage mUsage = new ZIVMemoryUsage();
+
+    private long[] mFrameTimes = new long[256];
+    private int mFrameCount;
+    private long mLastFrameTime;
+
+    private long mPeakHeapBytes, mPeakViewBytes;
+    private boolean mIsRunning;
+
+    void start() {
+        mFrameCount = 0;
+        mLastFrameTime = 0;
+        mPeakHeapBytes = 0;
+        mPeakViewBytes = 0;
+        mIsRunning = true;
+
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    void stop() {
+        mIsRunning = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!mIsRunning) return;
+
+        if (mLastFrameTime != 0) {
+            if (mFrameCount == mFrameTimes.length) {
+                mFrameTimes = Arrays.copyOf(mFrameTimes, mFrameCount * 2);
+            }
+            mFrameTimes[mFrameCount++] = frameTimeNanos - mLastFrameTime;
+        }
+        mLastFrameTime = frameTimeNanos;
+
+        final Runtime runtime = Runtime.getRuntime();
+        mPeakHeapBytes = Math.max(mPeakHeapBytes, runtime.totalMemory() - runtime.freeMemory());
+        mPeakViewBytes = Math.max(mPeakViewBytes, ZIVImageView.getProcessMemoryUsage(mUsage).getTotalBytes());
+
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    /**
+     * Returns the stats as key=value pairs.
+     */
+    String format() {
+        final long[] sorted = Arrays.copyOf(mFrameTimes, mFrameCount);
+        Arrays.sort(sorted);
+
+        int jankCount = 0;
+        for (long time : sorted) {
+            if (time > JANK_FRAME_NS) jankCount++;
+        }
+
+        return "frames=" + mFrameCount +
+                " p50_ms=" + formatMs(percentile(sorted, 50)) +
+                " p90_ms=" + formatMs(percentile(sorted, 90)) +
+                " p99_ms=" + formatMs(percentile(sorted, 99)) +
+                " max_ms=" + formatMs(sorted.length > 0 ? sorted[sorted.length - 1] : 0) +
+                " janky=" + jankCount +
+                " heap_peak_bytes=" + mPeakHeapBytes +
+                " ziv_peak_bytes=" + mPeakViewBytes;
+    }
+
+    private static long percentile(long[] sorted, int percent) {
+        if (sorted.length == 0) return 0;
+
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(sorted.length * percent / 100.0) - 1)];
+    }
+
+    private static String formatMs(long nanos) {
+        return String.valueOf(Math.round(nanos / 10000.0) / 100.0);
+    }
+}
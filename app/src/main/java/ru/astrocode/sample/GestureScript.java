@@ -0,0 +1,170 @@
+package ru.astrocode.sample;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.SystemClock;
+import android.view.InputDevice;
+import android.view.MotionEvent;
+import android.view.View;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scripted touch gestures dispatched to a view, one batch of events per frame.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+final class GestureScript {
+    private static final int DOUBLE_TAP_PAUSE_FRAMES = 4;
+
+    private final View mTarget;
+
+    /**
+     * Events of every frame, every event is {action, pointer count, x0, y0, x1, y1}.
+     */
+    private final List<List<float[]>> mFrames = new ArrayList<>();
+
+    private int mFrameIndex;
+    private long mDownTime;
+    private Runnable mOnDone;
+
+    GestureScript(View target) {
+        mTarget = target;
+    }
+
+    GestureScript doubleTap(float x, float y) {
+        tap(x, y);
+        pause(DOUBLE_TAP_PAUSE_FRAMES);
+        tap(x, y);
+
+        return this;
+    }
+
+    GestureScript tap(float x, float y) {
+        addFrame().add(event(MotionEvent.ACTION_DOWN, x, y));
+        addFrame().add(event(MotionEvent.ACTION_UP, x, y));
+
+        return this;
+    }
+
+    /**
+     * Two finger pinch around the point, from the start distance between fingers to the end distance.
+     */
+    GestureScript pinch(float x, float y, float startSpan, float endSpan, int frames) {
+        List<float[]> frame = addFrame();
+        frame.add(event(MotionEvent.ACTION_DOWN, x - startSpan * 0.5f, y));
+        frame.add(pinchEvent(MotionEvent.ACTION_POINTER_DOWN | (1 << MotionEvent.ACTION_POINTER_INDEX_SHIFT),
+                x, y, startSpan));
+
+        for (int i = 1; i <= frames; i++) {
+            addFrame().add(pinchEvent(MotionEvent.ACTION_MOVE, x, y, startSpan + (endSpan - startSpan) * i / frames));
+        }
+
+        frame = addFrame();
+        frame.add(pinchEvent(MotionEvent.ACTION_POINTER_UP | (1 << MotionEvent.ACTION_POINTER_INDEX_SHIFT),
+                x, y, endSpan));
+        frame.add(event(MotionEvent.ACTION_UP, x - endSpan * 0.5f, y));
+
+        return this;
+    }
+
+    /**
+     * Fast single finger swipe that ends with a fling.
+     */
+    GestureScript fling(float fromX, float fromY, float toX, float toY, int frames) {
+        addFrame().add(event(MotionEvent.ACTION_DOWN, fromX, fromY));
+
+        for (int i = 1; i <= frames; i++) {
+            addFrame().add(event(MotionEvent.ACTION_MOVE, fromX + (toX - fromX) * i / frames,
+                    fromY + (toY - fromY) * i / frames));
+        }
+
+        addFrame().add(event(MotionEvent.ACTION_UP, toX, toY));
+
+        return this;
+    }
+
+    GestureScript pause(int frames) {
+        for (int i = 0; i < frames; i++) {
+            addFrame();
+        }
+
+        return this;
+    }
+
+    int getFrameCount() {
+        return mFrames.size();
+    }
+
+    /**
+     * Dispatches the script, the callback is run after the last frame.
+     */
+    void run(Runnable onDone) {
+        mOnDone = onDone;
+        mFrameIndex = 0;
+
+        mTarget.postOnAnimation(mFrameTask);
+    }
+
+    private final Runnable mFrameTask = new Runnable() {
+        @Override
+        public void run() {
+            if (mFrameIndex == mFrames.size()) {
+                mOnDone.run();
+                return;
+            }
+
+            for (float[] values : mFrames.get(mFrameIndex++)) {
+                dispatch(values);
+            }
+
+            mTarget.postOnAnimation(this);
+        }
+    };
+
+    private void dispatch(float[] values) {
+        final int action = (int) values[0];
+        final int pointerCount = (int) values[1];
+        final long time = SystemClock.uptimeMillis();
+
+        if (action == MotionEvent.ACTION_DOWN) {
+            mDownTime = time;
+        }
+
+        final MotionEvent.PointerProperties[] properties = new MotionEvent.PointerProperties[pointerCount];
+        final MotionEvent.PointerCoords[] coords = new MotionEvent.PointerCoords[pointerCount];
+
+        for (int i = 0; i < pointerCount; i++) {
+            properties[i] = new MotionEvent.PointerProperties();
+            properties[i].id = i;
+            properties[i].toolType = MotionEvent.TOOL_TYPE_FINGER;
+
+            coords[i] = new MotionEvent.PointerCoords();
+            coords[i].x = values[2 + i * 2];
+            coords[i].y = values[3 + i * 2];
+            coords[i].pressure = 1;
+            coords[i].size = 1;
+        }
+
+        final MotionEvent event = MotionEvent.obtain(mDownTime, time, action, pointerCount, properties, coords,
+                0, 0, 1, 1, 0, 0, InputDevice.SOURCE_TOUCHSCREEN, 0);
+
+        mTarget.dispatchTouchEvent(event);
+        event.recycle();
+    }
+
+    private List<float[]> addFrame() {
+        final List<float[]> frame = new ArrayList<>(2);
+        mFrames.add(frame);
+
+        return frame;
+    }
+
+    private static float[] event(int action, float x, float y) {
+        return new float[]{action, 1, x, y};
+    }
+
+    private static float[] pinchEvent(int action, float x, float y, float span) {
+        return new float[]{action, 2, x - span * 0.5f, y, x + span * 0.5f, y};
+    }
+}
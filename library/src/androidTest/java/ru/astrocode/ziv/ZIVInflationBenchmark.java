@@ -0,0 +1,100 @@
+package ru.astrocode.ziv;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Measures construction time and retained heap size of {@link ZIVImageView} instances, as they are created
+ * for the cells of a grid and after the gesture machinery has been created by the first touch.
+ * Results are logged with the ZIVBenchmark tag.
+ */
+public class ZIVInflationBenchmark extends AndroidTestCase {
+    private static final String TAG = "ZIVBenchmark";
+
+    private static final int VIEW_COUNT = 500;
+
+    public void testConstruction() throws Exception {
+        measure(false);
+    }
+
+    public void testConstructionWithGestures() throws Exception {
+        measure(true);
+    }
+
+    private void measure(final boolean initGestures) throws Exception {
+        final ZIVImageView[] views = new ZIVImageView[VIEW_COUNT];
+        final long[] time = new long[1];
+
+        // Warm up class loading and resources.
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                new ZIVImageView(getContext()).initGestures();
+            }
+        });
+
+        final long memoryBefore = getUsedMemory();
+
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                final long startTime = System.nanoTime();
+
+                for (int i = 0; i < VIEW_COUNT; i++) {
+                    views[i] = new ZIVImageView(getContext());
+
+                    if (initGestures) {
+                        views[i].initGestures();
+                    }
+                }
+
+                time[0] = System.nanoTime() - startTime;
+            }
+        });
+
+        final long memoryAfter = getUsedMemory();
+
+        for (int i = 0; i < VIEW_COUNT; i++) {
+            assertNotNull(views[i]);
+        }
+
+        Log.i(TAG, "inflation gestures=" + initGestures + " views=" + VIEW_COUNT +
+                " ns_per_view=" + time[0] / VIEW_COUNT +
+                " bytes_per_view=" + (memoryAfter - memoryBefore) / VIEW_COUNT);
+    }
+
+    private static long getUsedMemory() {
+        final Runtime runtime = Runtime.getRuntime();
+
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            System.runFinalization();
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Gesture detectors need a looper, so views are created on the main thread.
+     */
+    private static void runOnMainThread(final Runnable runnable) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    runnable.run();
+                } finally {
+                    latch.countDown();
+                }
+            }
+        });
+
+        latch.await();
+    }
+}
@@ -0,0 +1,128 @@
+package ru.astrocode.ziv;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.LinearGradient;
+import android.graphics.Paint;
+import android.graphics.Shader;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Measures tile decoding throughput of {@link ZIVRegionTilePyramid} on a large synthetic jpeg
+ * with a single region decoder and with the default decoder pool.
+ * Results are logged with the ZIVBenchmark tag.
+ */
+public class ZIVRegionDecodeBenchmark extends AndroidTestCase {
+    private static final String TAG = "ZIVBenchmark";
+
+    private static final int IMAGE_SIZE = 4096;
+    private static final int ROUND_COUNT = 3;
+
+    private File mImageFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        mImageFile = new File(getContext().getCacheDir(), "ziv_region_benchmark.jpg");
+
+        if (!mImageFile.isFile()) {
+            final Bitmap bitmap = Bitmap.createBitmap(IMAGE_SIZE, IMAGE_SIZE, Bitmap.Config.RGB_565);
+            final Canvas canvas = new Canvas(bitmap);
+            final Paint paint = new Paint();
+
+            paint.setShader(new LinearGradient(0, 0, IMAGE_SIZE, IMAGE_SIZE, Color.BLUE, Color.YELLOW, Shader.TileMode.CLAMP));
+            canvas.drawPaint(paint);
+
+            paint.setShader(null);
+            paint.setColor(Color.BLACK);
+            for (int i = 0; i < IMAGE_SIZE; i += 32) {
+                canvas.drawLine(i, 0, IMAGE_SIZE - i, IMAGE_SIZE, paint);
+                canvas.drawCircle(i, (i * 7) % IMAGE_SIZE, 24, paint);
+            }
+
+            final FileOutputStream stream = new FileOutputStream(mImageFile);
+            try {
+                bitmap.compress(Bitmap.CompressFormat.JPEG, 90, stream);
+            } finally {
+                stream.close();
+            }
+            bitmap.recycle();
+        }
+    }
+
+    public void testSingleDecoder() throws Exception {
+        measure(1);
+    }
+
+    public void testDecoderPool() throws Exception {
+        measure(ZIVRegionTilePyramid.getDefaultDecoderCount());
+    }
+
+    private void measure(int decoderCount) throws Exception {
+        final ZIVRegionTilePyramid pyramid = ZIVRegionTilePyramid.open(
+                ZIVImageSources.fromFile(mImageFile.getPath()), 256, decoderCount);
+
+        try {
+            final int level = pyramid.getMaxLevel();
+            final ExecutorService executor = ZIVDecodeExecutor.get();
+
+            long bestTime = Long.MAX_VALUE;
+            int tileCount = 0;
+
+            for (int round = 0; round < ROUND_COUNT; round++) {
+                final List<Future<Bitmap>> tiles = new ArrayList<>();
+                final long startTime = System.nanoTime();
+
+                for (int row = 0; row < pyramid.getRowCount(level); row++) {
+                    for (int column = 0; column < pyramid.getColumnCount(level); column++) {
+                        tiles.add(executor.submit(new ATIDecodeTask(pyramid, level, column, row)));
+                    }
+                }
+
+                for (int i = 0; i < tiles.size(); i++) {
+                    final Bitmap tile = tiles.get(i).get();
+                    assertNotNull(tile);
+                    tile.recycle();
+                }
+
+                bestTime = Math.min(bestTime, System.nanoTime() - startTime);
+                tileCount = tiles.size();
+            }
+
+            Log.i(TAG, "region_decode decoders=" + decoderCount + " threads=" + ZIVDecodeExecutor.getThreadCount() +
+                    " tiles=" + tileCount + " time_ms=" + bestTime / 1000000L +
+                    " tiles_per_s=" + Math.round(tileCount * 1e9 / bestTime));
+        } finally {
+            pyramid.close();
+        }
+    }
+
+    private static final class ATIDecodeTask implements Callable<Bitmap> {
+        private final ZIVTilePyramid mPyramid;
+        private final int mLevel, mColumn, mRow;
+
+        ATIDecodeTask(ZIVTilePyramid pyramid, int level, int column, int row) {
+            mPyramid = pyramid;
+            mLevel = level;
+            mColumn = column;
+            mRow = row;
+        }
+
+        @Override
+        public Bitmap call() throws Exception {
+            return mPyramid.decodeTile(mLevel, mColumn, mRow, new BitmapFactory.Options());
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package ru.astrocode.ziv;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Movie;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.RectF;
+import android.graphics.drawable.Animatable;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.ArrayDeque;
+
+/**
+ * Drawable of an animated {@link Movie}, e.g. a gif. Frames are rendered in background into a ring of
+ * {@link #RING_SIZE} reusable bitmaps, so the memory doesn't depend on the count of frames. The bitmaps are
+ * subsampled to the current scale, like the pages of {@link ZIVStripDrawable}.
+ * <p>
+ * Playback is paused while the drawable is not visible, i.e. while the view is detached or hidden.
+ */
+
+final class ZIVAnimatedDrawable extends Drawable implements Animatable, ZIVViewportDrawable {
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Shown frame, frame being rendered and the frame shown before, which may still be uploaded by the render thread.
+     */
+    private static final int RING_SIZE = 3;
+
+    /**
+     * Movie doesn't expose frame delays, the animation is sampled with this interval(ms).
+     */
+    private static final int FRAME_INTERVAL = 20;
+
+    private final Movie mMovie;
+    private final int mWidth, mHeight, mDuration;
+
+    private final ArrayDeque<ATIFrame> mFreeFrames = new ArrayDeque<>(RING_SIZE);
+    private ATIFrame mShownFrame, mReadyFrame;
+    private boolean mIsRendering;
+
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final RectF mFrameRect = new RectF();
+
+    private int mSampleSize;
+
+    private boolean mIsRunning;
+    private long mStartTime, mPausedTime;
+    private long mNextFrameTime;
+
+    private volatile boolean mIsReleased;
+
+    /**
+     * Renders the first frame, call it in background.
+     *
+     * @param movie      Movie with a non zero duration.
+     * @param sampleSize Initial sample size of the frames.
+     */
+    ZIVAnimatedDrawable(Movie movie, int sampleSize) {
+        mMovie = movie;
+        mWidth = movie.width();
+        mHeight = movie.height();
+        mDuration = movie.duration();
+        mSampleSize = sampleSize;
+
+        for (int i = 0; i < RING_SIZE; i++) {
+            mFreeFrames.add(new ATIFrame());
+        }
+
+        mShownFrame = mFreeFrames.poll();
+        render(mShownFrame, 0, sampleSize);
+
+        mIsRunning = true;
+    }
+
+    /**
+     * Returns true if the movie has no alpha.
+     */
+    boolean isOpaque() {
+        return mMovie.isOpaque();
+    }
+
+    @Override
+    public void setViewport(RectF visibleRect, float scale) {
+        mSampleSize = ZIVImageView.calculateSampleSize(mWidth, mHeight, Math.max(1, (int) Math.ceil(mWidth * scale)),
+                Math.max(1, (int) Math.ceil(mHeight * scale)), ZIVImageView.MAX_SOURCE_BITMAP_SIZE);
+    }
+
+    /**
+     * Adds the memory held by the frames to the usage.
+     */
+    void addMemoryUsage(ZIVMemoryUsage usage) {
+        addFrameBytes(usage, mShownFrame);
+        addFrameBytes(usage, mReadyFrame);
+
+        for (ATIFrame frame : mFreeFrames) {
+            addFrameBytes(usage, frame);
+        }
+    }
+
+    /**
+     * Stops playback and drops the frames that are not shown.
+     */
+    void release() {
+        mIsReleased = true;
+        stop();
+
+        mReadyFrame = null;
+        mFreeFrames.clear();
+    }
+
+    @Override
+    public void start() {
+        if (mIsRunning || mIsReleased) return;
+
+        mIsRunning = true;
+        resume();
+    }
+
+    @Override
+    public void stop() {
+        if (!mIsRunning) return;
+
+        pause();
+        mIsRunning = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return mIsRunning;
+    }
+
+    @Override
+    public boolean setVisible(boolean visible, boolean restart) {
+        final boolean changed = super.setVisible(visible, restart);
+
+        if (mIsRunning) {
+            if (visible) {
+                if (restart) {
+                    mPausedTime = 0;
+                }
+                resume();
+            } else {
+                pause();
+            }
+        }
+
+        return changed;
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return mWidth;
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return mHeight;
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        if (mShownFrame == null || mShownFrame.mBitmap == null) return;
+
+        mFrameRect.set(getBounds());
+        canvas.drawBitmap(mShownFrame.mBitmap, null, mFrameRect, mPaint);
+
+        // The first draw after the drawable is set or shown again.
+        if (mIsRunning && mStartTime == 0 && isVisible()) {
+            resume();
+        }
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        mPaint.setAlpha(alpha);
+        invalidateSelf();
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter colorFilter) {
+        mPaint.setColorFilter(colorFilter);
+        invalidateSelf();
+    }
+
+    @Override
+    public void setFilterBitmap(boolean filter) {
+        mPaint.setFilterBitmap(filter);
+        invalidateSelf();
+    }
+
+    @Override
+    public boolean isFilterBitmap() {
+        return mPaint.isFilterBitmap();
+    }
+
+    @Override
+    public int getOpacity() {
+        return mMovie.isOpaque() && mPaint.getAlpha() == 255 ? PixelFormat.OPAQUE : PixelFormat.TRANSLUCENT;
+    }
+
+    private void resume() {
+        if (mStartTime != 0 || getCallback() == null) return;
+
+        final long now = SystemClock.uptimeMillis();
+
+        mStartTime = now - mPausedTime;
+        mNextFrameTime = now + FRAME_INTERVAL;
+
+        requestFrame();
+        scheduleSelf(mFrameTask, mNextFrameTime);
+    }
+
+    private void pause() {
+        if (mStartTime == 0) return;
+
+        mPausedTime = SystemClock.uptimeMillis() - mStartTime;
+        mStartTime = 0;
+
+        unscheduleSelf(mFrameTask);
+    }
+
+    /**
+     * Shows the frame rendered for this time and requests the next one. A frame that is not ready in time
+     * is shown on the next tick.
+     */
+    private final Runnable mFrameTask = new Runnable() {
+        @Override
+        public void run() {
+            if (mStartTime == 0) return;
+
+            if (mReadyFrame != null) {
+                if (mShownFrame != null) {
+                    mFreeFrames.add(mShownFrame);
+                }
+                mShownFrame = mReadyFrame;
+                mReadyFrame = null;
+
+                invalidateSelf();
+            }
+
+            final long now = SystemClock.uptimeMillis();
+            mNextFrameTime = Math.max(mNextFrameTime + FRAME_INTERVAL, now + 1);
+
+            requestFrame();
+            scheduleSelf(this, mNextFrameTime);
+        }
+    };
+
+    private void requestFrame() {
+        if (mIsRendering || mReadyFrame != null || mFreeFrames.isEmpty() || mIsReleased) return;
+
+        mIsRendering = true;
+
+        final ATIFrame frame = mFreeFrames.poll();
+        final int time = (int) ((mNextFrameTime - mStartTime) % mDuration);
+        final int sampleSize = mSampleSize;
+
+        ZIVDecodeExecutor.get().execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!mIsReleased) {
+                    render(frame, time, sampleSize);
+                }
+
+                sMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onFrameRendered(frame);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onFrameRendered(ATIFrame frame) {
+        mIsRendering = false;
+
+        if (mIsReleased) return;
+
+        mReadyFrame = frame;
+    }
+
+    /**
+     * Renders the movie at the time into the frame. Only one frame is rendered at a time, so the movie
+     * is never used by two threads at once.
+     */
+    private void render(ATIFrame frame, int time, int sampleSize) {
+        final int width = Math.max(1, mWidth / sampleSize), height = Math.max(1, mHeight / sampleSize);
+
+        if (frame.mBitmap == null || frame.mBitmap.getWidth() != width || frame.mBitmap.getHeight() != height) {
+            frame.mBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            frame.mCanvas = new Canvas(frame.mBitmap);
+        } else {
+            frame.mBitmap.eraseColor(0);
+        }
+
+        mMovie.setTime(time);
+
+        final int saveCount = frame.mCanvas.save();
+        frame.mCanvas.scale((float) width / mWidth, (float) height / mHeight);
+        mMovie.draw(frame.mCanvas, 0, 0);
+        frame.mCanvas.restoreToCount(saveCount);
+    }
+
+    private static void addFrameBytes(ZIVMemoryUsage usage, ATIFrame frame) {
+        if (frame != null && frame.mBitmap != null) {
+            usage.mDisplayedBitmapBytes += ZIVBitmapConfigs.getByteCount(frame.mBitmap);
+        }
+    }
+
+    private static final class ATIFrame {
+        Bitmap mBitmap;
+        Canvas mCanvas;
+    }
+}
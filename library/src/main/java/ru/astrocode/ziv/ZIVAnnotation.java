@@ -0,0 +1,80 @@
+package ru.astrocode.ziv;
+
+import android.graphics.Canvas;
+import android.graphics.RectF;
+
+/**
+ * Item of the {@link ZIVAnnotationLayer}. Bounds are set in image(drawable) coordinates.
+ */
+
+public abstract class ZIVAnnotation {
+    private final RectF mBounds = new RectF();
+
+    private float mMinZoom = 0f, mMaxZoom = Float.MAX_VALUE;
+
+    ZIVAnnotationLayer mLayer;
+
+    public ZIVAnnotation(float left, float top, float right, float bottom) {
+        mBounds.set(left, top, right, bottom);
+    }
+
+    /**
+     * Returns bounds in image coordinates.
+     *
+     * @return Bounds.
+     */
+    public final RectF getBounds() {
+        return mBounds;
+    }
+
+    /**
+     * Moves annotation to the new bounds.
+     *
+     * @param left   Left(image coordinates).
+     * @param top    Top(image coordinates).
+     * @param right  Right(image coordinates).
+     * @param bottom Bottom(image coordinates).
+     */
+    public final void setBounds(float left, float top, float right, float bottom) {
+        mBounds.set(left, top, right, bottom);
+
+        if (mLayer != null) {
+            mLayer.update(this);
+        }
+    }
+
+    /**
+     * Sets zoom range in which annotation is drawn.
+     *
+     * @param minZoom Minimum zoom value.
+     * @param maxZoom Maximum zoom value.
+     */
+    public final void setZoomRange(float minZoom, float maxZoom) {
+        mMinZoom = minZoom;
+        mMaxZoom = maxZoom;
+
+        if (mLayer != null) {
+            mLayer.invalidate();
+        }
+    }
+
+    public final float getMinZoom() {
+        return mMinZoom;
+    }
+
+    public final float getMaxZoom() {
+        return mMaxZoom;
+    }
+
+    final boolean isVisibleAtZoom(float zoom) {
+        return zoom >= mMinZoom && zoom <= mMaxZoom;
+    }
+
+    /**
+     * Draws annotation. Canvas is already transformed to image coordinates.
+     *
+     * @param canvas Canvas.
+     * @param scale  Screen pixels per image pixel, allows to keep size of markers constant on the screen.
+     */
+    public abstract void draw(Canvas canvas, float scale);
+}
@@ -0,0 +1,139 @@
+package ru.astrocode.ziv;
+
+import android.graphics.Canvas;
+import android.graphics.RectF;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Annotations drawn on top of the {@link ZIVImageView} image.
+ * <p>
+ * Annotations are kept in a quadtree, only the ones that intersect the visible part of the image
+ * and whose zoom range contains the current zoom are drawn.
+ */
+
+public final class ZIVAnnotationLayer {
+    private final ZIVImageView mView;
+
+    private final ArrayList<ZIVAnnotation> mAnnotations = new ArrayList<>();
+    private ZIVQuadTree<ZIVAnnotation> mTree = new ZIVQuadTree<>(0, 0, 0, 0);
+
+    private final ArrayList<ZIVAnnotation> mVisibleAnnotations = new ArrayList<>();
+
+    ZIVAnnotationLayer(ZIVImageView view) {
+        mView = view;
+    }
+
+    /**
+     * Adds annotation to the layer.
+     *
+     * @param annotation Annotation.
+     */
+    public void add(ZIVAnnotation annotation) {
+        if (annotation.mLayer != null) {
+            annotation.mLayer.remove(annotation);
+        }
+
+        annotation.mLayer = this;
+        mAnnotations.add(annotation);
+
+        insert(annotation);
+        invalidate();
+    }
+
+    /**
+     * Removes annotation from the layer.
+     *
+     * @param annotation Annotation.
+     */
+    public void remove(ZIVAnnotation annotation) {
+        if (annotation.mLayer != this) return;
+
+        annotation.mLayer = null;
+        mAnnotations.remove(annotation);
+
+        mTree.remove(annotation);
+        invalidate();
+    }
+
+    /**
+     * Removes all annotations.
+     */
+    public void clear() {
+        for (ZIVAnnotation annotation : mAnnotations) {
+            annotation.mLayer = null;
+        }
+
+        mAnnotations.clear();
+        mTree.clear();
+
+        invalidate();
+    }
+
+    /**
+     * Returns count of annotations.
+     *
+     * @return Count of annotations.
+     */
+    public int size() {
+        return mAnnotations.size();
+    }
+
+    /**
+     * Finds annotations that intersect the rect.
+     *
+     * @param left   Left(image coordinates).
+     * @param top    Top(image coordinates).
+     * @param right  Right(image coordinates).
+     * @param bottom Bottom(image coordinates).
+     * @param out    List to add found annotations.
+     */
+    public void query(float left, float top, float right, float bottom, List<ZIVAnnotation> out) {
+        mTree.query(left, top, right, bottom, out);
+    }
+
+    void update(ZIVAnnotation annotation) {
+        insert(annotation);
+        invalidate();
+    }
+
+    void invalidate() {
+        mView.invalidate();
+    }
+
+    /**
+     * Rebuilds the quadtree for the new image size.
+     */
+    void setImageSize(float width, float height) {
+        mTree = new ZIVQuadTree<>(0, 0, width, height);
+
+        for (ZIVAnnotation annotation : mAnnotations) {
+            insert(annotation);
+        }
+    }
+
+    /**
+     * Draws visible annotations. Canvas has to be transformed to image coordinates.
+     */
+    void draw(Canvas canvas, RectF visibleRect, float zoom, float scale) {
+        if (mAnnotations.isEmpty()) return;
+
+        mTree.query(visibleRect.left, visibleRect.top, visibleRect.right, visibleRect.bottom, mVisibleAnnotations);
+
+        for (int i = 0; i < mVisibleAnnotations.size(); i++) {
+            final ZIVAnnotation annotation = mVisibleAnnotations.get(i);
+
+            if (annotation.isVisibleAtZoom(zoom)) {
+                annotation.draw(canvas, scale);
+            }
+        }
+
+        mVisibleAnnotations.clear();
+    }
+
+    private void insert(ZIVAnnotation annotation) {
+        final RectF bounds = annotation.getBounds();
+        mTree.insert(annotation, bounds.left, bounds.top, bounds.right, bounds.bottom);
+    }
+}
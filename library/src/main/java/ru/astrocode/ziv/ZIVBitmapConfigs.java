@@ -0,0 +1,95 @@
+package ru.astrocode.ziv;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+/**
+ * Selection of the bitmap configs by {@link ZIVImageView.DecodePolicy}.
+ */
+
+final class ZIVBitmapConfigs {
+    private static final int API_HARDWARE_BITMAPS = 26;
+    private static final String MIME_TYPE_JPEG = "image/jpeg";
+
+    /**
+     * Hardware bitmap config or null if the platform doesn't support it.
+     */
+    static final Bitmap.Config HARDWARE = findHardwareConfig();
+
+    private ZIVBitmapConfigs() {
+    }
+
+    /**
+     * Returns the config the image is decoded to.
+     *
+     * @param policy   Decode policy.
+     * @param isOpaque True if the image has no alpha.
+     * @param isRegion True if the image is decoded by regions.
+     * @return Config.
+     */
+    static Bitmap.Config getConfig(ZIVImageView.DecodePolicy policy, boolean isOpaque, boolean isRegion) {
+        switch (policy) {
+            case HARDWARE:
+                if (!isRegion && HARDWARE != null) {
+                    return HARDWARE;
+                }
+                return isOpaque ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+            case SAVE_MEMORY:
+                return isOpaque ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+            default:
+                return Bitmap.Config.ARGB_8888;
+        }
+    }
+
+    /**
+     * Returns true if the images of the mime type never have alpha.
+     */
+    static boolean isOpaqueMimeType(String mimeType) {
+        return MIME_TYPE_JPEG.equals(mimeType);
+    }
+
+    static boolean isHardware(Bitmap bitmap) {
+        return HARDWARE != null && bitmap.getConfig() == HARDWARE;
+    }
+
+    /**
+     * Returns the size of the bitmap pixels in the java heap, hardware bitmaps take none.
+     */
+    static long getHeapByteCount(Bitmap bitmap) {
+        if (bitmap.isRecycled() || isHardware(bitmap)) return 0;
+
+        return (long) bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    /**
+     * Returns the size of the bitmap pixels, hardware bitmaps are counted as ARGB_8888.
+     */
+    static long getByteCount(Bitmap bitmap) {
+        if (bitmap.isRecycled()) return 0;
+
+        if (isHardware(bitmap)) {
+            return (long) bitmap.getWidth() * bitmap.getHeight() * 4;
+        }
+
+        return (long) bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    /**
+     * Returns the heap memory saved by the bitmap compared to the same bitmap in ARGB_8888.
+     */
+    static long getSavedByteCount(Bitmap bitmap) {
+        if (bitmap.isRecycled()) return 0;
+
+        return Math.max(0, (long) bitmap.getWidth() * bitmap.getHeight() * 4 - getHeapByteCount(bitmap));
+    }
+
+    private static Bitmap.Config findHardwareConfig() {
+        if (Build.VERSION.SDK_INT < API_HARDWARE_BITMAPS) return null;
+
+        try {
+            return Bitmap.Config.valueOf("HARDWARE");
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package ru.astrocode.ziv;
+
+import android.content.res.ColorStateList;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffColorFilter;
+import android.graphics.drawable.BitmapDrawable;
+
+/**
+ * {@link BitmapDrawable} that keeps its tint. The tint is applied by {@link BitmapDrawable#draw}, not by the paint,
+ * so {@link ZIVImageView} draws the visible part of the bitmap with {@link #getDrawPaint()} instead.
+ */
+
+class ZIVBitmapDrawable extends BitmapDrawable {
+    private ColorStateList mTint;
+    private PorterDuff.Mode mTintMode = PorterDuff.Mode.SRC_IN;
+
+    private final Paint mTintPaint = new Paint();
+    private PorterDuffColorFilter mTintFilter;
+    private int mTintFilterColor;
+    private PorterDuff.Mode mTintFilterMode;
+
+    ZIVBitmapDrawable(Resources resources, Bitmap bitmap) {
+        super(resources, bitmap);
+    }
+
+    /**
+     * Returns the paint the bitmap is drawn with, the tint is applied like {@link BitmapDrawable#draw} does it.
+     */
+    Paint getDrawPaint() {
+        final Paint paint = getPaint();
+
+        // BitmapDrawable ignores the tint if the paint has a color filter.
+        if (mTint == null || paint.getColorFilter() != null) return paint;
+
+        final int color = mTint.getColorForState(getState(), Color.TRANSPARENT);
+
+        if (mTintFilter == null || color != mTintFilterColor || mTintMode != mTintFilterMode) {
+            mTintFilter = new PorterDuffColorFilter(color, mTintMode);
+            mTintFilterColor = color;
+            mTintFilterMode = mTintMode;
+        }
+
+        mTintPaint.set(paint);
+        mTintPaint.setColorFilter(mTintFilter);
+
+        return mTintPaint;
+    }
+
+    @Override
+    public void setTintList(ColorStateList tint) {
+        super.setTintList(tint);
+        mTint = tint;
+    }
+
+    @Override
+    public void setTintMode(PorterDuff.Mode tintMode) {
+        super.setTintMode(tintMode);
+        mTintMode = tintMode != null ? tintMode : PorterDuff.Mode.SRC_IN;
+    }
+}
@@ -0,0 +1,182 @@
+package ru.astrocode.ziv;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Second tier of the tile cache. Tiles evicted from the decoded tiles cache are kept jpeg encoded
+ * in direct byte buffers outside the java heap, the least recently used tiles are dropped when
+ * the size of the buffers exceeds the budget. Thread-safe.
+ * <p>
+ * The cache is shared by all tiled drawables of the process, so the budget doesn't grow with the count of views.
+ * Tiles are keyed by the pyramid key and the tile key, they outlive the drawables like the retained bitmaps.
+ */
+
+final class ZIVCompressedTileCache {
+    private static final int QUALITY = 90;
+    private static final int DEFAULT_MEMORY_DIVIDER = 8;
+
+    private static ZIVCompressedTileCache sInstance;
+
+    private final LinkedHashMap<ATIKey, ByteBuffer> mTiles = new LinkedHashMap<>(16, 0.75f, true);
+    private final HashMap<String, Long> mPyramidSizes = new HashMap<>();
+
+    private long mMaxSize = Runtime.getRuntime().maxMemory() / DEFAULT_MEMORY_DIVIDER;
+    private long mSize;
+
+    private int mHitCount, mMissCount;
+
+    private ZIVCompressedTileCache() {
+    }
+
+    static synchronized ZIVCompressedTileCache get() {
+        if (sInstance == null) {
+            sInstance = new ZIVCompressedTileCache();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Sets byte budget of the cache, 0 drops all tiles and disables the cache.
+     */
+    synchronized void setMaxSize(long maxSize) {
+        mMaxSize = maxSize;
+        trimToSize();
+    }
+
+    synchronized long getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * Returns the size of the encoded tiles in bytes.
+     */
+    synchronized long getSize() {
+        return mSize;
+    }
+
+    /**
+     * Returns the size of the encoded tiles of the pyramid in bytes.
+     */
+    synchronized long getSize(String pyramidKey) {
+        final Long size = mPyramidSizes.get(pyramidKey);
+
+        return size != null ? size : 0;
+    }
+
+    synchronized boolean contains(String pyramidKey, long key) {
+        return mTiles.containsKey(new ATIKey(pyramidKey, key));
+    }
+
+    synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * Encodes the tile and stores it. Tiles with alpha are not stored.
+     */
+    void put(String pyramidKey, long key, Bitmap tile) {
+        if (tile.hasAlpha() || tile.isRecycled()) return;
+
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream(tile.getWidth() * tile.getHeight() / 4);
+
+        if (!tile.compress(Bitmap.CompressFormat.JPEG, QUALITY, stream)) return;
+
+        final byte[] data = stream.toByteArray();
+        if (data.length > getMaxSize()) return;
+
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+        buffer.put(data);
+        buffer.flip();
+
+        synchronized (this) {
+            final ByteBuffer previous = mTiles.put(new ATIKey(pyramidKey, key), buffer);
+            if (previous != null) {
+                addSize(pyramidKey, -previous.capacity());
+            }
+            addSize(pyramidKey, buffer.capacity());
+
+            trimToSize();
+        }
+    }
+
+    /**
+     * Decodes the stored tile.
+     *
+     * @return Tile or null if the tile is not stored.
+     */
+    Bitmap get(String pyramidKey, long key, BitmapFactory.Options options) {
+        final ByteBuffer buffer;
+
+        synchronized (this) {
+            buffer = mTiles.get(new ATIKey(pyramidKey, key));
+
+            if (buffer == null) {
+                mMissCount++;
+                return null;
+            }
+            mHitCount++;
+        }
+
+        return BitmapFactory.decodeStream(new ZIVByteBufferInputStream(buffer), null, options);
+    }
+
+    private void addSize(String pyramidKey, long size) {
+        mSize += size;
+
+        final long pyramidSize = getSize(pyramidKey) + size;
+
+        if (pyramidSize > 0) {
+            mPyramidSizes.put(pyramidKey, pyramidSize);
+        } else {
+            mPyramidSizes.remove(pyramidKey);
+        }
+    }
+
+    private void trimToSize() {
+        final Iterator<Map.Entry<ATIKey, ByteBuffer>> iterator = mTiles.entrySet().iterator();
+
+        while (mSize > mMaxSize && iterator.hasNext()) {
+            final Map.Entry<ATIKey, ByteBuffer> entry = iterator.next();
+
+            addSize(entry.getKey().mPyramidKey, -entry.getValue().capacity());
+            iterator.remove();
+        }
+    }
+
+    private static final class ATIKey {
+        final String mPyramidKey;
+        final long mKey;
+
+        ATIKey(String pyramidKey, long key) {
+            mPyramidKey = pyramidKey;
+            mKey = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ATIKey)) return false;
+
+            final ATIKey other = (ATIKey) o;
+
+            return mKey == other.mKey && mPyramidKey.equals(other.mPyramidKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * mPyramidKey.hashCode() + (int) (mKey ^ (mKey >>> 32));
+        }
+    }
+}
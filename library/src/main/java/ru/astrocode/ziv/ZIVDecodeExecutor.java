@@ -0,0 +1,54 @@
+package ru.astrocode.ziv;
+
+import android.os.Process;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared background executor of the decoding tasks.
+ */
+
+final class ZIVDecodeExecutor {
+    private static final int KEEP_ALIVE_SECONDS = 30;
+
+    private static ThreadPoolExecutor sExecutor;
+
+    private ZIVDecodeExecutor() {
+    }
+
+    static synchronized ExecutorService get() {
+        if (sExecutor == null) {
+            final int threadCount = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+            sExecutor = new ThreadPoolExecutor(threadCount, threadCount, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ATIThreadFactory());
+            sExecutor.allowCoreThreadTimeOut(true);
+        }
+        return sExecutor;
+    }
+
+    static synchronized int getThreadCount() {
+        get();
+        return sExecutor.getMaximumPoolSize();
+    }
+
+    private static final class ATIThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "ZIVDecoder #" + mCount.incrementAndGet());
+        }
+    }
+}
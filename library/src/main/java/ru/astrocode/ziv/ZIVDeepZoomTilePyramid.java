@@ -0,0 +1,141 @@
+package ru.astrocode.ziv;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Xml;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Deep Zoom tile pyramid stored in a local directory:
+ * <pre>
+ * name.dzi                            XML descriptor
+ * name_files/level/column_row.format  tiles
+ * </pre>
+ * Missing tile files are treated as missing tiles.
+ */
+
+public final class ZIVDeepZoomTilePyramid extends ZIVTilePyramid {
+    private final static String sErrorInvalidDescriptor = "Invalid Deep Zoom descriptor: ";
+
+    private static final String TAG_IMAGE = "Image";
+    private static final String TAG_SIZE = "Size";
+
+    private final File mTilesDirectory;
+    private final String mFormat;
+
+    private ZIVDeepZoomTilePyramid(int width, int height, int tileSize, int overlap, File tilesDirectory, String format) {
+        super(width, height, tileSize, overlap);
+
+        mTilesDirectory = tilesDirectory;
+        mFormat = format;
+    }
+
+    /**
+     * Opens the pyramid by its descriptor. Tiles are read from the name_files directory next to the descriptor.
+     *
+     * @param descriptor File of the .dzi descriptor.
+     * @return Pyramid.
+     * @throws IOException If the descriptor cannot be read or has invalid format.
+     */
+    public static ZIVDeepZoomTilePyramid open(File descriptor) throws IOException {
+        String name = descriptor.getName();
+        if (name.lastIndexOf('.') > 0) {
+            name = name.substring(0, name.lastIndexOf('.'));
+        }
+
+        final File tilesDirectory = new File(descriptor.getParentFile(), name + "_files");
+
+        final InputStream stream = new FileInputStream(descriptor);
+
+        try {
+            final XmlPullParser parser = Xml.newPullParser();
+            parser.setInput(stream, null);
+
+            String format = null;
+            int tileSize = 0, overlap = -1, width = 0, height = 0;
+
+            for (int event = parser.next(); event != XmlPullParser.END_DOCUMENT; event = parser.next()) {
+                if (event != XmlPullParser.START_TAG) continue;
+
+                if (TAG_IMAGE.equals(parser.getName())) {
+                    format = parser.getAttributeValue(null, "Format");
+                    tileSize = parseInt(parser.getAttributeValue(null, "TileSize"), descriptor);
+                    overlap = parseInt(parser.getAttributeValue(null, "Overlap"), descriptor);
+                } else if (TAG_SIZE.equals(parser.getName())) {
+                    width = parseInt(parser.getAttributeValue(null, "Width"), descriptor);
+                    height = parseInt(parser.getAttributeValue(null, "Height"), descriptor);
+                }
+            }
+
+            if (format == null || tileSize < 1 || overlap < 0 || width < 1 || height < 1) {
+                throw new IOException(sErrorInvalidDescriptor + descriptor);
+            }
+
+            return new ZIVDeepZoomTilePyramid(width, height, tileSize, overlap, tilesDirectory, format);
+        } catch (XmlPullParserException e) {
+            throw new IOException(sErrorInvalidDescriptor + descriptor, e);
+        } finally {
+            ZIVImageSources.closeQuietly(stream);
+        }
+    }
+
+    @Override
+    public boolean isOpaque() {
+        return mFormat.equalsIgnoreCase("jpg") || mFormat.equalsIgnoreCase("jpeg");
+    }
+
+    @Override
+    public boolean hasEncodedTiles() {
+        return true;
+    }
+
+    @Override
+    public String getKey() {
+        return "dzi:" + mTilesDirectory.getPath();
+    }
+
+    /**
+     * Returns the file of the tile.
+     *
+     * @param level  Level.
+     * @param column Column.
+     * @param row    Row.
+     * @return Tile file, it may not exist.
+     */
+    public File getTileFile(int level, int column, int row) {
+        return new File(new File(mTilesDirectory, Integer.toString(level)), column + "_" + row + "." + mFormat);
+    }
+
+    @Override
+    public Bitmap decodeTile(int level, int column, int row, BitmapFactory.Options options) throws IOException {
+        if (level < 0 || level > getMaxLevel() || column < 0 || row < 0 ||
+                column >= getColumnCount(level) || row >= getRowCount(level)) {
+            return null;
+        }
+
+        final File file = getTileFile(level, column, row);
+
+        if (!file.isFile()) return null;
+
+        return ZIVImageSources.checkDecoded(BitmapFactory.decodeFile(file.getPath(), options), options, file.getPath());
+    }
+
+    private static int parseInt(String value, File descriptor) throws IOException {
+        if (value == null) {
+            throw new IOException(sErrorInvalidDescriptor + descriptor);
+        }
+
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IOException(sErrorInvalidDescriptor + descriptor, e);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package ru.astrocode.ziv;
+
+import android.support.v4.view.ViewCompat;
+import android.view.View;
+
+import java.util.ArrayList;
+
+/**
+ * Single animation frame callback of {@link ZIVImageView}. Animations are started and stopped here instead of
+ * posting their own runnables. The callback is posted only while at least one animation is active, when the last one
+ * ends or is stopped the callback is removed, so nothing is posted or invalidated while the image is at rest.
+ */
+
+final class ZIVFrameScheduler implements Runnable {
+
+    interface Animation {
+
+        /**
+         * Advances the animation by one frame.
+         *
+         * @return True if the animation needs the next frame.
+         */
+        boolean doFrame();
+    }
+
+    private final View mView;
+
+    private final ArrayList<Animation> mAnimations = new ArrayList<>(3);
+    private final ArrayList<Animation> mFrameAnimations = new ArrayList<>(3);
+
+    private Animation mCurrentAnimation;
+    private boolean mIsCurrentRestarted;
+
+    private boolean mIsPosted;
+
+    private long mPostedFrameCount, mIdleTransitionCount;
+
+    ZIVFrameScheduler(View view) {
+        mView = view;
+    }
+
+    /**
+     * Starts the animation from the next frame, does nothing if it is already active.
+     */
+    void start(Animation animation) {
+        if (animation == mCurrentAnimation) {
+            mIsCurrentRestarted = true;
+        }
+
+        if (!mAnimations.contains(animation)) {
+            mAnimations.add(animation);
+        }
+
+        if (!mIsPosted && mCurrentAnimation == null) {
+            post();
+        }
+    }
+
+    void stop(Animation animation) {
+        if (mAnimations.remove(animation) && mCurrentAnimation == null) {
+            onAnimationsRemoved();
+        }
+    }
+
+    void stopAll() {
+        if (mAnimations.isEmpty()) return;
+
+        mAnimations.clear();
+
+        if (mCurrentAnimation == null) {
+            onAnimationsRemoved();
+        }
+    }
+
+    boolean isActive(Animation animation) {
+        return animation != null && mAnimations.contains(animation);
+    }
+
+    boolean isIdle() {
+        return mAnimations.isEmpty();
+    }
+
+    long getPostedFrameCount() {
+        return mPostedFrameCount;
+    }
+
+    long getIdleTransitionCount() {
+        return mIdleTransitionCount;
+    }
+
+    @Override
+    public void run() {
+        mIsPosted = false;
+
+        mFrameAnimations.addAll(mAnimations);
+
+        for (int i = 0; i < mFrameAnimations.size(); i++) {
+            final Animation animation = mFrameAnimations.get(i);
+
+            // Stopped by an animation that has run before it in this frame.
+            if (!mAnimations.contains(animation)) continue;
+
+            mCurrentAnimation = animation;
+            mIsCurrentRestarted = false;
+
+            final boolean isActive = animation.doFrame();
+
+            mCurrentAnimation = null;
+
+            if (!isActive && !mIsCurrentRestarted) {
+                mAnimations.remove(animation);
+            }
+        }
+
+        mFrameAnimations.clear();
+
+        if (!mAnimations.isEmpty()) {
+            post();
+        } else {
+            mIdleTransitionCount++;
+        }
+    }
+
+    private void post() {
+        mIsPosted = true;
+        mPostedFrameCount++;
+
+        ViewCompat.postOnAnimation(mView, this);
+    }
+
+    private void onAnimationsRemoved() {
+        if (mAnimations.isEmpty() && mIsPosted) {
+            mIsPosted = false;
+            mView.removeCallbacks(this);
+
+            mIdleTransitionCount++;
+        }
+    }
+}
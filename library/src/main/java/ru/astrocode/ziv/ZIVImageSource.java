@@ -0,0 +1,34 @@
+package ru.astrocode.ziv;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+
+import java.io.IOException;
+
+/**
+ * Encoded image that {@link ZIVImageView} decodes by itself.
+ * <p>
+ * Implementations hand the encoded data to the decoders without copying it into intermediate java arrays
+ * whenever the platform allows it. Instances for files, assets, content uris, file descriptors and byte buffers
+ * are created by {@link ZIVImageSources}.
+ */
+
+public interface ZIVImageSource {
+
+    /**
+     * Returns key that identifies the encoded data, used by caches.
+     */
+    String getKey();
+
+    /**
+     * Decodes the image. With {@link BitmapFactory.Options#inJustDecodeBounds} only the header is read.
+     */
+    Bitmap decode(BitmapFactory.Options options) throws IOException;
+
+    /**
+     * Creates a new region decoder for the image.
+     */
+    BitmapRegionDecoder newRegionDecoder() throws IOException;
+
+}
@@ -0,0 +1,392 @@
+package ru.astrocode.ziv;
+
+import android.content.ContentResolver;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Movie;
+import android.net.Uri;
+
+import java.io.Closeable;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Factory of the {@link ZIVImageSource} implementations.
+ */
+
+public final class ZIVImageSources {
+    private final static String sErrorDecodeFailed = "Image cannot be decoded: ";
+    private final static String sErrorInvalidArgumentKey = "Key cannot be null.";
+
+    private static final AtomicLong sUniqueKeys = new AtomicLong();
+
+    private ZIVImageSources() {
+    }
+
+    /**
+     * Creates source for the image file. Decoders read the file directly through its descriptor.
+     *
+     * @param path Path of the file.
+     * @return Image source.
+     */
+    public static ZIVImageSource fromFile(String path) {
+        return new FileSource(path);
+    }
+
+    /**
+     * Creates source for the asset. Decoders read the asset through the native asset stream.
+     *
+     * @param assetManager Asset manager.
+     * @param name         Asset name.
+     * @return Image source.
+     */
+    public static ZIVImageSource fromAsset(AssetManager assetManager, String name) {
+        return new AssetSource(assetManager, name);
+    }
+
+    /**
+     * Creates source for the content uri. Decoders read the file descriptor of the uri if the provider
+     * supports it, otherwise the input stream.
+     *
+     * @param contentResolver Content resolver.
+     * @param uri             Uri.
+     * @return Image source.
+     */
+    public static ZIVImageSource fromUri(ContentResolver contentResolver, Uri uri) {
+        return new UriSource(contentResolver, uri);
+    }
+
+    /**
+     * Creates source for the file descriptor. Descriptor must be seekable and stays owned by the caller.
+     * The source has a key of its own, so its bitmap is not retained across configuration changes,
+     * see {@link #fromFileDescriptor(FileDescriptor, String)}.
+     *
+     * @param fileDescriptor File descriptor.
+     * @return Image source.
+     */
+    public static ZIVImageSource fromFileDescriptor(FileDescriptor fileDescriptor) {
+        return new FileDescriptorSource(fileDescriptor, null);
+    }
+
+    /**
+     * Creates source for the file descriptor. Descriptor must be seekable and stays owned by the caller.
+     *
+     * @param fileDescriptor File descriptor.
+     * @param key            Key that identifies the content of the descriptor and stays the same when the source
+     *                       is recreated, e.g. after a configuration change.
+     * @return Image source.
+     */
+    public static ZIVImageSource fromFileDescriptor(FileDescriptor fileDescriptor, String key) {
+        if (key == null) {
+            throw new IllegalArgumentException(sErrorInvalidArgumentKey);
+        }
+        return new FileDescriptorSource(fileDescriptor, key);
+    }
+
+    /**
+     * Creates source for the encoded image in the buffer(heap, direct or memory mapped).
+     * Content between position and limit of the buffer is used, the buffer itself is not modified.
+     * The source has a key of its own, so its bitmap is not retained across configuration changes,
+     * see {@link #fromByteBuffer(ByteBuffer, String)}.
+     *
+     * @param buffer Buffer.
+     * @return Image source.
+     */
+    public static ZIVImageSource fromByteBuffer(ByteBuffer buffer) {
+        return new ByteBufferSource(buffer, null);
+    }
+
+    /**
+     * Creates source for the encoded image in the buffer(heap, direct or memory mapped).
+     * Content between position and limit of the buffer is used, the buffer itself is not modified.
+     *
+     * @param buffer Buffer.
+     * @param key    Key that identifies the content of the buffer and stays the same when the source
+     *               is recreated, e.g. after a configuration change.
+     * @return Image source.
+     */
+    public static ZIVImageSource fromByteBuffer(ByteBuffer buffer, String key) {
+        if (key == null) {
+            throw new IllegalArgumentException(sErrorInvalidArgumentKey);
+        }
+        return new ByteBufferSource(buffer, key);
+    }
+
+    /**
+     * Returns true if the key of the source identifies its content beyond the lifetime of the source object,
+     * so its decoded bitmap may be retained and shown for a recreated source.
+     */
+    static boolean hasStableKey(ZIVImageSource source) {
+        if (source instanceof FileDescriptorSource) {
+            return ((FileDescriptorSource) source).mHasStableKey;
+        } else if (source instanceof ByteBufferSource) {
+            return ((ByteBufferSource) source).mHasStableKey;
+        }
+        return source != null;
+    }
+
+    /**
+     * Returns a key that is never given to another source in the process.
+     */
+    private static String newUniqueKey(String prefix) {
+        return prefix + "#" + sUniqueKeys.incrementAndGet();
+    }
+
+    /**
+     * Reads dimensions and mime type of the image from the header without decoding pixels.
+     *
+     * @param source  Image source.
+     * @param options Options to store outWidth, outHeight and outMimeType.
+     * @return False if the header cannot be read.
+     * @throws IOException If source cannot be read.
+     */
+    public static boolean decodeBounds(ZIVImageSource source, BitmapFactory.Options options) throws IOException {
+        options.inJustDecodeBounds = true;
+        options.outWidth = -1;
+        options.outHeight = -1;
+
+        source.decode(options);
+
+        options.inJustDecodeBounds = false;
+
+        return options.outWidth > 0 && options.outHeight > 0;
+    }
+
+    /**
+     * Decodes the animated image, e.g. a gif.
+     *
+     * @return Movie or null if the source cannot be read as a stream or is not a movie.
+     */
+    static Movie decodeMovie(ZIVImageSource source) throws IOException {
+        final InputStream stream;
+
+        if (source instanceof FileSource) {
+            stream = new FileInputStream(((FileSource) source).mPath);
+        } else if (source instanceof AssetSource) {
+            stream = ((AssetSource) source).mAssetManager.open(((AssetSource) source).mName, AssetManager.ACCESS_RANDOM);
+        } else if (source instanceof UriSource) {
+            stream = ((UriSource) source).mContentResolver.openInputStream(((UriSource) source).mUri);
+        } else if (source instanceof ByteBufferSource) {
+            stream = new ZIVByteBufferInputStream(((ByteBufferSource) source).mBuffer);
+        } else {
+            // File descriptors are not read as streams: it would move their offset.
+            return null;
+        }
+
+        if (stream == null) return null;
+
+        try {
+            return Movie.decodeStream(stream);
+        } finally {
+            closeQuietly(stream);
+        }
+    }
+
+    static Bitmap checkDecoded(Bitmap bitmap, BitmapFactory.Options options, String key) throws IOException {
+        if (bitmap == null && (options == null || !options.inJustDecodeBounds)) {
+            throw new IOException(sErrorDecodeFailed + key);
+        }
+        return bitmap;
+    }
+
+    static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static final class FileSource implements ZIVImageSource {
+        private final String mPath;
+
+        FileSource(String path) {
+            mPath = path;
+        }
+
+        @Override
+        public String getKey() {
+            return "file:" + mPath;
+        }
+
+        @Override
+        public Bitmap decode(BitmapFactory.Options options) throws IOException {
+            final FileInputStream stream = new FileInputStream(mPath);
+            try {
+                return checkDecoded(BitmapFactory.decodeFileDescriptor(stream.getFD(), null, options), options, getKey());
+            } finally {
+                closeQuietly(stream);
+            }
+        }
+
+        @Override
+        public BitmapRegionDecoder newRegionDecoder() throws IOException {
+            return BitmapRegionDecoder.newInstance(mPath, false);
+        }
+    }
+
+    private static final class AssetSource implements ZIVImageSource {
+        private final AssetManager mAssetManager;
+        private final String mName;
+
+        AssetSource(AssetManager assetManager, String name) {
+            mAssetManager = assetManager;
+            mName = name;
+        }
+
+        @Override
+        public String getKey() {
+            return "asset:" + mName;
+        }
+
+        @Override
+        public Bitmap decode(BitmapFactory.Options options) throws IOException {
+            final InputStream stream = mAssetManager.open(mName, AssetManager.ACCESS_RANDOM);
+            try {
+                return checkDecoded(BitmapFactory.decodeStream(stream, null, options), options, getKey());
+            } finally {
+                closeQuietly(stream);
+            }
+        }
+
+        @Override
+        public BitmapRegionDecoder newRegionDecoder() throws IOException {
+            final InputStream stream = mAssetManager.open(mName, AssetManager.ACCESS_RANDOM);
+            try {
+                return BitmapRegionDecoder.newInstance(stream, false);
+            } finally {
+                closeQuietly(stream);
+            }
+        }
+    }
+
+    private static final class UriSource implements ZIVImageSource {
+        private final ContentResolver mContentResolver;
+        private final Uri mUri;
+
+        UriSource(ContentResolver contentResolver, Uri uri) {
+            mContentResolver = contentResolver;
+            mUri = uri;
+        }
+
+        @Override
+        public String getKey() {
+            return mUri.toString();
+        }
+
+        @Override
+        public Bitmap decode(BitmapFactory.Options options) throws IOException {
+            final AssetFileDescriptor descriptor = mContentResolver.openAssetFileDescriptor(mUri, "r");
+            if (descriptor == null) {
+                throw new IOException(sErrorDecodeFailed + getKey());
+            }
+
+            try {
+                if (descriptor.getStartOffset() == 0) {
+                    return checkDecoded(BitmapFactory.decodeFileDescriptor(descriptor.getFileDescriptor(), null, options), options, getKey());
+                }
+
+                final InputStream stream = descriptor.createInputStream();
+                try {
+                    return checkDecoded(BitmapFactory.decodeStream(stream, null, options), options, getKey());
+                } finally {
+                    closeQuietly(stream);
+                }
+            } finally {
+                descriptor.close();
+            }
+        }
+
+        @Override
+        public BitmapRegionDecoder newRegionDecoder() throws IOException {
+            final AssetFileDescriptor descriptor = mContentResolver.openAssetFileDescriptor(mUri, "r");
+            if (descriptor == null) {
+                throw new IOException(sErrorDecodeFailed + getKey());
+            }
+
+            try {
+                if (descriptor.getStartOffset() == 0) {
+                    return BitmapRegionDecoder.newInstance(descriptor.getFileDescriptor(), false);
+                }
+
+                final InputStream stream = descriptor.createInputStream();
+                try {
+                    return BitmapRegionDecoder.newInstance(stream, false);
+                } finally {
+                    closeQuietly(stream);
+                }
+            } finally {
+                descriptor.close();
+            }
+        }
+    }
+
+    private static final class FileDescriptorSource implements ZIVImageSource {
+        private final FileDescriptor mFileDescriptor;
+        private final String mKey;
+        final boolean mHasStableKey;
+
+        FileDescriptorSource(FileDescriptor fileDescriptor, String key) {
+            mFileDescriptor = fileDescriptor;
+            mHasStableKey = key != null;
+            mKey = key != null ? "fd:" + key : newUniqueKey("fd:");
+        }
+
+        @Override
+        public String getKey() {
+            return mKey;
+        }
+
+        @Override
+        public Bitmap decode(BitmapFactory.Options options) throws IOException {
+            return checkDecoded(BitmapFactory.decodeFileDescriptor(mFileDescriptor, null, options), options, getKey());
+        }
+
+        @Override
+        public BitmapRegionDecoder newRegionDecoder() throws IOException {
+            return BitmapRegionDecoder.newInstance(mFileDescriptor, false);
+        }
+    }
+
+    private static final class ByteBufferSource implements ZIVImageSource {
+        private final ByteBuffer mBuffer;
+        private final String mKey;
+        final boolean mHasStableKey;
+
+        ByteBufferSource(ByteBuffer buffer, String key) {
+            mBuffer = buffer.slice();
+            mHasStableKey = key != null;
+            mKey = key != null ? "buffer:" + key : newUniqueKey("buffer:");
+        }
+
+        @Override
+        public String getKey() {
+            return mKey;
+        }
+
+        @Override
+        public Bitmap decode(BitmapFactory.Options options) throws IOException {
+            if (mBuffer.hasArray()) {
+                return checkDecoded(BitmapFactory.decodeByteArray(mBuffer.array(), mBuffer.arrayOffset(),
+                        mBuffer.remaining(), options), options, getKey());
+            }
+            return checkDecoded(BitmapFactory.decodeStream(new ZIVByteBufferInputStream(mBuffer), null, options), options, getKey());
+        }
+
+        @Override
+        public BitmapRegionDecoder newRegionDecoder() throws IOException {
+            if (mBuffer.hasArray()) {
+                return BitmapRegionDecoder.newInstance(mBuffer.array(), mBuffer.arrayOffset(), mBuffer.remaining(), false);
+            }
+            return BitmapRegionDecoder.newInstance(new ZIVByteBufferInputStream(mBuffer), false);
+        }
+    }
+}
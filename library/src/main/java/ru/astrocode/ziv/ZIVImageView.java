@@ -2,12 +2,24 @@ package ru.astrocode.ziv;
 
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
 import android.graphics.Matrix;
+import android.graphics.Movie;
 import android.graphics.PointF;
+import android.graphics.Rect;
 import android.graphics.RectF;
+import android.graphics.drawable.Animatable;
+import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
+import android.os.Build;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.os.SystemClock;
 import android.support.annotation.Nullable;
+import android.support.v4.view.MotionEventCompat;
 import android.support.v4.view.NestedScrollingChild;
 import android.support.v4.view.NestedScrollingChildHelper;
 import android.support.v4.view.ScaleGestureDetectorCompat;
@@ -16,6 +28,10 @@ import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.AppCompatImageView;
 import android.util.AttributeSet;
 import android.util.DisplayMetrics;
+import android.util.Log;
+import android.view.Gravity;
+import android.view.InputDevice;
+import android.view.KeyEvent;
 import android.view.MotionEvent;
 import android.view.ScaleGestureDetector;
 import android.view.VelocityTracker;
@@ -24,7 +40,13 @@ import android.view.animation.AccelerateDecelerateInterpolator;
 import android.view.animation.Interpolator;
 import android.widget.OverScroller;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
 
 import static android.widget.ImageView.ScaleType.FIT_CENTER;
 import static android.widget.ImageView.ScaleType.MATRIX;
@@ -36,12 +58,22 @@ import static android.widget.ImageView.ScaleType.MATRIX;
  */
 
 public class ZIVImageView extends AppCompatImageView implements ScrollingView, NestedScrollingChild {
+    private final static String TAG = "ZIVImageView";
+
     private final static String sErrorInvalidArgumentDuration = "Minimum animation duration value cannot be less than 0.";
     private final static String sErrorInvalidArgumentOverScrollDistance = "Minimum over scroll distance value cannot be less than 0.";
     private final static String sErrorInvalidArgumentMinScale = "Minimum scale value cannot be less than 0 or more than 1.";
     private final static String sErrorInvalidArgumentMinOverScale = "Minimum over scale value cannot be less than 0 or more than 1.";
     private final static String sErrorInvalidArgumentMaxScale = "Maximum scale value cannot be less than 1.";
     private final static String sErrorInvalidArgumentMaxOverScale = "Maximum over scale value cannot be less than 0";
+    private final static String sErrorInvalidArgumentMotionQuality = "Motion quality cannot be null.";
+    private final static String sErrorInvalidArgumentDecodePolicy = "Decode policy cannot be null.";
+    private final static String sErrorInvalidImageSource = "Image source header cannot be read: ";
+    private final static String sErrorInvalidArgumentCompressedTileCacheSize = "Compressed tile cache size value cannot be less than 0.";
+    private final static String sErrorInvalidArgumentRetainedBitmapCacheSize = "Retained bitmap cache size value cannot be less than 0.";
+    private final static String sErrorInvalidArgumentImageRotation = "Image rotation value has to be a multiple of 90.";
+    private final static String sErrorInvalidArgumentStripSources = "Image strip sources cannot be null or empty.";
+    private final static String sErrorInvalidArgumentStripOrientation = "Image strip orientation cannot be null.";
 
     private static final int DEFAULT_DOUBLE_TAP_SCALE_ANIMATION_DURATION = 300;
     private static final int DEFAULT_OVER_SCALE_ANIMATION_DURATION = 300;
@@ -53,6 +85,26 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
     private static final float DEFAULT_MAX_OVER_SCALE = 0.25f;
     private static final float DEFAULT_MIN_OVER_SCALE = 0.25f;
 
+    private static final MotionQuality DEFAULT_MOTION_QUALITY = MotionQuality.FULL;
+    private static final DecodePolicy DEFAULT_DECODE_POLICY = DecodePolicy.FULL_COLOR;
+
+    static final int MAX_SOURCE_BITMAP_SIZE = 4096;
+    private static final String MIME_TYPE_GIF = "image/gif";
+    private static final int TILE_CACHE_MEMORY_DIVIDER = 8;
+    private static final int ZOOM_INFO_SIZE_ESTIMATE = 32;
+
+    private static final float WHEEL_ZOOM_STEP = 1.1f;
+    private static final float KEY_ZOOM_STEP = 1.25f;
+    private static final float WHEEL_SCROLL_FRACTION = 0.1f;
+    private static final float KEY_SCROLL_FRACTION = 0.1f;
+
+    private static final float ROTATION_SLOP_DEGREES = 10f;
+    private static final float ROTATION_SNAP_DEGREES = 5f;
+
+    private static final WeakHashMap<ZIVImageView, Boolean> sInstances = new WeakHashMap<>();
+
+    private static ZIVTracer sTracer;
+
     private ArrayList<ATIZoomInfo> mLastZooms = new ArrayList<>();
     private ATIZoomInfo mCurrentZoom;
 
@@ -87,20 +139,91 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
 
     private State mCurrentState = State.DISABLE;
 
+    public enum MotionQuality {FULL, NO_FILTERING, COARSE_MIPMAP}
+
+    public enum QualityTier {FULL, FAST}
+
+    /**
+     * Bitmap configs of the images decoded by the view. FULL_COLOR decodes everything to ARGB_8888,
+     * SAVE_MEMORY decodes opaque images to RGB_565, HARDWARE decodes fully decoded images to hardware bitmaps
+     * where supported and everything else as SAVE_MEMORY.
+     */
+    public enum DecodePolicy {FULL_COLOR, SAVE_MEMORY, HARDWARE}
+
+    /**
+     * Axis the pages of an image strip are laid out along.
+     */
+    public enum StripOrientation {VERTICAL, HORIZONTAL}
+
+    private DecodePolicy mDecodePolicy = DEFAULT_DECODE_POLICY;
+
+    private MotionQuality mMotionQuality;
+    private QualityTier mCurrentQualityTier = QualityTier.FULL;
+    // Not initialized here, it is saved when the super constructor sets the drawable.
+    private boolean mIsDrawableFiltered;
+
+    private final long[] mQualityTierTime = new long[QualityTier.values().length];
+    private long mQualityTierStartTime = SystemClock.uptimeMillis();
+
+    private boolean mMipmapEnabled;
+    private ZIVMipmapChain mMipmapChain;
+    private ATIMipmapLoader mMipmapLoader;
+
+    private ZIVImageSource mImageSource;
+    private ATISourceLoader mSourceLoader;
+    private ATIStripLoader mStripLoader;
+    private int mImageSourceWidth, mImageSourceHeight;
+
+
+    private ZIVAnnotationLayer mAnnotationLayer;
+    private final RectF mVisibleImageRect = new RectF();
+    private final Rect mVisibleBitmapRect = new Rect();
+    private final RectF mVisibleDrawRect = new RectF();
+
     private boolean mIsInit;
 
     private ScaleType mNormalScaleType;
-    private Matrix mNormalMatrix, mDrawMatrix = new Matrix(), mCurrentMatrix = new Matrix();
+    private Matrix mNormalMatrix, mDrawMatrix = new Matrix();
+    private final ZIVViewport mViewport = new ZIVViewport();
+    private final Matrix mInverseDrawMatrix = new Matrix();
+    private final Matrix mImageToViewMatrix = new Matrix(), mViewToImageMatrix = new Matrix();
 
-    private final float[] mNormalMatrixValues = new float[9], mCurrentMatrixValues = new float[9];
+    private boolean mIsMappingValid;
+    private int mMappingScrollX, mMappingScrollY;
+
+    private final float[] mNormalMatrixValues = new float[9];
+    private final float[] mDrawMatrixValues = new float[9];
 
     private ScaleGestureDetector mScaleGestureDetector;
 
     private ATISmoothScale mSmoothScaleTask;
     private ATIFling mFlingTask;
 
+    private final ZIVFrameScheduler mFrameScheduler = new ZIVFrameScheduler(this);
+
     private NestedScrollingChildHelper mChildHelper;
+    private boolean mIsNestedScrollingEnabled;
+
+    private int mImageRotation;
+    private boolean mIsRotationEnabled;
+    private float mLastRotationAngle, mRotationSlop;
+    private boolean mIsRotating;
+
+    private float mPendingZoomFactor = 1f, mPendingZoomPivotX, mPendingZoomPivotY;
+    private float mPendingScrollX, mPendingScrollY;
     private ZIVEventListener mEventListener;
+    private final List<ZIVViewportListener> mViewportListeners = new ArrayList<>();
+
+    private final float[] mTmpPoint = new float[2];
+
+    /**
+     * Item id of a view that is not bound.
+     */
+    public static final long NO_ITEM_ID = -1;
+
+    private ZIVViewportState mPendingViewportState;
+    private ZIVViewportStateCache mViewportStateCache;
+    private long mItemId = NO_ITEM_ID;
 
     public ZIVImageView(Context context) {
         this(context, null);
@@ -113,6 +236,10 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
     public ZIVImageView(Context context, AttributeSet attrs, int defStyleAttr) {
         super(context, attrs, defStyleAttr);
 
+        synchronized (sInstances) {
+            sInstances.put(this, Boolean.TRUE);
+        }
+
         TypedArray array = context.obtainStyledAttributes(attrs, R.styleable.ZIVImageView, defStyleAttr, 0);
 
         DisplayMetrics dm = getContext().getResources().getDisplayMetrics();
@@ -132,6 +259,14 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
 
         setMaxOverZoom(array.getFloat(R.styleable.ZIVImageView_maxOverZoom, DEFAULT_MAX_OVER_SCALE));
 
+        setMotionQuality(MotionQuality.values()[array.getInt(R.styleable.ZIVImageView_motionQuality, DEFAULT_MOTION_QUALITY.ordinal())]);
+
+        setMipmapEnabled(array.getBoolean(R.styleable.ZIVImageView_mipmapEnabled, true));
+
+        setDecodePolicy(DecodePolicy.values()[array.getInt(R.styleable.ZIVImageView_decodePolicy, DEFAULT_DECODE_POLICY.ordinal())]);
+
+        setRotationEnabled(array.getBoolean(R.styleable.ZIVImageView_rotationEnabled, false));
+
         array.recycle();
 
         ScaleType currentScaleType = getScaleType();
@@ -140,69 +275,112 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
         }
 
         setNestedScrollingEnabled(true);
+    }
+
+    /**
+     * Creates the gesture detector and reads the view configuration. Called on the first touch, so the views
+     * that are never touched don't pay for them.
+     */
+    void initGestures() {
+        if (mScaleGestureDetector != null) return;
 
-        mScaleGestureDetector = new ScaleGestureDetector(context, mOnScaleGestureListener);
+        mScaleGestureDetector = new ScaleGestureDetector(getContext(), mOnScaleGestureListener);
         ScaleGestureDetectorCompat.setQuickScaleEnabled(mScaleGestureDetector, false);
 
-        ViewConfiguration vc = ViewConfiguration.get(context);
+        ViewConfiguration vc = ViewConfiguration.get(getContext());
 
         mDoubleTapDistance = vc.getScaledDoubleTapSlop();
         mDoubleTapTimeout = ViewConfiguration.getDoubleTapTimeout();
         mMinimumVelocity = vc.getScaledMinimumFlingVelocity();
         mMaximumVelocity = vc.getScaledMaximumFlingVelocity();
+    }
 
-        mSmoothScaleTask = new ATISmoothScale();
-        mFlingTask = new ATIFling();
+    private ATISmoothScale getSmoothScaleTask() {
+        if (mSmoothScaleTask == null) {
+            mSmoothScaleTask = new ATISmoothScale();
+        }
+        return mSmoothScaleTask;
     }
 
-    @Override
-    public void setNestedScrollingEnabled(boolean enabled) {
+    private ATIFling getFlingTask() {
+        if (mFlingTask == null) {
+            mFlingTask = new ATIFling();
+        }
+        return mFlingTask;
+    }
+
+    private void stopAnimations() {
+        // Called from the super constructor before the fields are initialized.
+        if (mFrameScheduler == null) return;
+
+        mFrameScheduler.stop(mSmoothScaleTask);
+        mFrameScheduler.stop(mFlingTask);
+        mFrameScheduler.stop(mInputFrameTask);
+
+        mPendingZoomFactor = 1f;
+        mPendingScrollX = 0;
+        mPendingScrollY = 0;
+    }
+
+    private NestedScrollingChildHelper getChildHelper() {
         if (mChildHelper == null) {
             mChildHelper = new NestedScrollingChildHelper(this);
+            mChildHelper.setNestedScrollingEnabled(mIsNestedScrollingEnabled);
+        }
+        return mChildHelper;
+    }
+
+    @Override
+    public void setNestedScrollingEnabled(boolean enabled) {
+        mIsNestedScrollingEnabled = enabled;
+
+        if (mChildHelper != null) {
+            mChildHelper.setNestedScrollingEnabled(enabled);
         }
-        mChildHelper.setNestedScrollingEnabled(enabled);
     }
 
     @Override
     public boolean isNestedScrollingEnabled() {
-        return mChildHelper != null && mChildHelper.isNestedScrollingEnabled();
+        return mIsNestedScrollingEnabled;
     }
 
     @Override
     public boolean startNestedScroll(int axes) {
-        return mChildHelper.startNestedScroll(axes);
+        return getChildHelper().startNestedScroll(axes);
     }
 
     @Override
     public void stopNestedScroll() {
-        mChildHelper.stopNestedScroll();
+        if (mChildHelper != null) {
+            mChildHelper.stopNestedScroll();
+        }
     }
 
     @Override
     public boolean hasNestedScrollingParent() {
-        return mChildHelper.hasNestedScrollingParent();
+        return mChildHelper != null && mChildHelper.hasNestedScrollingParent();
     }
 
     @Override
     public boolean dispatchNestedScroll(int dxConsumed, int dyConsumed, int dxUnconsumed,
                                         int dyUnconsumed, int[] offsetInWindow) {
-        return mChildHelper.dispatchNestedScroll(dxConsumed, dyConsumed, dxUnconsumed, dyUnconsumed,
+        return mChildHelper != null && mChildHelper.dispatchNestedScroll(dxConsumed, dyConsumed, dxUnconsumed, dyUnconsumed,
                 offsetInWindow);
     }
 
     @Override
     public boolean dispatchNestedPreScroll(int dx, int dy, int[] consumed, int[] offsetInWindow) {
-        return mChildHelper.dispatchNestedPreScroll(dx, dy, consumed, offsetInWindow);
+        return mChildHelper != null && mChildHelper.dispatchNestedPreScroll(dx, dy, consumed, offsetInWindow);
     }
 
     @Override
     public boolean dispatchNestedFling(float velocityX, float velocityY, boolean consumed) {
-        return mChildHelper.dispatchNestedFling(velocityX, velocityY, consumed);
+        return mChildHelper != null && mChildHelper.dispatchNestedFling(velocityX, velocityY, consumed);
     }
 
     @Override
     public boolean dispatchNestedPreFling(float velocityX, float velocityY) {
-        return mChildHelper.dispatchNestedPreFling(velocityX, velocityY);
+        return mChildHelper != null && mChildHelper.dispatchNestedPreFling(velocityX, velocityY);
     }
 
     @Override
@@ -241,13 +419,365 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
             mViewBounds.set(0, 0, right - left, bottom - top);
             if (initNormalMatrix()) {
                 init();
+
+                if (mPendingViewportState != null) {
+                    applyViewportState(mPendingViewportState);
+                    mPendingViewportState = null;
+                }
             } else {
-                mCurrentState = State.DISABLE;
+                setState(State.DISABLE);
             }
             mIsInit = true;
+
+            if (mImageSource != null && mSourceLoader == null && (getDrawable() == null || isSourceBitmapSubsampled())) {
+                loadImageSource();
+            }
+        }
+    }
+
+    @Override
+    protected void onScrollChanged(int l, int t, int oldl, int oldt) {
+        super.onScrollChanged(l, t, oldl, oldt);
+        dispatchViewportChanged();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        final ZIVTracer tracer = sTracer;
+
+        if (tracer == null) {
+            drawImage(canvas);
+            return;
+        }
+
+        tracer.beginSection(ZIVTracer.SECTION_DRAW);
+        try {
+            drawImage(canvas);
+        } finally {
+            tracer.endSection();
+        }
+    }
+
+    private void drawImage(Canvas canvas) {
+        final Drawable viewportDrawable = getDrawable();
+
+        if (viewportDrawable instanceof ZIVViewportDrawable && getVisibleImageRect(mVisibleImageRect)) {
+            ((ZIVViewportDrawable) viewportDrawable).setViewport(mVisibleImageRect, getEffectiveScale());
+        }
+
+        if (canDrawVisibleBitmap(getDrawable())) {
+            final BitmapDrawable drawable = (BitmapDrawable) getDrawable();
+            final Bitmap level = getMipmapLevel();
+
+            drawVisibleBitmap(canvas, drawable, level != null ? level : drawable.getBitmap());
+        } else {
+            super.onDraw(canvas);
+        }
+
+        if (mAnnotationLayer != null && mAnnotationLayer.size() > 0 && getVisibleImageRect(mVisibleImageRect)) {
+            final int saveCount = canvas.save();
+
+            canvas.translate(getPaddingLeft(), getPaddingTop());
+            canvas.concat(mDrawMatrix);
+
+            mAnnotationLayer.draw(canvas, mVisibleImageRect, getCurrentZoom(), getEffectiveScale());
+
+            canvas.restoreToCount(saveCount);
+        }
+    }
+
+    /**
+     * Returns true if the image is drawn by {@link #drawVisibleBitmap} now.
+     */
+    private boolean canDrawVisibleBitmap(Drawable drawable) {
+        return mCurrentState != State.DISABLE && isVisibleBitmapDrawable(drawable);
+    }
+
+    /**
+     * Returns true if the drawable can be drawn by {@link #drawVisibleBitmap}, i.e. it just draws
+     * its bitmap stretched to its bounds. Only such drawables are drawn with mipmap levels.
+     */
+    private boolean isVisibleBitmapDrawable(Drawable drawable) {
+        if (!(drawable instanceof BitmapDrawable)) return false;
+
+        final BitmapDrawable bitmapDrawable = (BitmapDrawable) drawable;
+
+        if (bitmapDrawable.getBitmap() == null || bitmapDrawable.getTileModeX() != null ||
+                bitmapDrawable.getTileModeY() != null || bitmapDrawable.getGravity() != Gravity.FILL) {
+            return false;
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT && drawable.isAutoMirrored()) return false;
+
+        // Tint is applied by BitmapDrawable.draw(), not by its paint. It is known only for the own drawables,
+        // plain bitmap drawables are replaced with them when they are set.
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP || drawable instanceof ZIVBitmapDrawable;
+    }
+
+    /**
+     * Draws only the part of the bitmap that is visible in the view, the bitmap is stretched to the intrinsic
+     * size of the drawable. At high zoom the canvas gets a sub-rect of the bitmap instead of the whole bitmap.
+     */
+    private void drawVisibleBitmap(Canvas canvas, BitmapDrawable drawable, Bitmap bitmap) {
+        if (!getVisibleImageRect(mVisibleImageRect)) return;
+
+        final float scaleX = (float) bitmap.getWidth() / drawable.getIntrinsicWidth();
+        final float scaleY = (float) bitmap.getHeight() / drawable.getIntrinsicHeight();
+
+        // One more pixel at each side, so the filtering at the edges of the view samples real neighbours.
+        mVisibleBitmapRect.set((int) Math.floor(mVisibleImageRect.left * scaleX) - 1,
+                (int) Math.floor(mVisibleImageRect.top * scaleY) - 1,
+                (int) Math.ceil(mVisibleImageRect.right * scaleX) + 1,
+                (int) Math.ceil(mVisibleImageRect.bottom * scaleY) + 1);
+
+        if (!mVisibleBitmapRect.intersect(0, 0, bitmap.getWidth(), bitmap.getHeight())) return;
+
+        mVisibleDrawRect.set(mVisibleBitmapRect.left / scaleX, mVisibleBitmapRect.top / scaleY,
+                mVisibleBitmapRect.right / scaleX, mVisibleBitmapRect.bottom / scaleY);
+
+        final int saveCount = canvas.save();
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN && getCropToPadding()) {
+            canvas.clipRect(getScrollX() + getPaddingLeft(), getScrollY() + getPaddingTop(),
+                    getScrollX() + getWidth() - getPaddingRight(), getScrollY() + getHeight() - getPaddingBottom());
+        }
+
+        canvas.translate(getPaddingLeft(), getPaddingTop());
+        canvas.concat(mDrawMatrix);
+        canvas.drawBitmap(bitmap, mVisibleBitmapRect, mVisibleDrawRect, drawable instanceof ZIVBitmapDrawable ?
+                ((ZIVBitmapDrawable) drawable).getDrawPaint() : drawable.getPaint());
+
+        canvas.restoreToCount(saveCount);
+    }
+
+    @Override
+    public boolean onGenericMotionEvent(MotionEvent event) {
+        if (mCurrentState != State.DISABLE && isEnabled() &&
+                MotionEventCompat.isFromSource(event, InputDevice.SOURCE_CLASS_POINTER) &&
+                event.getActionMasked() == MotionEventCompat.ACTION_SCROLL) {
+
+            final float vScroll = MotionEventCompat.getAxisValue(event, MotionEventCompat.AXIS_VSCROLL);
+            final float hScroll = MotionEventCompat.getAxisValue(event, MotionEventCompat.AXIS_HSCROLL);
+
+            // Trackpad pinch arrives as a scroll with ctrl pressed. Strips are scrolled by the wheel.
+            final boolean isZoom = (event.getMetaState() & KeyEvent.META_CTRL_ON) != 0 ||
+                    !(getDrawable() instanceof ZIVStripDrawable);
+
+            if (isZoom) {
+                if (vScroll != 0) {
+                    postZoom((float) Math.pow(WHEEL_ZOOM_STEP, vScroll), event.getX(), event.getY());
+                }
+                if (hScroll != 0) {
+                    postScroll(hScroll * getWidth() * WHEEL_SCROLL_FRACTION, 0);
+                }
+            } else {
+                postScroll(hScroll * getWidth() * WHEEL_SCROLL_FRACTION, -vScroll * getHeight() * WHEEL_SCROLL_FRACTION);
+            }
+
+            return true;
+        }
+
+        return super.onGenericMotionEvent(event);
+    }
+
+    @Override
+    public boolean onKeyDown(int keyCode, KeyEvent event) {
+        if (mCurrentState != State.DISABLE && isEnabled()) {
+            final float centerX = getWidth() * 0.5f, centerY = getHeight() * 0.5f;
+
+            switch (keyCode) {
+                case KeyEvent.KEYCODE_PLUS:
+                case KeyEvent.KEYCODE_EQUALS:
+                case KeyEvent.KEYCODE_NUMPAD_ADD:
+                case KeyEvent.KEYCODE_ZOOM_IN:
+                    postZoom(KEY_ZOOM_STEP, centerX, centerY);
+                    return true;
+                case KeyEvent.KEYCODE_MINUS:
+                case KeyEvent.KEYCODE_NUMPAD_SUBTRACT:
+                case KeyEvent.KEYCODE_ZOOM_OUT:
+                    postZoom(1f / KEY_ZOOM_STEP, centerX, centerY);
+                    return true;
+                case KeyEvent.KEYCODE_DPAD_LEFT:
+                    return postKeyScroll(-getWidth() * KEY_SCROLL_FRACTION, 0);
+                case KeyEvent.KEYCODE_DPAD_RIGHT:
+                    return postKeyScroll(getWidth() * KEY_SCROLL_FRACTION, 0);
+                case KeyEvent.KEYCODE_DPAD_UP:
+                    return postKeyScroll(0, -getHeight() * KEY_SCROLL_FRACTION);
+                case KeyEvent.KEYCODE_DPAD_DOWN:
+                    return postKeyScroll(0, getHeight() * KEY_SCROLL_FRACTION);
+                default:
+                    break;
+            }
+        }
+
+        return super.onKeyDown(keyCode, event);
+    }
+
+    /**
+     * Arrow keys move the focus if there is nothing to scroll.
+     */
+    private boolean postKeyScroll(float dx, float dy) {
+        if ((dx != 0 && mCurrentDrawableRect.width() <= getWidth()) ||
+                (dy != 0 && mCurrentDrawableRect.height() <= getHeight())) {
+            return false;
+        }
+
+        postScroll(dx, dy);
+        return true;
+    }
+
+    /**
+     * Accumulates the zoom factor, it is applied once on the next frame.
+     */
+    private void postZoom(float factor, float pivotX, float pivotY) {
+        mPendingZoomFactor *= factor;
+        mPendingZoomPivotX = pivotX;
+        mPendingZoomPivotY = pivotY;
+
+        postInputFrame();
+    }
+
+    /**
+     * Accumulates the scroll distance, it is applied once on the next frame.
+     */
+    private void postScroll(float dx, float dy) {
+        mPendingScrollX += dx;
+        mPendingScrollY += dy;
+
+        postInputFrame();
+    }
+
+    private void postInputFrame() {
+        mFrameScheduler.start(mInputFrameTask);
+    }
+
+    private final ZIVFrameScheduler.Animation mInputFrameTask = new ZIVFrameScheduler.Animation() {
+        @Override
+        public boolean doFrame() {
+            applyPendingInput();
+            return false;
+        }
+    };
+
+    /**
+     * Applies the zoom and the scroll accumulated since the last frame as a single transform update.
+     */
+    private void applyPendingInput() {
+        final float zoomFactor = mPendingZoomFactor;
+        final float scrollX = mPendingScrollX, scrollY = mPendingScrollY;
+
+        mPendingZoomFactor = 1f;
+        mPendingScrollX = 0;
+        mPendingScrollY = 0;
+
+        if (mCurrentState == State.FLING && mFlingTask != null) {
+            mFlingTask.stop();
+        }
+
+        if (mCurrentState != State.NORMAL) return;
+
+        final float currentZoom = getCurrentZoom();
+        final float zoom = Math.max(mMinZoom, Math.min(currentZoom * zoomFactor, getMaxZoomLimit()));
+
+        if (zoom != currentZoom) {
+            scale(zoom / currentZoom, mPendingZoomPivotX - getPaddingLeft() + getScrollX(),
+                    mPendingZoomPivotY - getPaddingTop() + getScrollY());
+        }
+
+        scrollToBounds(getScrollX() + Math.round(scrollX), getScrollY() + Math.round(scrollY));
+    }
+
+    /**
+     * Scrolls to the position clamped by the image bounds, the image is centered along the axis it is smaller
+     * than the view.
+     */
+    private void scrollToBounds(int x, int y) {
+        if (mCurrentDrawableRect.width() > getWidth()) {
+            x = Math.max(Math.round(mCurrentDrawableRect.left),
+                    Math.min(x, Math.round(mCurrentDrawableRect.right) - getWidth()));
+        } else {
+            x = Math.round(mCurrentDrawableRect.centerX() - getWidth() * 0.5f);
+        }
+
+        if (mCurrentDrawableRect.height() > getHeight()) {
+            y = Math.max(Math.round(mCurrentDrawableRect.top),
+                    Math.min(y, Math.round(mCurrentDrawableRect.bottom) - getHeight()));
+        } else {
+            y = Math.round(mCurrentDrawableRect.centerY() - getHeight() * 0.5f);
+        }
+
+        if (x != getScrollX() || y != getScrollY()) {
+            scrollTo(x, y);
+        }
+    }
+
+    /**
+     * Rotates the image by the angle between the first two pointers. Rotation starts when the angle exceeds the slop,
+     * so pinch zoom doesn't rotate the image by accident. At the end the angle is snapped to a nearby multiple of 90.
+     */
+    private void onRotationTouchEvent(MotionEvent event) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_POINTER_DOWN:
+                if (event.getPointerCount() == 2) {
+                    mLastRotationAngle = getPointersAngle(event);
+                    mRotationSlop = 0;
+                    mIsRotating = false;
+                }
+                break;
+            case MotionEvent.ACTION_MOVE:
+                if (event.getPointerCount() < 2) break;
+
+                final float angle = getPointersAngle(event);
+                float delta = angle - mLastRotationAngle;
+                mLastRotationAngle = angle;
+
+                if (delta > 180f) {
+                    delta -= 360f;
+                } else if (delta < -180f) {
+                    delta += 360f;
+                }
+
+                if (!mIsRotating) {
+                    mRotationSlop += delta;
+                    if (Math.abs(mRotationSlop) < ROTATION_SLOP_DEGREES) break;
+
+                    mIsRotating = true;
+                    delta = mRotationSlop;
+                }
+
+                if (mCurrentState == State.NORMAL || mCurrentState == State.PINCH_SCALE) {
+                    rotate(delta, (event.getX(0) + event.getX(1)) * 0.5f - getPaddingLeft() + getScrollX(),
+                            (event.getY(0) + event.getY(1)) * 0.5f - getPaddingTop() + getScrollY());
+                }
+                break;
+            case MotionEvent.ACTION_POINTER_UP:
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                if (mIsRotating && event.getPointerCount() <= 2) {
+                    mIsRotating = false;
+
+                    final float rotation = getCurrentRotation();
+                    final float snapped = Math.round(rotation / 90f) * 90f;
+
+                    if (Math.abs(snapped - rotation) <= ROTATION_SNAP_DEGREES) {
+                        rotate(snapped - rotation, getWidth() * 0.5f - getPaddingLeft() + getScrollX(),
+                                getHeight() * 0.5f - getPaddingTop() + getScrollY());
+                    }
+
+                    if (mCurrentState == State.NORMAL) {
+                        scrollToBounds(getScrollX(), getScrollY());
+                    }
+                }
+                break;
+            default:
+                break;
         }
     }
 
+    private static float getPointersAngle(MotionEvent event) {
+        return (float) Math.toDegrees(Math.atan2(event.getY(1) - event.getY(0), event.getX(1) - event.getX(0)));
+    }
+
     @Override
     public boolean dispatchTouchEvent(MotionEvent event) {
         return super.dispatchTouchEvent(event);
@@ -255,16 +785,33 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
 
     @Override
     public boolean onTouchEvent(MotionEvent event) {
+        final ZIVTracer tracer = sTracer;
+
+        if (tracer == null) {
+            return handleTouchEvent(event);
+        }
+
+        tracer.beginSection(ZIVTracer.SECTION_TOUCH);
+        try {
+            return handleTouchEvent(event);
+        } finally {
+            tracer.endSection();
+        }
+    }
+
+    private boolean handleTouchEvent(MotionEvent event) {
         boolean ret = super.onTouchEvent(event);
 
         if (mCurrentState != State.DISABLE && isEnabled()) {
+            initGestures();
+
             int pointerIndex, action = event.getActionMasked();
 
             MotionEvent copyEvent = MotionEvent.obtain(event);
 
             if (action == MotionEvent.ACTION_POINTER_DOWN) {
                 if (mCurrentState == State.SCROLL) {
-                    mCurrentState = State.NORMAL;
+                    setState(State.NORMAL);
                 }
             } else if (action == MotionEvent.ACTION_DOWN) {
                 mNestedXOffset = 0;
@@ -277,6 +824,10 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
                 ret = mScaleGestureDetector.onTouchEvent(event) || ret;
             }
 
+            if (mIsRotationEnabled) {
+                onRotationTouchEvent(event);
+            }
+
             switch (event.getActionMasked()) {
                 case MotionEvent.ACTION_POINTER_UP:
                     pointerIndex = event.getActionIndex();
@@ -336,7 +887,7 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
                                         axis = ATIFling.X_AND_Y;
                                     }
 
-                                    mFlingTask.start(ATIFling.MODE_FLING, axis, currX, currY,
+                                    getFlingTask().start(ATIFling.MODE_FLING, axis, currX, currY,
                                             -Math.round(velocityX), -Math.round(velocityY), minX, minY, maxX, maxY);
 
                                     ret |= true;
@@ -344,12 +895,12 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
                                 }
                             } else {
                                 if (!springBackIfOverScroll()) {
-                                    mCurrentState = State.NORMAL;
+                                    setState(State.NORMAL);
                                 }
                             }
                         } else {
                             if (!springBackIfOverScroll()) {
-                                mCurrentState = State.NORMAL;
+                                setState(State.NORMAL);
                             }
                         }
                     }
@@ -407,7 +958,7 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
                                     }
                                 }
 
-                                mSmoothScaleTask.start(targetScale, x, y, mDoubleTapAnimationDuration,
+                                getSmoothScaleTask().start(targetScale, x, y, mDoubleTapAnimationDuration,
                                         0, 0, correctTranslate);
 
                                 ret |= true;
@@ -418,7 +969,7 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
                             mLastX = Math.round(event.getX());
                             mLastY = Math.round(event.getY());
 
-                            if (mCurrentState == State.FLING) {
+                            if (mCurrentState == State.FLING && mFlingTask != null) {
                                 if (!mFlingTask.isOverScrolled()) {
                                     mFlingTask.stop();
                                 }
@@ -456,7 +1007,7 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
                             if ((dx != 0 || dy != 0) &&
                                     (mCurrentState == State.NORMAL || mCurrentState == State.SCROLL)) {
 
-                                mCurrentState = State.SCROLL;
+                                setState(State.SCROLL);
 
                                 mLastX = Math.round(event.getX(pointerIndex) - mScrollOffset[0]);
                                 mLastY = Math.round(event.getY(pointerIndex) - mScrollOffset[1]);
@@ -532,10 +1083,9 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
     public void setScaleType(ScaleType scaleType) {
         super.setScaleType(MATRIX);
 
-        mCurrentState = State.DISABLE;
+        setState(State.DISABLE);
 
-        removeCallbacks(mSmoothScaleTask);
-        removeCallbacks(mFlingTask);
+        stopAnimations();
 
         mIsInit = false;
         mNormalScaleType = scaleType;
@@ -548,10 +1098,9 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
     public void setImageMatrix(Matrix matrix) {
         super.setImageMatrix(matrix);
 
-        mCurrentState = State.DISABLE;
+        setState(State.DISABLE);
 
-        removeCallbacks(mSmoothScaleTask);
-        removeCallbacks(mFlingTask);
+        stopAnimations();
 
         mIsInit = false;
 
@@ -567,12 +1116,17 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
 
     @Override
     public void setImageDrawable(@Nullable Drawable drawable) {
-        super.setImageDrawable(drawable);
+        clearImageSource();
+        setImageDrawableInternal(drawable);
+    }
 
-        mCurrentState = State.DISABLE;
+    private void setImageDrawableInternal(@Nullable Drawable drawable) {
+        super.setImageDrawable(wrapBitmapDrawable(drawable));
+        saveDrawableFilter();
 
-        removeCallbacks(mSmoothScaleTask);
-        removeCallbacks(mFlingTask);
+        setState(State.DISABLE);
+
+        stopAnimations();
 
         mIsInit = false;
 
@@ -580,14 +1134,63 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
         invalidate();
     }
 
+    /**
+     * Replaces a plain {@link BitmapDrawable} with a {@link ZIVBitmapDrawable} of the same bitmap and paint,
+     * so the tint set on it later is known and only the visible part of it is drawn. A tint that was set on
+     * the plain drawable before is not carried over, set it on the view or on {@link #getDrawable()}.
+     */
+    private Drawable wrapBitmapDrawable(Drawable drawable) {
+        if (drawable == null || drawable.getClass() != BitmapDrawable.class) return drawable;
+
+        final BitmapDrawable bitmapDrawable = (BitmapDrawable) drawable;
+        if (bitmapDrawable.getBitmap() == null) return drawable;
+
+        final ZIVBitmapDrawable ret = new ZIVBitmapDrawable(getResources(), bitmapDrawable.getBitmap());
+
+        // Drawables created without resources have another target density.
+        if (ret.getIntrinsicWidth() != drawable.getIntrinsicWidth() ||
+                ret.getIntrinsicHeight() != drawable.getIntrinsicHeight()) {
+            return drawable;
+        }
+
+        ret.getPaint().set(bitmapDrawable.getPaint());
+        ret.setTileModeXY(bitmapDrawable.getTileModeX(), bitmapDrawable.getTileModeY());
+        ret.setGravity(bitmapDrawable.getGravity());
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            ret.setAutoMirrored(drawable.isAutoMirrored());
+        }
+
+        return ret;
+    }
+
+    /**
+     * Wraps the drawable that ImageView has loaded by itself, e.g. from an uri.
+     */
+    private void wrapCurrentBitmapDrawable() {
+        final Drawable drawable = getDrawable();
+        final Drawable wrapped = wrapBitmapDrawable(drawable);
+
+        if (wrapped != drawable) {
+            super.setImageDrawable(wrapped);
+        }
+    }
+
+    @Override
+    public void setImageBitmap(Bitmap bitmap) {
+        setImageDrawable(bitmap != null ? new ZIVBitmapDrawable(getResources(), bitmap) : null);
+    }
+
     @Override
     public void setImageURI(@Nullable Uri uri) {
+        clearImageSource();
         super.setImageURI(uri);
+        wrapCurrentBitmapDrawable();
+        saveDrawableFilter();
 
-        mCurrentState = State.DISABLE;
+        setState(State.DISABLE);
 
-        removeCallbacks(mSmoothScaleTask);
-        removeCallbacks(mFlingTask);
+        stopAnimations();
 
         mIsInit = false;
 
@@ -597,12 +1200,14 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
 
     @Override
     public void setImageResource(int resId) {
+        clearImageSource();
         super.setImageResource(resId);
+        wrapCurrentBitmapDrawable();
+        saveDrawableFilter();
 
-        mCurrentState = State.DISABLE;
+        setState(State.DISABLE);
 
-        removeCallbacks(mSmoothScaleTask);
-        removeCallbacks(mFlingTask);
+        stopAnimations();
 
         mIsInit = false;
 
@@ -610,26 +1215,347 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
         invalidate();
     }
 
-    private final ScaleGestureDetector.SimpleOnScaleGestureListener mOnScaleGestureListener = new ScaleGestureDetector.SimpleOnScaleGestureListener() {
-
-        private void scaleTo(ATIZoomInfo scaleInfo, float futureScale) {
-            float currentPivotX = mCurrentZoom.mPivotX;
-            float currentPivotY = mCurrentZoom.mPivotY;
+    /**
+     * Sets image source that is decoded by the view in background. The image is subsampled to the size
+     * of the view multiplied by the maximum zoom. Animated gifs are played, the drawable is {@link Animatable}.
+     *
+     * @param source Image source or null.
+     */
+    public void setImageSource(@Nullable ZIVImageSource source) {
+        clearImageSource();
+        setImageDrawableInternal(null);
 
-            float tmpScaleFactor;
+        mImageSource = source;
 
-            while (scaleInfo != null) {
+        final ZIVRetainedBitmapCache.ATIEntry retained = ZIVImageSources.hasStableKey(source) ?
+                ZIVRetainedBitmapCache.get(source.getKey()) : null;
 
-                if (scaleInfo.mScaleTo != getCurrentZoom()) {
-                    tmpScaleFactor = scaleInfo.mScaleTo / getCurrentZoom();
-                    scale(tmpScaleFactor, currentPivotX, currentPivotY);
-                }
+        if (retained != null && isRetainedBitmapUsable(retained)) {
+            mImageSourceWidth = retained.mSourceWidth;
+            mImageSourceHeight = retained.mSourceHeight;
 
-                currentPivotX = scaleInfo.mPivotX;
-                currentPivotY = scaleInfo.mPivotY;
+            setImageDrawableInternal(new ZIVSourceDrawable(getResources(), retained.mBitmap, source,
+                    retained.mSourceWidth, retained.mSourceHeight, retained.mSampleSize));
+        } else if (mImageSource != null && getWidth() > 0 && getHeight() > 0) {
+            loadImageSource();
+        }
+    }
 
-                if (scaleInfo.mScaleFrom <= futureScale) {
-                    tmpScaleFactor = futureScale / getCurrentZoom();
+    /**
+     * Sets byte budget of the process wide cache of the decoded image source bitmaps. A view that is given
+     * an image source whose bitmap is in the cache, e.g. after a configuration change, shows it at once
+     * instead of decoding it again.
+     *
+     * @param size Cache size(bytes), 0 disables the cache.
+     */
+    public static void setRetainedBitmapCacheSize(long size) {
+        if (size < 0) {
+            throw new IllegalArgumentException(sErrorInvalidArgumentRetainedBitmapCacheSize);
+        }
+        ZIVRetainedBitmapCache.setMaxSize(size);
+    }
+
+    /**
+     * Sets tracer of the hot paths of all views: touch handling, transform, matrix update, drawing and
+     * viewport listeners. Without a tracer the sections cost a static field read. Call it on the main thread.
+     *
+     * @param tracer Tracer, e.g. {@link ZIVSystemTracer}, or null to disable tracing.
+     */
+    public static void setTracer(@Nullable ZIVTracer tracer) {
+        sTracer = tracer;
+    }
+
+    /**
+     * Returns tracer of the hot paths.
+     *
+     * @return Tracer or null.
+     */
+    @Nullable
+    public static ZIVTracer getTracer() {
+        return sTracer;
+    }
+
+    /**
+     * Returns byte budget of the process wide cache of the decoded image source bitmaps.
+     *
+     * @return Cache size(bytes).
+     */
+    public static long getRetainedBitmapCacheSize() {
+        return ZIVRetainedBitmapCache.getMaxSize();
+    }
+
+    /**
+     * Sets tile pyramid of the image. Only the tiles of the visible part of the image are decoded,
+     * at the level that matches the current zoom. The pyramid is not closed by the view.
+     *
+     * @param pyramid Tile pyramid or null.
+     */
+    public void setTilePyramid(@Nullable ZIVTilePyramid pyramid) {
+        clearImageSource();
+        if (pyramid == null) {
+            setImageDrawableInternal(null);
+            return;
+        }
+
+        final ZIVTiledDrawable drawable = new ZIVTiledDrawable(pyramid, getTileCacheSize());
+        drawable.setDecodeConfig(ZIVBitmapConfigs.getConfig(mDecodePolicy, pyramid.isOpaque(), true));
+
+        setImageDrawableInternal(drawable);
+    }
+
+    /**
+     * Sets image sources that are laid out end to end along the axis and zoomed as one image. Pages are scaled
+     * to the largest page size across the axis, only the pages in the visible part of the strip are decoded.
+     * Headers of all pages are read in background before the strip is shown, pages that cannot be read are skipped.
+     *
+     * @param sources     Image sources of the pages.
+     * @param orientation Axis of the strip.
+     */
+    public void setImageStrip(List<ZIVImageSource> sources, StripOrientation orientation) {
+        if (sources == null || sources.isEmpty()) {
+            throw new IllegalArgumentException(sErrorInvalidArgumentStripSources);
+        }
+        if (orientation == null) {
+            throw new IllegalArgumentException(sErrorInvalidArgumentStripOrientation);
+        }
+
+        clearImageSource();
+        setImageDrawableInternal(null);
+
+        mStripLoader = new ATIStripLoader(new ArrayList<>(sources), orientation);
+        ZIVDecodeExecutor.get().execute(mStripLoader);
+    }
+
+    /**
+     * Returns count of the pages of the image strip.
+     *
+     * @return Count of pages or 0 if the image is set by other methods.
+     */
+    public int getImageStripPageCount() {
+        final Drawable drawable = getDrawable();
+
+        return drawable instanceof ZIVStripDrawable ? ((ZIVStripDrawable) drawable).getPageCount() : 0;
+    }
+
+    /**
+     * Sets byte budget of the process wide second tier tile cache. Tiles evicted from the decoded tiles cache
+     * are kept there jpeg encoded outside the java heap, unless the tile pyramid already stores encoded tiles.
+     *
+     * @param size Cache size(bytes), 0 disables the cache.
+     */
+    public static void setCompressedTileCacheSize(long size) {
+        if (size < 0) {
+            throw new IllegalArgumentException(sErrorInvalidArgumentCompressedTileCacheSize);
+        }
+        ZIVCompressedTileCache.get().setMaxSize(size);
+    }
+
+    /**
+     * Returns byte budget of the process wide second tier tile cache.
+     *
+     * @return Cache size(bytes).
+     */
+    public static long getCompressedTileCacheSize() {
+        return ZIVCompressedTileCache.get().getMaxSize();
+    }
+
+    /**
+     * Returns tile pyramid of the image.
+     *
+     * @return Tile pyramid or null if the image is set by other methods.
+     */
+    @Nullable
+    public ZIVTilePyramid getTilePyramid() {
+        final Drawable drawable = getDrawable();
+
+        return drawable instanceof ZIVTiledDrawable ? ((ZIVTiledDrawable) drawable).getPyramid() : null;
+    }
+
+    /**
+     * Returns image source.
+     *
+     * @return Image source or null if the image is set by other methods.
+     */
+    @Nullable
+    public ZIVImageSource getImageSource() {
+        return mImageSource;
+    }
+
+    /**
+     * Returns width of the image source read from its header.
+     *
+     * @return Width or 0 if unknown.
+     */
+    public int getImageSourceWidth() {
+        return mImageSourceWidth;
+    }
+
+    /**
+     * Returns height of the image source read from its header.
+     *
+     * @return Height or 0 if unknown.
+     */
+    public int getImageSourceHeight() {
+        return mImageSourceHeight;
+    }
+
+    private void clearImageSource() {
+        if (mSourceLoader != null) {
+            mSourceLoader.mIsCancelled = true;
+            mSourceLoader = null;
+        }
+
+        if (mStripLoader != null) {
+            mStripLoader.mIsCancelled = true;
+            mStripLoader = null;
+        }
+
+        mImageSource = null;
+        mImageSourceWidth = 0;
+        mImageSourceHeight = 0;
+
+        final Drawable drawable = getDrawable();
+        if (drawable instanceof ZIVTiledDrawable) {
+            ((ZIVTiledDrawable) drawable).release();
+        } else if (drawable instanceof ZIVStripDrawable) {
+            ((ZIVStripDrawable) drawable).release();
+        } else if (drawable instanceof ZIVAnimatedDrawable) {
+            ((ZIVAnimatedDrawable) drawable).release();
+        }
+    }
+
+    /**
+     * Returns byte budget of the decoded tiles cache.
+     */
+    private static int getTileCacheSize() {
+        return (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / TILE_CACHE_MEMORY_DIVIDER);
+    }
+
+    private void loadImageSource() {
+        mSourceLoader = new ATISourceLoader(mImageSource, getSourceTargetWidth(), getSourceTargetHeight(), mDecodePolicy);
+        ZIVDecodeExecutor.get().execute(mSourceLoader);
+    }
+
+    private int getSourceTargetWidth() {
+        return Math.max(1, Math.round((getWidth() - getPaddingLeft() - getPaddingRight()) * mMaxZoom));
+    }
+
+    private int getSourceTargetHeight() {
+        return Math.max(1, Math.round((getHeight() - getPaddingTop() - getPaddingBottom()) * mMaxZoom));
+    }
+
+    /**
+     * Returns true if the retained bitmap has the config of the decode policy and is not more subsampled than
+     * the view needs. Before the first layout the sample size is checked in {@link #onLayout}.
+     */
+    private boolean isRetainedBitmapUsable(ZIVRetainedBitmapCache.ATIEntry entry) {
+        if (entry.mConfig != ZIVBitmapConfigs.getConfig(mDecodePolicy, entry.mIsOpaque, false)) return false;
+
+        return getWidth() <= 0 || getHeight() <= 0 || entry.mSampleSize <= calculateSampleSize(entry.mSourceWidth,
+                entry.mSourceHeight, getSourceTargetWidth(), getSourceTargetHeight(), MAX_SOURCE_BITMAP_SIZE);
+    }
+
+    /**
+     * Returns true if the shown image source bitmap is more subsampled than the view of the current size needs.
+     */
+    private boolean isSourceBitmapSubsampled() {
+        final Drawable drawable = getDrawable();
+        if (!(drawable instanceof ZIVSourceDrawable)) return false;
+
+        final ZIVSourceDrawable sourceDrawable = (ZIVSourceDrawable) drawable;
+
+        return sourceDrawable.getSampleSize() > calculateSampleSize(sourceDrawable.getIntrinsicWidth(),
+                sourceDrawable.getIntrinsicHeight(), getSourceTargetWidth(), getSourceTargetHeight(), MAX_SOURCE_BITMAP_SIZE);
+    }
+
+    private void onImageSourceLoaded(ATISourceLoader loader, Bitmap bitmap) {
+        if (loader != mSourceLoader) return;
+
+        mSourceLoader = null;
+        mImageSourceWidth = loader.mSourceWidth;
+        mImageSourceHeight = loader.mSourceHeight;
+
+        if (ZIVImageSources.hasStableKey(loader.mSource)) {
+            ZIVRetainedBitmapCache.put(loader.mSource.getKey(), new ZIVRetainedBitmapCache.ATIEntry(bitmap,
+                    loader.mSourceWidth, loader.mSourceHeight, loader.mSampleSize, loader.mConfig, loader.mIsOpaque));
+        }
+
+        // A less subsampled bitmap of the shown source keeps the viewport.
+        final Drawable drawable = getDrawable();
+        final ZIVViewportState state = drawable instanceof ZIVSourceDrawable &&
+                ((ZIVSourceDrawable) drawable).getSource() == loader.mSource ? getViewportState() : null;
+
+        setImageDrawableInternal(new ZIVSourceDrawable(getResources(), bitmap, loader.mSource,
+                loader.mSourceWidth, loader.mSourceHeight, loader.mSampleSize));
+
+        if (state != null && mPendingViewportState == null) {
+            mPendingViewportState = state;
+        }
+    }
+
+    private void onAnimatedImageLoaded(ATISourceLoader loader, ZIVAnimatedDrawable drawable) {
+        if (loader != mSourceLoader) {
+            drawable.release();
+            return;
+        }
+
+        mSourceLoader = null;
+        mImageSourceWidth = loader.mSourceWidth;
+        mImageSourceHeight = loader.mSourceHeight;
+
+        setImageDrawableInternal(drawable);
+    }
+
+    private void onImageStripLoaded(ATIStripLoader loader, List<ZIVImageSource> sources, int[] widths, int[] heights,
+                                    boolean isOpaque) {
+        if (loader != mStripLoader) return;
+
+        mStripLoader = null;
+
+        if (sources.isEmpty()) return;
+
+        final ZIVStripDrawable drawable = new ZIVStripDrawable(sources, widths, heights,
+                loader.mOrientation == StripOrientation.VERTICAL, isOpaque);
+        drawable.setDecodeConfig(ZIVBitmapConfigs.getConfig(mDecodePolicy, isOpaque, false));
+
+        setImageDrawableInternal(drawable);
+    }
+
+    /**
+     * Returns the largest power of 2 sample size that keeps the image not smaller than the target size
+     * and not larger than the maximum bitmap size.
+     */
+    static int calculateSampleSize(int width, int height, int targetWidth, int targetHeight, int maxSize) {
+        int sampleSize = 1;
+
+        while ((width / (sampleSize * 2) >= targetWidth && height / (sampleSize * 2) >= targetHeight) ||
+                Math.max(width, height) / sampleSize > maxSize) {
+            sampleSize *= 2;
+        }
+
+        return sampleSize;
+    }
+
+    private final ScaleGestureDetector.SimpleOnScaleGestureListener mOnScaleGestureListener = new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+
+        private void scaleTo(ATIZoomInfo scaleInfo, float futureScale) {
+            float currentPivotX = mCurrentZoom.mPivotX;
+            float currentPivotY = mCurrentZoom.mPivotY;
+
+            float tmpScaleFactor;
+
+            while (scaleInfo != null) {
+
+                if (scaleInfo.mScaleTo != getCurrentZoom()) {
+                    tmpScaleFactor = scaleInfo.mScaleTo / getCurrentZoom();
+                    scale(tmpScaleFactor, currentPivotX, currentPivotY);
+                }
+
+                currentPivotX = scaleInfo.mPivotX;
+                currentPivotY = scaleInfo.mPivotY;
+
+                if (scaleInfo.mScaleFrom <= futureScale) {
+                    tmpScaleFactor = futureScale / getCurrentZoom();
                     scale(tmpScaleFactor, currentPivotX, currentPivotY);
 
                     if (futureScale == scaleInfo.mScaleFrom) {
@@ -661,7 +1587,7 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
                 final float currentScale = getCurrentZoom();
                 final float futureScale = currentScale * scaleFactor;
 
-                if (futureScale > mMinZoom - mMinOverZoom && futureScale < mMaxZoom + mMaxOverZoom) {
+                if (futureScale > mMinZoom - mMinOverZoom && futureScale < getMaxZoomLimit() + mMaxOverZoom) {
                     if (mEventListener != null) {
                         mEventListener.onPinchZoom(currentScale, scaleFactor);
                     }
@@ -718,7 +1644,7 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
         public boolean onScaleBegin(ScaleGestureDetector detector) {
             if (mCurrentState == State.NORMAL || mCurrentState == State.SCROLL) {
 
-                mCurrentState = State.PINCH_SCALE;
+                setState(State.PINCH_SCALE);
 
                 mCurrentZoom = new ATIZoomInfo();
 
@@ -749,15 +1675,16 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
             }
 
             if (currentScale < mMinZoom) {
-                mSmoothScaleTask.start(mMinZoom, mCenterPoint.x, mCenterPoint.y, mOverZoomAnimationDuration, 0, 0, false);
-            } else if (currentScale > mMaxZoom) {
+                getSmoothScaleTask().start(mMinZoom, mCenterPoint.x, mCenterPoint.y, mOverZoomAnimationDuration, 0, 0, false);
+            } else if (currentScale > getMaxZoomLimit()) {
+                final float maxZoom = getMaxZoomLimit();
 
-                if (mMaxZoom > mCurrentZoom.mScaleFrom) {
-                    mCurrentZoom.mScaleTo = mMaxZoom;
+                if (maxZoom > mCurrentZoom.mScaleFrom) {
+                    mCurrentZoom.mScaleTo = maxZoom;
                     mLastZooms.add(mCurrentZoom);
                 }
 
-                mSmoothScaleTask.start(mMaxZoom, mCurrentZoom.mPivotX, mCurrentZoom.mPivotY, mOverZoomAnimationDuration, 0, 0, false);
+                getSmoothScaleTask().start(maxZoom, mCurrentZoom.mPivotX, mCurrentZoom.mPivotY, mOverZoomAnimationDuration, 0, 0, false);
             } else {
                 if (currentScale > mCurrentZoom.mScaleFrom) {
                     mCurrentZoom.mScaleTo = currentScale;
@@ -773,7 +1700,7 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
                 }
 
                 if (!springBackIfOverScroll()) {
-                    mCurrentState = State.NORMAL;
+                    setState(State.NORMAL);
                 }
             }
         }
@@ -818,6 +1745,342 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
         mEventListener = eventListener;
     }
 
+    /**
+     * Returns annotation layer that is drawn on top of the image.
+     *
+     * @return Annotation layer.
+     */
+    public ZIVAnnotationLayer getAnnotationLayer() {
+        if (mAnnotationLayer == null) {
+            mAnnotationLayer = new ZIVAnnotationLayer(this);
+
+            final Drawable drawable = getDrawable();
+            if (drawable != null) {
+                mAnnotationLayer.setImageSize(drawable.getIntrinsicWidth(), drawable.getIntrinsicHeight());
+            }
+        }
+        return mAnnotationLayer;
+    }
+
+    /**
+     * Returns visible part of the image in image(drawable) coordinates. The padding is not a part of the visible area.
+     *
+     * @param out Rect to store the result.
+     * @return False if image is not visible.
+     */
+    public boolean getVisibleImageRect(RectF out) {
+        if (mCurrentState == State.DISABLE) return false;
+
+        final float left = getScrollX();
+        final float top = getScrollY();
+
+        out.set(left, top, left + getWidth() - getPaddingLeft() - getPaddingRight(),
+                top + getHeight() - getPaddingTop() - getPaddingBottom());
+
+        if (!out.intersect(mCurrentDrawableRect)) return false;
+
+        updateMappingMatrices();
+        mInverseDrawMatrix.mapRect(out);
+
+        return true;
+    }
+
+    /**
+     * Maps points from view coordinates to image(drawable) coordinates in place.
+     *
+     * @param points Array of [x0, y0, x1, y1, ...] pairs.
+     * @return False if image is not initialized.
+     */
+    public boolean mapViewToImage(float[] points) {
+        return mapViewToImage(points, 0, points, 0, points.length >> 1);
+    }
+
+    /**
+     * Maps points from view coordinates to image(drawable) coordinates.
+     *
+     * @param dst        Array to store the mapped points.
+     * @param dstIndex   Index of the first mapped point in dst.
+     * @param src        Array of [x0, y0, x1, y1, ...] pairs.
+     * @param srcIndex   Index of the first point in src.
+     * @param pointCount Count of points.
+     * @return False if image is not initialized.
+     */
+    public boolean mapViewToImage(float[] dst, int dstIndex, float[] src, int srcIndex, int pointCount) {
+        if (mCurrentState == State.DISABLE) return false;
+
+        updateMappingMatrices();
+        mViewToImageMatrix.mapPoints(dst, dstIndex, src, srcIndex, pointCount);
+
+        return true;
+    }
+
+    /**
+     * Maps points from image(drawable) coordinates to view coordinates in place.
+     *
+     * @param points Array of [x0, y0, x1, y1, ...] pairs.
+     * @return False if image is not initialized.
+     */
+    public boolean mapImageToView(float[] points) {
+        return mapImageToView(points, 0, points, 0, points.length >> 1);
+    }
+
+    /**
+     * Maps points from image(drawable) coordinates to view coordinates.
+     *
+     * @param dst        Array to store the mapped points.
+     * @param dstIndex   Index of the first mapped point in dst.
+     * @param src        Array of [x0, y0, x1, y1, ...] pairs.
+     * @param srcIndex   Index of the first point in src.
+     * @param pointCount Count of points.
+     * @return False if image is not initialized.
+     */
+    public boolean mapImageToView(float[] dst, int dstIndex, float[] src, int srcIndex, int pointCount) {
+        if (mCurrentState == State.DISABLE) return false;
+
+        updateMappingMatrices();
+        mImageToViewMatrix.mapPoints(dst, dstIndex, src, srcIndex, pointCount);
+
+        return true;
+    }
+
+    /**
+     * Maps rect from view coordinates to image(drawable) coordinates in place.
+     *
+     * @param rect Rect.
+     * @return False if image is not initialized.
+     */
+    public boolean mapViewToImage(RectF rect) {
+        if (mCurrentState == State.DISABLE) return false;
+
+        updateMappingMatrices();
+        mViewToImageMatrix.mapRect(rect);
+
+        return true;
+    }
+
+    /**
+     * Maps rect from image(drawable) coordinates to view coordinates in place.
+     *
+     * @param rect Rect.
+     * @return False if image is not initialized.
+     */
+    public boolean mapImageToView(RectF rect) {
+        if (mCurrentState == State.DISABLE) return false;
+
+        updateMappingMatrices();
+        mImageToViewMatrix.mapRect(rect);
+
+        return true;
+    }
+
+    /**
+     * Adds listener that is notified when zoom or scroll of the image is changed.
+     *
+     * @param listener Viewport listener.
+     */
+    public void addViewportListener(ZIVViewportListener listener) {
+        if (!mViewportListeners.contains(listener)) {
+            mViewportListeners.add(listener);
+        }
+    }
+
+    /**
+     * Removes viewport listener.
+     *
+     * @param listener Viewport listener.
+     */
+    public void removeViewportListener(ZIVViewportListener listener) {
+        mViewportListeners.remove(listener);
+    }
+
+    /**
+     * Scrolls the image so that the image point is at the center of the view if possible.
+     *
+     * @param x Point x(image coordinates).
+     * @param y Point y(image coordinates).
+     */
+    public void setImageCenter(float x, float y) {
+        if (mCurrentState == State.FLING && mFlingTask != null) {
+            mFlingTask.stop();
+        }
+
+        if (mCurrentState != State.NORMAL) return;
+
+        mTmpPoint[0] = x;
+        mTmpPoint[1] = y;
+        mapImageToView(mTmpPoint);
+
+        final int oldX = getScrollX();
+        final int oldY = getScrollY();
+
+        int newX = oldX, newY = oldY;
+
+        if (mCurrentDrawableRect.width() > getWidth()) {
+            newX = oldX + Math.round(mTmpPoint[0] - getWidth() * 0.5f);
+            newX = Math.max(Math.round(mCurrentDrawableRect.left),
+                    Math.min(newX, Math.round(mCurrentDrawableRect.right) - getWidth()));
+        }
+
+        if (mCurrentDrawableRect.height() > getHeight()) {
+            newY = oldY + Math.round(mTmpPoint[1] - getHeight() * 0.5f);
+            newY = Math.max(Math.round(mCurrentDrawableRect.top),
+                    Math.min(newY, Math.round(mCurrentDrawableRect.bottom) - getHeight()));
+        }
+
+        if (newX != oldX || newY != oldY) {
+            scrollTo(newX, newY);
+
+            if (mEventListener != null) {
+                mEventListener.onScroll(oldX, oldY, getScrollX(), getScrollY());
+            }
+        }
+    }
+
+    /**
+     * Returns the record of the current viewport.
+     *
+     * @return Viewport state or null if there is no image shown.
+     */
+    @Nullable
+    public ZIVViewportState getViewportState() {
+        final Drawable drawable = getDrawable();
+
+        if (mCurrentState == State.DISABLE || drawable == null ||
+                drawable.getIntrinsicWidth() <= 0 || drawable.getIntrinsicHeight() <= 0) {
+            return null;
+        }
+
+        mTmpPoint[0] = getWidth() * 0.5f;
+        mTmpPoint[1] = getHeight() * 0.5f;
+        mapViewToImage(mTmpPoint);
+
+        final float[] zoomHistory = new float[mLastZooms.size() * 4];
+
+        for (int i = 0; i < mLastZooms.size(); i++) {
+            final ATIZoomInfo zoomInfo = mLastZooms.get(i);
+
+            zoomHistory[i * 4] = zoomInfo.mScaleFrom;
+            zoomHistory[i * 4 + 1] = zoomInfo.mScaleTo;
+            zoomHistory[i * 4 + 2] = zoomInfo.mPivotX / getWidth();
+            zoomHistory[i * 4 + 3] = zoomInfo.mPivotY / getHeight();
+        }
+
+        return new ZIVViewportState(getCurrentZoom(), getCurrentRotation(), mTmpPoint[0] / drawable.getIntrinsicWidth(),
+                mTmpPoint[1] / drawable.getIntrinsicHeight(), zoomHistory);
+    }
+
+    /**
+     * Restores the viewport. If the image is not shown yet, the viewport is restored as soon as the image
+     * is laid out, before the first frame.
+     *
+     * @param state Viewport state or null.
+     */
+    public void setViewportState(@Nullable ZIVViewportState state) {
+        if (state != null && mCurrentState == State.NORMAL) {
+            applyViewportState(state);
+            mPendingViewportState = null;
+        } else {
+            mPendingViewportState = state;
+        }
+    }
+
+    /**
+     * Sets cache of the viewport states used by {@link #bind(long)} and {@link #recycle()}.
+     *
+     * @param cache Viewport states cache or null.
+     */
+    public void setViewportStateCache(@Nullable ZIVViewportStateCache cache) {
+        mViewportStateCache = cache;
+    }
+
+    /**
+     * Binds the view to the item, the viewport of the item is restored from the viewport states cache.
+     * Call it before the image of the item is set.
+     *
+     * @param itemId Item id.
+     */
+    public void bind(long itemId) {
+        mItemId = itemId;
+        setViewportState(mViewportStateCache != null ? mViewportStateCache.get(itemId) : null);
+    }
+
+    /**
+     * Saves the viewport of the bound item to the viewport states cache and releases the image,
+     * tiles, mipmaps and the zoom history.
+     */
+    public void recycle() {
+        if (mViewportStateCache != null && mItemId != NO_ITEM_ID) {
+            final ZIVViewportState state = getViewportState();
+
+            if (state != null) {
+                mViewportStateCache.put(mItemId, state);
+            } else if (mPendingViewportState != null) {
+                mViewportStateCache.put(mItemId, mPendingViewportState);
+            }
+        }
+
+        mItemId = NO_ITEM_ID;
+        mPendingViewportState = null;
+
+        setImageDrawable(null);
+
+        clearMipmaps();
+        mLastZooms.clear();
+    }
+
+    /**
+     * Returns id of the bound item.
+     *
+     * @return Item id or {@link #NO_ITEM_ID}.
+     */
+    public long getItemId() {
+        return mItemId;
+    }
+
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        final ATISavedState savedState = new ATISavedState(super.onSaveInstanceState());
+
+        final ZIVViewportState state = getViewportState();
+        savedState.mViewportState = state != null ? state : mPendingViewportState;
+
+        return savedState;
+    }
+
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof ATISavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+
+        final ATISavedState savedState = (ATISavedState) state;
+        super.onRestoreInstanceState(savedState.getSuperState());
+
+        setViewportState(savedState.mViewportState);
+    }
+
+    private void applyViewportState(ZIVViewportState state) {
+        final Drawable drawable = getDrawable();
+
+        final float zoom = Math.max(mMinZoom, Math.min(state.mZoom, getMaxZoomLimit()));
+        if (zoom != getCurrentZoom()) {
+            scale(zoom / getCurrentZoom(), mCenterPoint.x, mCenterPoint.y);
+        }
+
+        if (state.mRotation != getCurrentRotation()) {
+            rotate(state.mRotation - getCurrentRotation(), mCenterPoint.x, mCenterPoint.y);
+        }
+
+        mLastZooms.clear();
+        for (int i = 0; i + 3 < state.mZoomHistory.length; i += 4) {
+            mLastZooms.add(new ATIZoomInfo(state.mZoomHistory[i], state.mZoomHistory[i + 1],
+                    state.mZoomHistory[i + 2] * getWidth(), state.mZoomHistory[i + 3] * getHeight()));
+        }
+
+        setImageCenter(state.mCenterX * drawable.getIntrinsicWidth(), state.mCenterY * drawable.getIntrinsicHeight());
+    }
+
     /**
      * Returns double tap animation duration.
      *
@@ -914,55 +2177,360 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
         if (minOverZoom < 0 || minOverZoom > 1f) {
             throw new IllegalArgumentException(sErrorInvalidArgumentMinOverScale);
         }
-        mMinOverZoom = minOverZoom;
+        mMinOverZoom = minOverZoom;
+    }
+
+    /**
+     * Sets value that adds to the maximum zoom value.
+     *
+     * @param maxOverZoom Over zooming value.
+     */
+    public void setMaxOverZoom(float maxOverZoom) {
+        if (maxOverZoom < 0) {
+            throw new IllegalArgumentException(sErrorInvalidArgumentMaxOverScale);
+        }
+        mMaxOverZoom = maxOverZoom;
+    }
+
+    /**
+     * Returns the value that subtracts from the minimum zoom value.
+     *
+     * @return Over zoom value.
+     */
+    public float getMinOverZoom() {
+        return mMinOverZoom;
+    }
+
+    /**
+     * Returns the value that adds to the maximum zoom value.
+     *
+     * @return Over zoom value.
+     */
+    public float getMaxOverZoom() {
+        return mMaxOverZoom;
+    }
+
+    /**
+     * Returns minimum zoom value.
+     *
+     * @return Min zoom value.
+     */
+    public float getMinZoom() {
+        return mMinZoom;
+    }
+
+    /**
+     * Returns maximum zoom value.
+     *
+     * @return Max zoom value.
+     */
+    public float getMaxZoom() {
+        return mMaxZoom;
+    }
+
+    /**
+     * Sets how the image is rendered while it is scrolled, flung or pinch zoomed. Default is FULL,
+     * the other qualities trade sharpness during gestures for cheaper frames.
+     *
+     * @param motionQuality Render quality during gestures.
+     */
+    public void setMotionQuality(MotionQuality motionQuality) {
+        if (motionQuality == null) {
+            throw new IllegalArgumentException(sErrorInvalidArgumentMotionQuality);
+        }
+        mMotionQuality = motionQuality;
+        updateQualityTier();
+    }
+
+    /**
+     * Returns render quality during gestures.
+     *
+     * @return Render quality during gestures.
+     */
+    public MotionQuality getMotionQuality() {
+        return mMotionQuality;
+    }
+
+    /**
+     * Enables drawing of prefiltered downsampled copies of the image when it is zoomed out.
+     *
+     * @param mipmapEnabled True to enable.
+     */
+    public void setMipmapEnabled(boolean mipmapEnabled) {
+        mMipmapEnabled = mipmapEnabled;
+
+        if (mCurrentState != State.DISABLE) {
+            initMipmaps();
+        }
+        invalidate();
+    }
+
+    /**
+     * Returns true if mipmaps are enabled.
+     *
+     * @return True if mipmaps are enabled.
+     */
+    public boolean isMipmapEnabled() {
+        return mMipmapEnabled;
+    }
+
+    /**
+     * Enables two finger rotation of the image.
+     *
+     * @param rotationEnabled True to enable.
+     */
+    public void setRotationEnabled(boolean rotationEnabled) {
+        mIsRotationEnabled = rotationEnabled;
+        mIsRotating = false;
+    }
+
+    /**
+     * Returns true if two finger rotation is enabled.
+     *
+     * @return True if rotation is enabled.
+     */
+    public boolean isRotationEnabled() {
+        return mIsRotationEnabled;
+    }
+
+    /**
+     * Sets orientation of the image. The image is fitted into the view in this orientation, bitmaps are never
+     * rotated, only the transform. Zoom and the image point at the center of the view are kept.
+     * Image strips are not rotated.
+     *
+     * @param degrees Angle(degrees), clockwise, a multiple of 90.
+     */
+    public void setImageRotation(int degrees) {
+        if (degrees % 90 != 0) {
+            throw new IllegalArgumentException(sErrorInvalidArgumentImageRotation);
+        }
+
+        degrees = ((degrees % 360) + 360) % 360;
+        if (degrees == mImageRotation) return;
+
+        final ZIVViewportState state = getViewportState();
+        mImageRotation = degrees;
+
+        if (state != null) {
+            mPendingViewportState = state;
+        }
+
+        mIsInit = false;
+
+        requestLayout();
+        invalidate();
+    }
+
+    /**
+     * Returns orientation of the image.
+     *
+     * @return Angle(degrees), clockwise: 0, 90, 180 or 270.
+     */
+    public int getImageRotation() {
+        return mImageRotation;
+    }
+
+    /**
+     * Returns true if an animation, a fling or a pending wheel/key input is running. The view posts no frame
+     * callbacks when it is idle.
+     *
+     * @return True if animating.
+     */
+    public boolean isAnimating() {
+        return !mFrameScheduler.isIdle();
+    }
+
+    /**
+     * Returns count of the animation frame callbacks posted by the view since its creation.
+     *
+     * @return Count of frames.
+     */
+    public long getPostedFrameCount() {
+        return mFrameScheduler.getPostedFrameCount();
+    }
+
+    /**
+     * Returns how many times the view has gone idle after animating.
+     *
+     * @return Count of idle transitions.
+     */
+    public long getIdleTransitionCount() {
+        return mFrameScheduler.getIdleTransitionCount();
+    }
+
+    /**
+     * Returns the rotation applied by gestures on top of the image orientation.
+     *
+     * @return Angle(degrees), clockwise, in (-180, 180].
+     */
+    public float getCurrentRotation() {
+        return mCurrentState != State.DISABLE ? (float) mViewport.getRotation() : 0f;
+    }
+
+    /**
+     * Sets bitmap configs of the images decoded by the view. Applies to the images and tiles decoded
+     * from now on. Mipmaps are not built for hardware bitmaps.
+     *
+     * @param decodePolicy Decode policy.
+     */
+    public void setDecodePolicy(DecodePolicy decodePolicy) {
+        if (decodePolicy == null) {
+            throw new IllegalArgumentException(sErrorInvalidArgumentDecodePolicy);
+        }
+        mDecodePolicy = decodePolicy;
+
+        final Drawable drawable = getDrawable();
+        if (drawable instanceof ZIVTiledDrawable) {
+            final ZIVTiledDrawable tiledDrawable = (ZIVTiledDrawable) drawable;
+            tiledDrawable.setDecodeConfig(ZIVBitmapConfigs.getConfig(mDecodePolicy, tiledDrawable.getPyramid().isOpaque(), true));
+        } else if (drawable instanceof ZIVStripDrawable) {
+            final ZIVStripDrawable stripDrawable = (ZIVStripDrawable) drawable;
+            stripDrawable.setDecodeConfig(ZIVBitmapConfigs.getConfig(mDecodePolicy, stripDrawable.isOpaque(), false));
+        }
+    }
+
+    /**
+     * Returns bitmap configs policy.
+     *
+     * @return Decode policy.
+     */
+    public DecodePolicy getDecodePolicy() {
+        return mDecodePolicy;
+    }
+
+    /**
+     * Fills the breakdown of the memory retained by the view. Doesn't allocate, may be called every frame.
+     *
+     * @param out Memory usage to fill.
+     * @return The filled memory usage.
+     */
+    public ZIVMemoryUsage getMemoryUsage(ZIVMemoryUsage out) {
+        out.reset();
+        addMemoryUsage(out);
+
+        return out;
+    }
+
+    /**
+     * Fills the memory retained by all existing views. A bitmap shown by several views is counted once,
+     * retained bitmaps that are not shown by any view are counted as pooled bitmaps. Has to be called
+     * from the main thread.
+     *
+     * @param out Memory usage to fill.
+     * @return The filled memory usage.
+     */
+    public static ZIVMemoryUsage getProcessMemoryUsage(ZIVMemoryUsage out) {
+        out.reset();
+
+        final Set<Bitmap> shownBitmaps = Collections.newSetFromMap(new IdentityHashMap<Bitmap, Boolean>());
+
+        synchronized (sInstances) {
+            for (ZIVImageView view : sInstances.keySet()) {
+                if (view == null) continue;
+
+                view.addMemoryUsage(out);
+
+                final Bitmap bitmap = view.getShownBitmap();
+                if (bitmap != null && !shownBitmaps.add(bitmap)) {
+                    out.mDisplayedBitmapBytes -= ZIVBitmapConfigs.getByteCount(bitmap);
+                }
+            }
+        }
+
+        for (ZIVRetainedBitmapCache.ATIEntry entry : ZIVRetainedBitmapCache.snapshot().values()) {
+            if (!shownBitmaps.contains(entry.mBitmap)) {
+                out.mPooledBitmapBytes += ZIVBitmapConfigs.getByteCount(entry.mBitmap);
+            }
+        }
+        // The views share the cache, the tiles of the same or released pyramids are counted once.
+        out.mCompressedTileCacheBytes = ZIVCompressedTileCache.get().getSize();
+
+        return out;
     }
 
     /**
-     * Sets value that adds to the maximum zoom value.
-     *
-     * @param maxOverZoom Over zooming value.
+     * Returns the bitmap counted as the displayed bitmap or null.
      */
-    public void setMaxOverZoom(float maxOverZoom) {
-        if (maxOverZoom < 0) {
-            throw new IllegalArgumentException(sErrorInvalidArgumentMaxOverScale);
+    private Bitmap getShownBitmap() {
+        final Drawable drawable = getDrawable();
+
+        return drawable instanceof BitmapDrawable ? ((BitmapDrawable) drawable).getBitmap() : null;
+    }
+
+    private void addMemoryUsage(ZIVMemoryUsage usage) {
+        final Drawable drawable = getDrawable();
+
+        if (drawable instanceof ZIVTiledDrawable) {
+            ((ZIVTiledDrawable) drawable).addMemoryUsage(usage);
+        } else if (drawable instanceof ZIVStripDrawable) {
+            ((ZIVStripDrawable) drawable).addMemoryUsage(usage);
+        } else if (drawable instanceof ZIVAnimatedDrawable) {
+            ((ZIVAnimatedDrawable) drawable).addMemoryUsage(usage);
+        } else if (drawable instanceof BitmapDrawable && ((BitmapDrawable) drawable).getBitmap() != null) {
+            usage.mDisplayedBitmapBytes += ZIVBitmapConfigs.getByteCount(((BitmapDrawable) drawable).getBitmap());
         }
-        mMaxOverZoom = maxOverZoom;
+
+        if (mMipmapChain != null) {
+            usage.mMipmapBytes += mMipmapChain.getByteCount();
+        }
+
+        usage.mZoomHistoryBytes += (long) mLastZooms.size() * ZOOM_INFO_SIZE_ESTIMATE;
+        usage.mViewCount++;
     }
 
     /**
-     * Returns the value that subtracts from the minimum zoom value.
+     * Returns the java heap memory saved by the decode policy: the difference between the size of the shown
+     * bitmaps in ARGB_8888 and their actual size in the heap. Pixels of hardware bitmaps are not in the heap.
      *
-     * @return Over zoom value.
+     * @return Saved memory(bytes).
      */
-    public float getMinOverZoom() {
-        return mMinOverZoom;
+    public long getDecodeMemorySaved() {
+        final Drawable drawable = getDrawable();
+
+        if (drawable instanceof ZIVTiledDrawable) {
+            return ((ZIVTiledDrawable) drawable).getSavedByteCount();
+        } else if (drawable instanceof ZIVStripDrawable) {
+            return ((ZIVStripDrawable) drawable).getSavedByteCount();
+        } else if (drawable instanceof BitmapDrawable && ((BitmapDrawable) drawable).getBitmap() != null) {
+            return ZIVBitmapConfigs.getSavedByteCount(((BitmapDrawable) drawable).getBitmap());
+        }
+
+        return 0;
     }
 
     /**
-     * Returns the value that adds to the maximum zoom value.
+     * Returns current quality tier.
      *
-     * @return Over zoom value.
+     * @return Current quality tier.
      */
-    public float getMaxOverZoom() {
-        return mMaxOverZoom;
+    public QualityTier getCurrentQualityTier() {
+        return mCurrentQualityTier;
     }
 
     /**
-     * Returns minimum zoom value.
+     * Returns total time spent in the quality tier.
      *
-     * @return Min zoom value.
+     * @param tier Quality tier.
+     * @return Time(ms).
      */
-    public float getMinZoom() {
-        return mMinZoom;
+    public long getTimeInQualityTier(QualityTier tier) {
+        long time = mQualityTierTime[tier.ordinal()];
+
+        if (tier == mCurrentQualityTier) {
+            time += SystemClock.uptimeMillis() - mQualityTierStartTime;
+        }
+
+        return time;
     }
 
     /**
-     * Returns maximum zoom value.
-     *
-     * @return Max zoom value.
+     * Resets time spent in every quality tier.
      */
-    public float getMaxZoom() {
-        return mMaxZoom;
+    public void resetQualityTierTime() {
+        for (int i = 0; i < mQualityTierTime.length; i++) {
+            mQualityTierTime[i] = 0;
+        }
+        mQualityTierStartTime = SystemClock.uptimeMillis();
     }
 
     /**
@@ -971,7 +2539,7 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
      * @return Current zoom value.
      */
     public float getCurrentZoom() {
-        return mCurrentState != State.DISABLE ? mCurrentMatrixValues[Matrix.MSCALE_X] : 1f;
+        return mCurrentState != State.DISABLE ? (float) mViewport.getScale() : 1f;
     }
 
     /**
@@ -1002,9 +2570,9 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
      * @param animate   If true animate zooming.
      */
     public void setZoom(float zoomValue, float px, float py, boolean animate) {
-        if (mCurrentState == State.NORMAL && (zoomValue >= mMinZoom && zoomValue <= mMaxZoom)) {
+        if (mCurrentState == State.NORMAL && (zoomValue >= mMinZoom && zoomValue <= getMaxZoomLimit())) {
             if (animate) {
-                mSmoothScaleTask.start(zoomValue, px, py, mDoubleTapAnimationDuration, 0, 0, false);
+                getSmoothScaleTask().start(zoomValue, px, py, mDoubleTapAnimationDuration, 0, 0, false);
             } else {
                 scale(zoomValue / getCurrentZoom(), px, py);
             }
@@ -1019,18 +2587,17 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
     public void reset(boolean animate) {
         if (mCurrentState != State.DISABLE) {
 
-            removeCallbacks(mSmoothScaleTask);
-            removeCallbacks(mFlingTask);
+            stopAnimations();
 
             if (animate) {
-                mSmoothScaleTask.start(1F, mCenterPoint.x, mCenterPoint.y, mDoubleTapAnimationDuration, 0, 0, true);
+                getSmoothScaleTask().start(1F, mCenterPoint.x, mCenterPoint.y, mDoubleTapAnimationDuration, 0, 0, true);
             } else {
-                mCurrentState = State.NORMAL;
+                setState(State.NORMAL);
 
                 mDrawMatrix.set(mNormalMatrix);
+                mIsMappingValid = false;
 
-                mCurrentMatrix.reset();
-                mCurrentMatrix.getValues(mCurrentMatrixValues);
+                mViewport.reset();
 
                 mCurrentDrawableRect.set(mNormalDrawableRect);
 
@@ -1042,7 +2609,7 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
 
                 scrollTo(0, 0);
 
-                super.setImageMatrix(mDrawMatrix);
+                updateImageMatrix();
             }
         }
     }
@@ -1054,24 +2621,208 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
         reset(false);
     }
 
+    private void setState(State state) {
+        mCurrentState = state;
+        updateQualityTier();
+    }
+
+    private void updateQualityTier() {
+        // Called from the super constructor before the fields are initialized.
+        if (mCurrentQualityTier == null) return;
+
+        final boolean isMoving = mCurrentState == State.FLING || mCurrentState == State.SCROLL ||
+                mCurrentState == State.PINCH_SCALE;
+
+        final QualityTier tier = isMoving && mMotionQuality != MotionQuality.FULL ?
+                QualityTier.FAST : QualityTier.FULL;
+
+        if (tier != mCurrentQualityTier) {
+            final long now = SystemClock.uptimeMillis();
+
+            mQualityTierTime[mCurrentQualityTier.ordinal()] += now - mQualityTierStartTime;
+            mQualityTierStartTime = now;
+
+            mCurrentQualityTier = tier;
+
+            applyQualityTier();
+            invalidate();
+        }
+    }
+
+    private void applyQualityTier() {
+        final Drawable drawable = getDrawable();
+
+        if (drawable != null) {
+            drawable.setFilterBitmap(mIsDrawableFiltered && (mCurrentQualityTier == QualityTier.FULL ||
+                    mMotionQuality == MotionQuality.COARSE_MIPMAP));
+        }
+    }
+
+    /**
+     * Remembers whether the new drawable filters bitmaps, the FULL tier restores it instead of enabling filtering.
+     */
+    private void saveDrawableFilter() {
+        final Drawable drawable = getDrawable();
+
+        if (drawable instanceof BitmapDrawable) {
+            mIsDrawableFiltered = ((BitmapDrawable) drawable).getPaint().isFilterBitmap();
+        } else if (drawable != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            mIsDrawableFiltered = drawable.isFilterBitmap();
+        } else {
+            // Filtering of other drawables cannot be read before M.
+            mIsDrawableFiltered = true;
+        }
+    }
+
+    private void initMipmaps() {
+        final Drawable drawable = getDrawable();
+        final Bitmap bitmap = isVisibleBitmapDrawable(drawable) ? ((BitmapDrawable) drawable).getBitmap() : null;
+
+        final Bitmap current = mMipmapChain != null ? mMipmapChain.getSource() :
+                mMipmapLoader != null ? mMipmapLoader.mChain.getSource() : null;
+
+        if (current != null && (!mMipmapEnabled || current != bitmap)) {
+            clearMipmaps();
+        }
+
+        // The source is drawn until the levels are built.
+        if (mMipmapEnabled && mMipmapChain == null && mMipmapLoader == null && bitmap != null &&
+                !ZIVBitmapConfigs.isHardware(bitmap)) {
+            mMipmapLoader = new ATIMipmapLoader(new ZIVMipmapChain(bitmap));
+            ZIVDecodeExecutor.get().execute(mMipmapLoader);
+        }
+    }
+
+    private void clearMipmaps() {
+        mMipmapChain = null;
+
+        if (mMipmapLoader != null) {
+            mMipmapLoader.mIsCancelled = true;
+            mMipmapLoader = null;
+        }
+    }
+
+    private void onMipmapsLoaded(ATIMipmapLoader loader) {
+        if (loader != mMipmapLoader) return;
+
+        mMipmapLoader = null;
+        mMipmapChain = loader.mChain;
+
+        invalidate();
+    }
+
+    /**
+     * Returns the mipmap level that has to be drawn instead of the drawable or null.
+     */
+    private Bitmap getMipmapLevel() {
+        final Drawable drawable = getDrawable();
+
+        if (mMipmapChain == null || mCurrentState == State.DISABLE || !(drawable instanceof BitmapDrawable) ||
+                ((BitmapDrawable) drawable).getBitmap() != mMipmapChain.getSource()) {
+            return null;
+        }
+
+        final Bitmap source = mMipmapChain.getSource();
+
+        int level = mMipmapChain.getLevelForScale(getEffectiveScale() * drawable.getIntrinsicWidth() / source.getWidth());
+
+        if (mCurrentQualityTier == QualityTier.FAST && mMotionQuality == MotionQuality.COARSE_MIPMAP) {
+            level = Math.min(level + 1, mMipmapChain.getLevelCount() - 1);
+        }
+
+        return level != 0 ? mMipmapChain.getLevel(level) : null;
+    }
+
+    private void updateImageMatrix() {
+        final ZIVTracer tracer = sTracer;
+
+        if (tracer != null) tracer.beginSection(ZIVTracer.SECTION_SET_MATRIX);
+        super.setImageMatrix(mDrawMatrix);
+        if (tracer != null) tracer.endSection();
+
+        dispatchViewportChanged();
+    }
+
+    private void dispatchViewportChanged() {
+        if (mViewportListeners.isEmpty()) return;
+
+        final ZIVTracer tracer = sTracer;
+
+        if (tracer != null) tracer.beginSection(ZIVTracer.SECTION_LISTENERS);
+        try {
+            for (int i = 0; i < mViewportListeners.size(); i++) {
+                mViewportListeners.get(i).onViewportChanged(this);
+            }
+        } finally {
+            if (tracer != null) tracer.endSection();
+        }
+    }
+
+    /**
+     * Recomputes mapping matrices if the transform or the scroll offset has been changed.
+     */
+    private void updateMappingMatrices() {
+        final int scrollX = getScrollX();
+        final int scrollY = getScrollY();
+
+        if (!mIsMappingValid) {
+            mViewport.getInverseDrawMatrix(mNormalMatrixValues, mDrawMatrix, mInverseDrawMatrix);
+        } else if (scrollX == mMappingScrollX && scrollY == mMappingScrollY) {
+            return;
+        }
+
+        mImageToViewMatrix.set(mDrawMatrix);
+        mImageToViewMatrix.postTranslate(getPaddingLeft() - scrollX, getPaddingTop() - scrollY);
+
+        mViewToImageMatrix.set(mInverseDrawMatrix);
+        mViewToImageMatrix.preTranslate(scrollX - getPaddingLeft(), scrollY - getPaddingTop());
+
+        mMappingScrollX = scrollX;
+        mMappingScrollY = scrollY;
+        mIsMappingValid = true;
+    }
+
+    /**
+     * Returns screen pixels per drawable pixel.
+     */
+    float getEffectiveScale() {
+        mDrawMatrix.getValues(mDrawMatrixValues);
+
+        final float scaleX = mDrawMatrixValues[Matrix.MSCALE_X];
+        final float skewY = mDrawMatrixValues[Matrix.MSKEW_Y];
+
+        return (float) Math.sqrt(scaleX * scaleX + skewY * skewY);
+    }
+
     float getCurrentX() {
-        return mCurrentMatrixValues[Matrix.MTRANS_X];
+        return (float) mViewport.getTranslateX();
     }
 
     float getCurrentY() {
-        return mCurrentMatrixValues[Matrix.MTRANS_Y];
+        return (float) mViewport.getTranslateY();
+    }
+
+    /**
+     * Returns the maximum zoom value of gestures. Zoom of a tile pyramid is limited by the full resolution
+     * of the pyramid instead of the maximum zoom value, if it is larger.
+     */
+    private float getMaxZoomLimit() {
+        if (!(getDrawable() instanceof ZIVTiledDrawable) || mCurrentState == State.DISABLE) return mMaxZoom;
+
+        final float normalScale = (float) Math.hypot(mNormalMatrixValues[Matrix.MSCALE_X], mNormalMatrixValues[Matrix.MSKEW_Y]);
+
+        return normalScale > 0 ? Math.max(mMaxZoom, 1f / normalScale) : mMaxZoom;
     }
 
     private void init() {
-        removeCallbacks(mSmoothScaleTask);
-        removeCallbacks(mFlingTask);
+        stopAnimations();
 
-        mCurrentState = State.NORMAL;
+        setState(State.NORMAL);
 
         mDrawMatrix.set(mNormalMatrix);
+        mIsMappingValid = false;
 
-        mCurrentMatrix.reset();
-        mCurrentMatrix.getValues(mCurrentMatrixValues);
+        mViewport.reset();
 
         mNormalMatrix.getValues(mNormalMatrixValues);
 
@@ -1079,7 +2830,8 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
 
         mNormalMatrix.mapRect(mNormalDrawableRect);
 
-        if (!mViewBounds.contains(mNormalDrawableRect)) {
+        // The strip is longer than the view, it is scrolled along its axis without zoom.
+        if (!mViewBounds.contains(mNormalDrawableRect) && !(getDrawable() instanceof ZIVStripDrawable)) {
             mNormalDrawableRect.intersect(mViewBounds);
         }
 
@@ -1097,9 +2849,16 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
 
         mLastZooms.clear();
 
+        applyQualityTier();
+        initMipmaps();
+
+        if (mAnnotationLayer != null) {
+            mAnnotationLayer.setImageSize(getDrawable().getIntrinsicWidth(), getDrawable().getIntrinsicHeight());
+        }
+
         scrollTo(0, 0);
 
-        super.setImageMatrix(mDrawMatrix);
+        updateImageMatrix();
     }
 
     private boolean initNormalMatrix() {
@@ -1114,7 +2873,12 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
         viewWidth = viewWidth - (getPaddingLeft() + getPaddingRight());
         viewHeight = viewHeight - (getPaddingTop() + getPaddingBottom());
 
-        final int drawableWidth = drawable.getIntrinsicWidth(), drawableHeight = drawable.getIntrinsicHeight();
+        final boolean isRotated = mImageRotation != 0 && mNormalScaleType != MATRIX && !(drawable instanceof ZIVStripDrawable);
+        final boolean isSwapped = isRotated && mImageRotation % 180 != 0;
+
+        // The image is fitted in its orientation, the rotation is prepended to the fitting matrix.
+        final int drawableWidth = isSwapped ? drawable.getIntrinsicHeight() : drawable.getIntrinsicWidth();
+        final int drawableHeight = isSwapped ? drawable.getIntrinsicWidth() : drawable.getIntrinsicHeight();
 
         if (drawableWidth > 0 && drawableHeight > 0) {
 
@@ -1122,7 +2886,9 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
                 mNormalMatrix = new Matrix();
             }
 
-            if (drawableWidth != viewWidth || drawableHeight != viewHeight) {
+            if (drawable instanceof ZIVStripDrawable) {
+                initStripNormalMatrix((ZIVStripDrawable) drawable, viewWidth, viewHeight, drawableWidth, drawableHeight);
+            } else if (drawableWidth != viewWidth || drawableHeight != viewHeight || isRotated) {
                 float sx, sy, tx = 0, ty = 0;
                 boolean sxLarger = false;
 
@@ -1212,6 +2978,10 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
                     default:
                         break;
                 }
+
+                if (isRotated) {
+                    mNormalMatrix.preConcat(getImageRotationMatrix(drawable.getIntrinsicWidth(), drawable.getIntrinsicHeight()));
+                }
             }
         } else {
             mNormalMatrix = null;
@@ -1221,35 +2991,84 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
         return true;
     }
 
+    /**
+     * Returns the matrix that rotates the image by the image rotation and moves it back to the origin.
+     */
+    private Matrix getImageRotationMatrix(int width, int height) {
+        final Matrix matrix = new Matrix();
+        matrix.setRotate(mImageRotation);
+
+        switch (mImageRotation) {
+            case 90:
+                matrix.postTranslate(height, 0);
+                break;
+            case 180:
+                matrix.postTranslate(width, height);
+                break;
+            case 270:
+                matrix.postTranslate(0, width);
+                break;
+            default:
+                break;
+        }
+
+        return matrix;
+    }
+
+    /**
+     * Fits the strip across its axis, the strip starts at the top or left edge of the view
+     * and is centered if it is shorter than the view.
+     */
+    private void initStripNormalMatrix(ZIVStripDrawable drawable, int viewWidth, int viewHeight,
+                                       int drawableWidth, int drawableHeight) {
+        float scale, tx = 0, ty = 0;
+
+        if (drawable.isVertical()) {
+            scale = (float) viewWidth / (float) drawableWidth;
+            ty = Math.max(0, Math.round((viewHeight - drawableHeight * scale) * 0.5f));
+        } else {
+            scale = (float) viewHeight / (float) drawableHeight;
+            tx = Math.max(0, Math.round((viewWidth - drawableWidth * scale) * 0.5f));
+        }
+
+        mNormalMatrix.setScale(scale, scale);
+        mNormalMatrix.postTranslate(tx, ty);
+    }
+
 
     void scale(float scaleFactor) {
         scale(scaleFactor, mCenterPoint.x, mCenterPoint.y);
     }
 
     void scale(float scaleFactor, float pivotX, float pivotY) {
-        mCurrentMatrix.postScale(scaleFactor, scaleFactor, pivotX, pivotY);
-        mCurrentMatrix.getValues(mCurrentMatrixValues);
-
-        mCurrentDrawableRect.set(mNormalDrawableRect);
-        mCurrentMatrix.mapRect(mCurrentDrawableRect);
-
-        mDrawMatrix.set(mNormalMatrix);
-        mDrawMatrix.postConcat(mCurrentMatrix);
+        mViewport.scale(scaleFactor, pivotX, pivotY);
+        applyViewport();
+    }
 
-        super.setImageMatrix(mDrawMatrix);
+    void rotate(float degrees, float pivotX, float pivotY) {
+        mViewport.rotate(degrees, pivotX, pivotY);
+        applyViewport();
     }
 
     void translate(float dx, float dy) {
-        mCurrentMatrix.postTranslate(dx, dy);
-        mCurrentMatrix.getValues(mCurrentMatrixValues);
+        mViewport.translate(dx, dy);
+        applyViewport();
+    }
 
-        mCurrentDrawableRect.set(mNormalDrawableRect);
-        mCurrentMatrix.mapRect(mCurrentDrawableRect);
+    /**
+     * Updates the drawable rect and the draw matrix from the viewport.
+     */
+    private void applyViewport() {
+        final ZIVTracer tracer = sTracer;
 
-        mDrawMatrix.set(mNormalMatrix);
-        mDrawMatrix.postConcat(mCurrentMatrix);
+        if (tracer != null) tracer.beginSection(ZIVTracer.SECTION_TRANSFORM);
+        mViewport.mapRect(mNormalDrawableRect, mCurrentDrawableRect);
 
-        super.setImageMatrix(mDrawMatrix);
+        mViewport.getDrawMatrix(mNormalMatrixValues, mDrawMatrix);
+        mIsMappingValid = false;
+        if (tracer != null) tracer.endSection();
+
+        updateImageMatrix();
     }
 
     private boolean springBackIfOverScroll() {
@@ -1289,17 +3108,229 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
             }
 
             if (mCurrentXOverScroll == 0) {
-                ret = mFlingTask.start(ATIFling.MODE_SPRINGBACK, ATIFling.ONLY_Y, scrollX, scrollY, 0, 0, minX, minY, maxX, maxY);
+                ret = getFlingTask().start(ATIFling.MODE_SPRINGBACK, ATIFling.ONLY_Y, scrollX, scrollY, 0, 0, minX, minY, maxX, maxY);
             } else if (mCurrentYOverScroll == 0) {
-                ret = mFlingTask.start(ATIFling.MODE_SPRINGBACK, ATIFling.ONLY_X, scrollX, scrollY, 0, 0, minX, minY, maxX, maxY);
+                ret = getFlingTask().start(ATIFling.MODE_SPRINGBACK, ATIFling.ONLY_X, scrollX, scrollY, 0, 0, minX, minY, maxX, maxY);
             } else {
-                ret = mFlingTask.start(ATIFling.MODE_SPRINGBACK, ATIFling.X_AND_Y, scrollX, scrollY, 0, 0, minX, minY, maxX, maxY);
+                ret = getFlingTask().start(ATIFling.MODE_SPRINGBACK, ATIFling.X_AND_Y, scrollX, scrollY, 0, 0, minX, minY, maxX, maxY);
             }
         }
 
         return ret;
     }
 
+    private final class ATISourceLoader implements Runnable {
+        final ZIVImageSource mSource;
+        final int mTargetWidth, mTargetHeight;
+        final DecodePolicy mDecodePolicy;
+
+        int mSourceWidth, mSourceHeight;
+        int mSampleSize;
+        Bitmap.Config mConfig;
+        boolean mIsOpaque;
+
+        volatile boolean mIsCancelled;
+
+        ATISourceLoader(ZIVImageSource source, int targetWidth, int targetHeight, DecodePolicy decodePolicy) {
+            mSource = source;
+            mTargetWidth = targetWidth;
+            mTargetHeight = targetHeight;
+            mDecodePolicy = decodePolicy;
+        }
+
+        @Override
+        public void run() {
+            if (mIsCancelled) return;
+
+            final BitmapFactory.Options options = new BitmapFactory.Options();
+            final Bitmap bitmap;
+
+            try {
+                if (!ZIVImageSources.decodeBounds(mSource, options)) {
+                    throw new IOException(sErrorInvalidImageSource + mSource.getKey());
+                }
+
+                mSourceWidth = options.outWidth;
+                mSourceHeight = options.outHeight;
+
+                options.inSampleSize = calculateSampleSize(mSourceWidth, mSourceHeight,
+                        mTargetWidth, mTargetHeight, MAX_SOURCE_BITMAP_SIZE);
+
+                if (MIME_TYPE_GIF.equals(options.outMimeType)) {
+                    final Movie movie = ZIVImageSources.decodeMovie(mSource);
+
+                    // A gif of a single frame has zero duration and is shown as a bitmap.
+                    if (movie != null && movie.duration() > 0 && movie.width() > 0 && movie.height() > 0) {
+                        if (mIsCancelled) return;
+
+                        final ZIVAnimatedDrawable drawable = new ZIVAnimatedDrawable(movie, options.inSampleSize);
+
+                        post(new Runnable() {
+                            @Override
+                            public void run() {
+                                onAnimatedImageLoaded(ATISourceLoader.this, drawable);
+                            }
+                        });
+                        return;
+                    }
+                }
+
+                mIsOpaque = ZIVBitmapConfigs.isOpaqueMimeType(options.outMimeType);
+                mConfig = ZIVBitmapConfigs.getConfig(mDecodePolicy, mIsOpaque, false);
+                mSampleSize = options.inSampleSize;
+
+                options.inPreferredConfig = mConfig;
+
+                if (mIsCancelled) return;
+
+                bitmap = decode(options);
+            } catch (IOException e) {
+                Log.e(TAG, e.getMessage(), e);
+                return;
+            }
+
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    onImageSourceLoaded(ATISourceLoader.this, bitmap);
+                }
+            });
+        }
+
+        /**
+         * Decodes the image, falls back to ARGB_8888 if the image cannot be decoded to the requested config.
+         */
+        private Bitmap decode(BitmapFactory.Options options) throws IOException {
+            if (options.inPreferredConfig == Bitmap.Config.ARGB_8888) {
+                return mSource.decode(options);
+            }
+
+            try {
+                return mSource.decode(options);
+            } catch (IOException | IllegalArgumentException e) {
+                options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+                return mSource.decode(options);
+            }
+        }
+    }
+
+    /**
+     * Builds the mipmap levels of the drawable bitmap.
+     */
+    private final class ATIMipmapLoader implements Runnable {
+        final ZIVMipmapChain mChain;
+
+        volatile boolean mIsCancelled;
+
+        ATIMipmapLoader(ZIVMipmapChain chain) {
+            mChain = chain;
+        }
+
+        @Override
+        public void run() {
+            if (mIsCancelled) return;
+
+            mChain.build();
+
+            if (mIsCancelled) {
+                mChain.recycle();
+                return;
+            }
+
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    onMipmapsLoaded(ATIMipmapLoader.this);
+                }
+            });
+        }
+    }
+
+    /**
+     * Reads the headers of the strip pages.
+     */
+    private final class ATIStripLoader implements Runnable {
+        final List<ZIVImageSource> mSources;
+        final StripOrientation mOrientation;
+
+        volatile boolean mIsCancelled;
+
+        ATIStripLoader(List<ZIVImageSource> sources, StripOrientation orientation) {
+            mSources = sources;
+            mOrientation = orientation;
+        }
+
+        @Override
+        public void run() {
+            final BitmapFactory.Options options = new BitmapFactory.Options();
+
+            final List<ZIVImageSource> sources = new ArrayList<>(mSources.size());
+            final int[] widths = new int[mSources.size()];
+            final int[] heights = new int[mSources.size()];
+
+            boolean isOpaque = true;
+
+            for (ZIVImageSource source : mSources) {
+                if (mIsCancelled) return;
+
+                try {
+                    if (source == null || !ZIVImageSources.decodeBounds(source, options)) {
+                        throw new IOException(sErrorInvalidImageSource + (source != null ? source.getKey() : null));
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, e.getMessage(), e);
+                    continue;
+                }
+
+                widths[sources.size()] = options.outWidth;
+                heights[sources.size()] = options.outHeight;
+                sources.add(source);
+
+                isOpaque &= ZIVBitmapConfigs.isOpaqueMimeType(options.outMimeType);
+            }
+
+            final boolean isStripOpaque = isOpaque;
+
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    onImageStripLoaded(ATIStripLoader.this, sources, widths, heights, isStripOpaque);
+                }
+            });
+        }
+    }
+
+    static class ATISavedState extends BaseSavedState {
+        ZIVViewportState mViewportState;
+
+        ATISavedState(Parcelable superState) {
+            super(superState);
+        }
+
+        private ATISavedState(Parcel in) {
+            super(in);
+            mViewportState = in.readParcelable(ZIVViewportState.class.getClassLoader());
+        }
+
+        @Override
+        public void writeToParcel(Parcel out, int flags) {
+            super.writeToParcel(out, flags);
+            out.writeParcelable(mViewportState, flags);
+        }
+
+        public static final Creator<ATISavedState> CREATOR = new Creator<ATISavedState>() {
+            @Override
+            public ATISavedState createFromParcel(Parcel in) {
+                return new ATISavedState(in);
+            }
+
+            @Override
+            public ATISavedState[] newArray(int size) {
+                return new ATISavedState[size];
+            }
+        };
+    }
+
     private final static class ATIZoomInfo {
         float mScaleFrom, mScaleTo;
         float mPivotX, mPivotY;
@@ -1316,7 +3347,7 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
         }
     }
 
-    private final class ATISmoothScale implements Runnable {
+    private final class ATISmoothScale implements ZIVFrameScheduler.Animation {
         private float mTargetScale;
         private float mPivotX, mPivotY;
         private float mDuration;
@@ -1338,17 +3369,17 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
             mToY = toY;
             mCorrectTranslate = correctTranslate;
 
-            mCurrentState = State.SMOOTH_SCALE;
+            setState(State.SMOOTH_SCALE);
 
             if (mEventListener != null) {
                 mEventListener.onSmoothZoomStarted(getCurrentZoom(), targetScale, pivotX, pivotY);
             }
 
-            ViewCompat.postOnAnimationDelayed(ZIVImageView.this, this, 15L);
+            mFrameScheduler.start(this);
         }
 
         @Override
-        public void run() {
+        public boolean doFrame() {
             float timeValue = Math.min(mDuration, System.currentTimeMillis() - mStartTime) / mDuration;
             float interpolatedTimeValue = mInterpolator.getInterpolation(timeValue);
             float currentScaleFactor = findCurrentScaleFactor(interpolatedTimeValue, getCurrentZoom());
@@ -1372,12 +3403,12 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
             }
 
             if (timeValue < 1f) {
-                ViewCompat.postOnAnimationDelayed(ZIVImageView.this, this, 15L);
-                if ((getCurrentZoom() < mMaxZoom && mTargetScale < getCurrentZoom()) || getCurrentZoom() < 1f) {
+                if ((getCurrentZoom() < getMaxZoomLimit() && mTargetScale < getCurrentZoom()) || getCurrentZoom() < 1f) {
                     scrollTo((int) (getScrollX() * (1.0f - timeValue)), (int) (getScrollY() * (1.0f - timeValue)));
                 }
+                return true;
             } else {
-                mCurrentState = State.NORMAL;
+                setState(State.NORMAL);
 
                 if (mEventListener != null) {
                     mEventListener.onSmoothZoomEnded(getCurrentZoom());
@@ -1386,6 +3417,7 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
                 if (Math.abs(1f - getCurrentZoom()) <= 0.025f) {
                     reset();
                 }
+                return false;
             }
         }
 
@@ -1402,7 +3434,7 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
 
     }
 
-    final class ATIFling implements Runnable {
+    final class ATIFling implements ZIVFrameScheduler.Animation {
         static final int MODE_FLING = 0;
         static final int MODE_SPRINGBACK = 1;
 
@@ -1442,16 +3474,16 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
             }
 
             if (ret) {
-                mCurrentState = State.FLING;
+                setState(State.FLING);
 
-                ViewCompat.postOnAnimation(ZIVImageView.this, this);
+                mFrameScheduler.start(this);
             }
 
             return ret;
         }
 
         @Override
-        public void run() {
+        public boolean doFrame() {
             if (mScroller.computeScrollOffset()) {
 
                 final int oldX = getScrollX();
@@ -1463,15 +3495,17 @@ public class ZIVImageView extends AppCompatImageView implements ScrollingView, N
                     mEventListener.onFling(oldX, oldY, getScrollX(), getScrollY());
                 }
 
-                ViewCompat.postOnAnimationDelayed(ZIVImageView.this, this, 15L);
+                return true;
             } else {
-                mCurrentState = State.NORMAL;
+                setState(State.NORMAL);
+                return false;
             }
         }
 
         void stop() {
             mScroller.forceFinished(true);
-            mCurrentState = State.NORMAL;
+            mFrameScheduler.stop(this);
+            setState(State.NORMAL);
         }
 
         boolean isOverScrolled() {
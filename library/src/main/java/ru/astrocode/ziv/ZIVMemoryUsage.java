@@ -0,0 +1,129 @@
+package ru.astrocode.ziv;
+
+/**
+ * Breakdown of the memory retained by {@link ZIVImageView} instances, filled by
+ * {@link ZIVImageView#getMemoryUsage(ZIVMemoryUsage)} and {@link ZIVImageView#getProcessMemoryUsage(ZIVMemoryUsage)}.
+ * Instances are reusable, so they can be polled every frame.
+ */
+
+public final class ZIVMemoryUsage {
+    long mDisplayedBitmapBytes;
+    long mTileCacheBytes;
+    long mCompressedTileCacheBytes;
+    long mPooledBitmapBytes;
+    long mPlaceholderBytes;
+    long mMipmapBytes;
+    long mZoomHistoryBytes;
+
+    int mViewCount;
+
+    /**
+     * Returns the size of the shown bitmap, hardware bitmaps are counted as ARGB_8888.
+     *
+     * @return Size(bytes).
+     */
+    public long getDisplayedBitmapBytes() {
+        return mDisplayedBitmapBytes;
+    }
+
+    /**
+     * Returns the size of the decoded tiles cache.
+     *
+     * @return Size(bytes).
+     */
+    public long getTileCacheBytes() {
+        return mTileCacheBytes;
+    }
+
+    /**
+     * Returns the size of the encoded tiles in the second tier tile cache, outside the java heap.
+     *
+     * @return Size(bytes).
+     */
+    public long getCompressedTileCacheBytes() {
+        return mCompressedTileCacheBytes;
+    }
+
+    /**
+     * Returns the size of the bitmaps kept for reuse.
+     *
+     * @return Size(bytes).
+     */
+    public long getPooledBitmapBytes() {
+        return mPooledBitmapBytes;
+    }
+
+    /**
+     * Returns the size of the low resolution image drawn while tiles are loading.
+     *
+     * @return Size(bytes).
+     */
+    public long getPlaceholderBytes() {
+        return mPlaceholderBytes;
+    }
+
+    /**
+     * Returns the size of the built mipmap levels.
+     *
+     * @return Size(bytes).
+     */
+    public long getMipmapBytes() {
+        return mMipmapBytes;
+    }
+
+    /**
+     * Returns the estimated size of the zoom history.
+     *
+     * @return Size(bytes).
+     */
+    public long getZoomHistoryBytes() {
+        return mZoomHistoryBytes;
+    }
+
+    /**
+     * Returns count of the views the usage is summed over.
+     *
+     * @return Count of views.
+     */
+    public int getViewCount() {
+        return mViewCount;
+    }
+
+    /**
+     * Returns the total size of everything in the java heap or in the graphics memory.
+     *
+     * @return Size(bytes).
+     */
+    public long getHeapBytes() {
+        return mDisplayedBitmapBytes + mTileCacheBytes + mPooledBitmapBytes + mPlaceholderBytes +
+                mMipmapBytes + mZoomHistoryBytes;
+    }
+
+    /**
+     * Returns the total size including the memory outside the java heap.
+     *
+     * @return Size(bytes).
+     */
+    public long getTotalBytes() {
+        return getHeapBytes() + mCompressedTileCacheBytes;
+    }
+
+    void reset() {
+        mDisplayedBitmapBytes = 0;
+        mTileCacheBytes = 0;
+        mCompressedTileCacheBytes = 0;
+        mPooledBitmapBytes = 0;
+        mPlaceholderBytes = 0;
+        mMipmapBytes = 0;
+        mZoomHistoryBytes = 0;
+        mViewCount = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "ZIVMemoryUsage{views=" + mViewCount + ", displayed=" + mDisplayedBitmapBytes +
+                ", tiles=" + mTileCacheBytes + ", compressedTiles=" + mCompressedTileCacheBytes +
+                ", pooled=" + mPooledBitmapBytes + ", placeholder=" + mPlaceholderBytes +
+                ", mipmaps=" + mMipmapBytes + ", zoomHistory=" + mZoomHistoryBytes + "}";
+    }
+}
@@ -0,0 +1,99 @@
+package ru.astrocode.ziv;
+
+import android.graphics.Bitmap;
+
+/**
+ * Prefiltered chain of downsampled copies of a bitmap. Level 0 is the source bitmap,
+ * every next level is half the size of the previous one. Levels are built by {@link #build()} in background,
+ * the chain is handed to the main thread only after that.
+ */
+
+final class ZIVMipmapChain {
+    private static final int MIN_LEVEL_SIZE = 32;
+
+    private final Bitmap mSource;
+    private final Bitmap[] mLevels;
+
+    ZIVMipmapChain(Bitmap source) {
+        mSource = source;
+
+        int levelCount = 1;
+        int width = source.getWidth(), height = source.getHeight();
+
+        while (width / 2 >= MIN_LEVEL_SIZE && height / 2 >= MIN_LEVEL_SIZE) {
+            width /= 2;
+            height /= 2;
+            levelCount++;
+        }
+
+        mLevels = new Bitmap[levelCount];
+        mLevels[0] = source;
+    }
+
+    Bitmap getSource() {
+        return mSource;
+    }
+
+    int getLevelCount() {
+        return mLevels.length;
+    }
+
+    /**
+     * Returns the level that is not magnified when drawn with the scale.
+     *
+     * @param scale Screen pixels per source bitmap pixel.
+     * @return Level index.
+     */
+    int getLevelForScale(float scale) {
+        int level = 0;
+
+        while (level < mLevels.length - 1 && scale * (1 << (level + 1)) <= 1f) {
+            level++;
+        }
+
+        return level;
+    }
+
+    Bitmap getLevel(int level) {
+        return mLevels[level];
+    }
+
+    /**
+     * Builds every level from the previous one. Only reads the source bitmap.
+     */
+    void build() {
+        for (int i = 1; i < mLevels.length; i++) {
+            final Bitmap previous = mLevels[i - 1];
+
+            mLevels[i] = Bitmap.createScaledBitmap(previous,
+                    Math.max(1, previous.getWidth() / 2), Math.max(1, previous.getHeight() / 2), true);
+        }
+    }
+
+    /**
+     * Returns the size in bytes of the built levels, without the source bitmap.
+     */
+    long getByteCount() {
+        long bytes = 0;
+
+        for (int i = 1; i < mLevels.length; i++) {
+            if (mLevels[i] != null) {
+                bytes += mLevels[i].getRowBytes() * mLevels[i].getHeight();
+            }
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Recycles built levels. The source bitmap is left untouched.
+     */
+    void recycle() {
+        for (int i = 1; i < mLevels.length; i++) {
+            if (mLevels[i] != null) {
+                mLevels[i].recycle();
+                mLevels[i] = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package ru.astrocode.ziv;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.util.AttributeSet;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.view.MotionEvent;
+import android.view.View;
+
+import java.io.IOException;
+
+/**
+ * Minimap of the {@link ZIVImageView} image with the visible part of the image marked by a rectangle.
+ * Dragging inside the navigator scrolls the image.
+ * <p>
+ * Thumbnail of the image is rendered once, viewport changes only redraw the rectangle. Tiled images and strips
+ * keep only the visible part decoded, their thumbnail is decoded from the whole image in background.
+ * Hardware bitmaps cannot be drawn on a software canvas, their thumbnail is rendered in background too.
+ */
+
+public class ZIVNavigatorView extends View implements ZIVViewportListener {
+    private final static String TAG = "ZIVNavigatorView";
+
+    private final static String sErrorInvalidArgumentThumbnailSize = "Thumbnail size value cannot be less than 1.";
+
+    private static final int DEFAULT_THUMBNAIL_SIZE = 256;
+    private static final int DEFAULT_VIEWPORT_COLOR = Color.RED;
+    private static final int DEFAULT_VIEWPORT_STROKE_WIDTH = 2;
+
+    private ZIVImageView mImageView;
+
+    private Drawable mThumbnailSource;
+    private Bitmap mThumbnail;
+    private ATIThumbnailLoader mThumbnailLoader;
+    private int mThumbnailSize;
+
+    private final RectF mThumbnailRect = new RectF();
+    private final RectF mViewportRect = new RectF();
+
+    private final Paint mThumbnailPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Paint mViewportPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+    private boolean mIsDragged;
+
+    public ZIVNavigatorView(Context context) {
+        this(context, null);
+    }
+
+    public ZIVNavigatorView(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public ZIVNavigatorView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+
+        TypedArray array = context.obtainStyledAttributes(attrs, R.styleable.ZIVNavigatorView, defStyleAttr, 0);
+
+        DisplayMetrics dm = getContext().getResources().getDisplayMetrics();
+        final int strokeWidth = Math.round(DEFAULT_VIEWPORT_STROKE_WIDTH * dm.density);
+        final int thumbnailSize = Math.round(DEFAULT_THUMBNAIL_SIZE * dm.density);
+
+        mViewportPaint.setStyle(Paint.Style.STROKE);
+        mViewportPaint.setColor(array.getColor(R.styleable.ZIVNavigatorView_viewportColor, DEFAULT_VIEWPORT_COLOR));
+        mViewportPaint.setStrokeWidth(array.getDimensionPixelSize(R.styleable.ZIVNavigatorView_viewportStrokeWidth, strokeWidth));
+
+        setThumbnailSize(array.getDimensionPixelSize(R.styleable.ZIVNavigatorView_thumbnailSize, thumbnailSize));
+
+        array.recycle();
+    }
+
+    /**
+     * Sets image view that is shown by the navigator.
+     *
+     * @param imageView Image view or null.
+     */
+    public void setImageView(ZIVImageView imageView) {
+        if (mImageView != null) {
+            mImageView.removeViewportListener(this);
+        }
+
+        mImageView = imageView;
+
+        if (mImageView != null) {
+            mImageView.addViewportListener(this);
+        }
+
+        releaseThumbnail();
+        invalidate();
+    }
+
+    /**
+     * Returns image view that is shown by the navigator.
+     *
+     * @return Image view.
+     */
+    public ZIVImageView getImageView() {
+        return mImageView;
+    }
+
+    /**
+     * Sets maximum size of the larger side of the thumbnail.
+     *
+     * @param thumbnailSize Thumbnail size(px).
+     */
+    public void setThumbnailSize(int thumbnailSize) {
+        if (thumbnailSize < 1) {
+            throw new IllegalArgumentException(sErrorInvalidArgumentThumbnailSize);
+        }
+        mThumbnailSize = thumbnailSize;
+
+        releaseThumbnail();
+        invalidate();
+    }
+
+    /**
+     * Returns maximum size of the larger side of the thumbnail.
+     *
+     * @return Thumbnail size(px).
+     */
+    public int getThumbnailSize() {
+        return mThumbnailSize;
+    }
+
+    /**
+     * Sets color of the viewport rectangle.
+     *
+     * @param color Color.
+     */
+    public void setViewportColor(int color) {
+        mViewportPaint.setColor(color);
+        invalidate();
+    }
+
+    @Override
+    public void onViewportChanged(ZIVImageView view) {
+        invalidate();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (mImageView == null || !updateThumbnail()) return;
+
+        if (mThumbnail != null) {
+            canvas.drawBitmap(mThumbnail, null, mThumbnailRect, mThumbnailPaint);
+        }
+
+        if (mImageView.getVisibleImageRect(mViewportRect)) {
+            final Drawable drawable = mImageView.getDrawable();
+            final float scale = mThumbnailRect.width() / drawable.getIntrinsicWidth();
+
+            mViewportRect.set(mThumbnailRect.left + mViewportRect.left * scale,
+                    mThumbnailRect.top + mViewportRect.top * scale,
+                    mThumbnailRect.left + mViewportRect.right * scale,
+                    mThumbnailRect.top + mViewportRect.bottom * scale);
+
+            canvas.drawRect(mViewportRect, mViewportPaint);
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (mImageView == null || mThumbnailSource == null || !isEnabled()) {
+            return super.onTouchEvent(event);
+        }
+
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                mIsDragged = mThumbnailRect.contains(event.getX(), event.getY());
+                if (mIsDragged) {
+                    getParent().requestDisallowInterceptTouchEvent(true);
+                    moveTo(event.getX(), event.getY());
+                }
+                return mIsDragged;
+            case MotionEvent.ACTION_MOVE:
+                if (mIsDragged) {
+                    moveTo(event.getX(), event.getY());
+                }
+                return mIsDragged;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                final boolean ret = mIsDragged;
+                mIsDragged = false;
+                return ret;
+            default:
+                return super.onTouchEvent(event);
+        }
+    }
+
+    private void moveTo(float x, float y) {
+        final float scale = mThumbnailRect.width() / mImageView.getDrawable().getIntrinsicWidth();
+
+        mImageView.setImageCenter((x - mThumbnailRect.left) / scale, (y - mThumbnailRect.top) / scale);
+    }
+
+    /**
+     * Renders thumbnail if the image has been changed.
+     *
+     * @return False if there is nothing to draw.
+     */
+    private boolean updateThumbnail() {
+        final Drawable drawable = mImageView.getDrawable();
+
+        if (drawable == null || drawable.getIntrinsicWidth() <= 0 || drawable.getIntrinsicHeight() <= 0) {
+            releaseThumbnail();
+            return false;
+        }
+
+        final int drawableWidth = drawable.getIntrinsicWidth();
+        final int drawableHeight = drawable.getIntrinsicHeight();
+
+        final int width = getWidth() - getPaddingLeft() - getPaddingRight();
+        final int height = getHeight() - getPaddingTop() - getPaddingBottom();
+
+        if (width <= 0 || height <= 0) return false;
+
+        if (mThumbnailSource != drawable) {
+            releaseThumbnail();
+
+            final float thumbnailScale = Math.min(1f, (float) mThumbnailSize / Math.max(drawableWidth, drawableHeight));
+
+            final int thumbnailWidth = Math.max(1, Math.round(drawableWidth * thumbnailScale));
+            final int thumbnailHeight = Math.max(1, Math.round(drawableHeight * thumbnailScale));
+
+            mThumbnailSource = drawable;
+
+            final ZIVThumbnailDrawable thumbnailDrawable = getThumbnailDrawable(drawable);
+
+            if (thumbnailDrawable != null) {
+                mThumbnailLoader = new ATIThumbnailLoader(thumbnailDrawable,
+                        thumbnailWidth, thumbnailHeight, drawableWidth, drawableHeight);
+                ZIVDecodeExecutor.get().execute(mThumbnailLoader);
+            } else {
+                mThumbnail = Bitmap.createBitmap(thumbnailWidth, thumbnailHeight, Bitmap.Config.ARGB_8888);
+                drawThumbnail(new Canvas(mThumbnail), drawable, thumbnailWidth, thumbnailHeight);
+            }
+        }
+
+        final float scale = Math.min((float) width / drawableWidth, (float) height / drawableHeight);
+
+        final float left = getPaddingLeft() + (width - drawableWidth * scale) * 0.5f;
+        final float top = getPaddingTop() + (height - drawableHeight * scale) * 0.5f;
+
+        mThumbnailRect.set(left, top, left + drawableWidth * scale, top + drawableHeight * scale);
+
+        return true;
+    }
+
+    /**
+     * Returns the drawable that renders its thumbnail in background or null if it is drawn into the thumbnail.
+     */
+    private static ZIVThumbnailDrawable getThumbnailDrawable(Drawable drawable) {
+        final Bitmap bitmap = drawable instanceof BitmapDrawable ? ((BitmapDrawable) drawable).getBitmap() : null;
+
+        if (bitmap != null && ZIVBitmapConfigs.isHardware(bitmap)) {
+            // A decoded image is decoded again subsampled, a bitmap set by the app can only be copied.
+            return drawable instanceof ZIVSourceDrawable ? (ZIVSourceDrawable) drawable :
+                    new ATIHardwareBitmapThumbnail(bitmap, drawable.getIntrinsicWidth(), drawable.getIntrinsicHeight());
+        }
+
+        return drawable instanceof ZIVThumbnailDrawable && !(drawable instanceof ZIVSourceDrawable) ?
+                (ZIVThumbnailDrawable) drawable : null;
+    }
+
+    /**
+     * Draws the drawable that is fully loaded into the thumbnail.
+     */
+    private void drawThumbnail(Canvas canvas, Drawable drawable, int thumbnailWidth, int thumbnailHeight) {
+        canvas.scale((float) thumbnailWidth / drawable.getIntrinsicWidth(),
+                (float) thumbnailHeight / drawable.getIntrinsicHeight());
+
+        drawable.draw(canvas);
+    }
+
+    private void onThumbnailLoaded(ATIThumbnailLoader loader, Bitmap thumbnail) {
+        if (loader != mThumbnailLoader) {
+            thumbnail.recycle();
+            return;
+        }
+
+        mThumbnailLoader = null;
+        mThumbnail = thumbnail;
+
+        invalidate();
+    }
+
+    private void releaseThumbnail() {
+        if (mThumbnailLoader != null) {
+            mThumbnailLoader.mIsCancelled = true;
+            mThumbnailLoader = null;
+        }
+
+        if (mThumbnail != null) {
+            mThumbnail.recycle();
+            mThumbnail = null;
+        }
+        mThumbnailSource = null;
+    }
+
+    /**
+     * Thumbnail of a hardware bitmap that has no source to decode. The copy is made in background.
+     */
+    private static final class ATIHardwareBitmapThumbnail implements ZIVThumbnailDrawable {
+        final Bitmap mBitmap;
+        final int mWidth, mHeight;
+
+        ATIHardwareBitmapThumbnail(Bitmap bitmap, int width, int height) {
+            mBitmap = bitmap;
+            mWidth = width;
+            mHeight = height;
+        }
+
+        @Override
+        public void drawThumbnail(Canvas canvas, float scale) {
+            final Bitmap copy = mBitmap.copy(Bitmap.Config.ARGB_8888, false);
+            if (copy == null) return;
+
+            canvas.drawBitmap(copy, null, new RectF(0, 0, mWidth, mHeight), new Paint(Paint.FILTER_BITMAP_FLAG));
+            copy.recycle();
+        }
+    }
+
+    /**
+     * Renders the thumbnail of a {@link ZIVThumbnailDrawable}.
+     */
+    private final class ATIThumbnailLoader implements Runnable {
+        final ZIVThumbnailDrawable mDrawable;
+        final int mWidth, mHeight;
+        final int mDrawableWidth, mDrawableHeight;
+
+        volatile boolean mIsCancelled;
+
+        ATIThumbnailLoader(ZIVThumbnailDrawable drawable, int width, int height, int drawableWidth, int drawableHeight) {
+            mDrawable = drawable;
+            mWidth = width;
+            mHeight = height;
+            mDrawableWidth = drawableWidth;
+            mDrawableHeight = drawableHeight;
+        }
+
+        @Override
+        public void run() {
+            if (mIsCancelled) return;
+
+            final Bitmap thumbnail = Bitmap.createBitmap(mWidth, mHeight, Bitmap.Config.ARGB_8888);
+
+            final Canvas canvas = new Canvas(thumbnail);
+            canvas.scale((float) mWidth / mDrawableWidth, (float) mHeight / mDrawableHeight);
+
+            try {
+                mDrawable.drawThumbnail(canvas, Math.min((float) mWidth / mDrawableWidth, (float) mHeight / mDrawableHeight));
+            } catch (IOException e) {
+                Log.e(TAG, e.getMessage(), e);
+            }
+
+            if (mIsCancelled) {
+                thumbnail.recycle();
+                return;
+            }
+
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    onThumbnailLoaded(ATIThumbnailLoader.this, thumbnail);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package ru.astrocode.ziv;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Tile pyramid stored in a single packed file, read through memory mapping.
+ * <p>
+ * File format(all numbers are big-endian):
+ * <pre>
+ * header, 32 bytes:
+ *   0  magic "ZIVP"
+ *   4  u16 version(1)
+ *   6  u16 flags(0)
+ *   8  u32 image width
+ *  12  u32 image height
+ *  16  u16 tile size
+ *  18  u16 tile overlap
+ *  20  u16 level count
+ *  22  u16 tile format(0 - jpeg, 1 - png, 2 - webp)
+ *  24  u64 index offset
+ * index, at the index offset:
+ *   level table, 16 bytes for every level from 0 to level count - 1:
+ *     u32 column count, u32 row count, u64 offset of the level tile table
+ *   level tile table, 12 bytes for every tile in row-major order:
+ *     u64 payload offset, u32 payload length(0 - tile is missing)
+ * payloads: encoded tiles, anywhere in the file.
+ * </pre>
+ * Opening maps only the header and the index, payloads are mapped lazily in windows. Tiles are handed
+ * to the decoder straight from the mapped memory, so opening takes constant time and heap memory
+ * regardless of the file size.
+ */
+
+public final class ZIVPackedTilePyramid extends ZIVTilePyramid {
+    private final static String sErrorInvalidFormat = "Invalid tile container: ";
+
+    static final int MAGIC = 0x5A495650;
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 32;
+    static final int LEVEL_ENTRY_SIZE = 16;
+    static final int TILE_ENTRY_SIZE = 12;
+
+    static final int FORMAT_JPEG = 0;
+
+    private static final long WINDOW_SIZE = 32L * 1024L * 1024L;
+    private static final int MAX_WINDOWS = 8;
+
+    private final String mPath;
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private final long mFileSize;
+
+    private final int mFormat;
+
+    private final ByteBuffer mIndex;
+    private final long mIndexOffset;
+
+    private final long[] mWindowOffsets = new long[MAX_WINDOWS];
+    private final MappedByteBuffer[] mWindows = new MappedByteBuffer[MAX_WINDOWS];
+    private int mNextWindow;
+
+    private ZIVPackedTilePyramid(String path, RandomAccessFile file, ByteBuffer header, ByteBuffer index, long indexOffset) throws IOException {
+        super(header.getInt(8), header.getInt(12), header.getShort(16) & 0xFFFF, header.getShort(18) & 0xFFFF);
+
+        mPath = path;
+        mFile = file;
+        mChannel = file.getChannel();
+        mFileSize = mChannel.size();
+
+        mFormat = header.getShort(22) & 0xFFFF;
+
+        mIndex = index;
+        mIndexOffset = indexOffset;
+
+        if ((header.getShort(20) & 0xFFFF) != getMaxLevel() + 1) {
+            throw new IOException(sErrorInvalidFormat + path);
+        }
+    }
+
+    /**
+     * Opens the packed pyramid file.
+     *
+     * @param file File.
+     * @return Pyramid.
+     * @throws IOException If the file cannot be read or has invalid format.
+     */
+    public static ZIVPackedTilePyramid open(File file) throws IOException {
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+
+        try {
+            final FileChannel channel = randomAccessFile.getChannel();
+
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException(sErrorInvalidFormat + file);
+            }
+
+            final ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+
+            if (header.getInt(0) != MAGIC || (header.getShort(4) & 0xFFFF) != VERSION) {
+                throw new IOException(sErrorInvalidFormat + file);
+            }
+
+            final int levelCount = header.getShort(20) & 0xFFFF;
+            final long indexOffset = header.getLong(24);
+
+            if (indexOffset < HEADER_SIZE || indexOffset + (long) levelCount * LEVEL_ENTRY_SIZE > channel.size()) {
+                throw new IOException(sErrorInvalidFormat + file);
+            }
+
+            final ByteBuffer levels = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, (long) levelCount * LEVEL_ENTRY_SIZE);
+
+            long indexSize = (long) levelCount * LEVEL_ENTRY_SIZE;
+            for (int level = 0; level < levelCount; level++) {
+                indexSize += (long) levels.getInt(level * LEVEL_ENTRY_SIZE) * levels.getInt(level * LEVEL_ENTRY_SIZE + 4) * TILE_ENTRY_SIZE;
+            }
+
+            if (indexOffset + indexSize > channel.size() || indexSize > Integer.MAX_VALUE) {
+                throw new IOException(sErrorInvalidFormat + file);
+            }
+
+            final ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, indexSize);
+
+            return new ZIVPackedTilePyramid(file.getPath(), randomAccessFile, header, index, indexOffset);
+        } catch (IOException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean isOpaque() {
+        return mFormat == FORMAT_JPEG;
+    }
+
+    @Override
+    public boolean hasEncodedTiles() {
+        return true;
+    }
+
+    @Override
+    public String getKey() {
+        return "packed:" + mPath;
+    }
+
+    /**
+     * Returns encoded bytes of the tile without copying them.
+     *
+     * @param level  Level.
+     * @param column Column.
+     * @param row    Row.
+     * @return Read-only buffer with the encoded tile or null if the tile is missing.
+     * @throws IOException If the file cannot be read or has invalid format.
+     */
+    public ByteBuffer getTileData(int level, int column, int row) throws IOException {
+        if (level < 0 || level > getMaxLevel()) return null;
+
+        final int levelEntry = level * LEVEL_ENTRY_SIZE;
+        final int columnCount = mIndex.getInt(levelEntry);
+        final int rowCount = mIndex.getInt(levelEntry + 4);
+
+        if (column < 0 || row < 0 || column >= columnCount || row >= rowCount) return null;
+
+        final long tileEntry = mIndex.getLong(levelEntry + 8) - mIndexOffset + (long) (row * columnCount + column) * TILE_ENTRY_SIZE;
+        if (tileEntry < 0 || tileEntry + TILE_ENTRY_SIZE > mIndex.capacity()) {
+            throw new IOException(sErrorInvalidFormat + mPath);
+        }
+
+        final long offset = mIndex.getLong((int) tileEntry);
+        final int length = mIndex.getInt((int) tileEntry + 8);
+
+        if (length == 0) return null;
+
+        if (offset < 0 || offset + length > mFileSize) {
+            throw new IOException(sErrorInvalidFormat + mPath);
+        }
+
+        return map(offset, length);
+    }
+
+    @Override
+    public Bitmap decodeTile(int level, int column, int row, BitmapFactory.Options options) throws IOException {
+        final ByteBuffer data = getTileData(level, column, row);
+
+        if (data == null) return null;
+
+        return ZIVImageSources.checkDecoded(BitmapFactory.decodeStream(new ZIVByteBufferInputStream(data), null, options),
+                options, getKey() + "/" + level + "/" + column + "_" + row);
+    }
+
+    @Override
+    public void close() {
+        synchronized (mWindows) {
+            for (int i = 0; i < MAX_WINDOWS; i++) {
+                mWindows[i] = null;
+            }
+        }
+        ZIVImageSources.closeQuietly(mFile);
+    }
+
+    /**
+     * Returns the byte range from a mapped window, mapping a new window if needed.
+     */
+    private ByteBuffer map(long offset, int length) throws IOException {
+        synchronized (mWindows) {
+            for (int i = 0; i < MAX_WINDOWS; i++) {
+                if (mWindows[i] != null && offset >= mWindowOffsets[i] &&
+                        offset + length <= mWindowOffsets[i] + mWindows[i].capacity()) {
+                    return slice(mWindows[i], (int) (offset - mWindowOffsets[i]), length);
+                }
+            }
+
+            final long windowOffset = offset / WINDOW_SIZE * WINDOW_SIZE;
+            final long windowSize = Math.min(mFileSize - windowOffset, Math.max(WINDOW_SIZE, offset + length - windowOffset));
+
+            final int window = mNextWindow;
+            mNextWindow = (mNextWindow + 1) % MAX_WINDOWS;
+
+            mWindows[window] = mChannel.map(FileChannel.MapMode.READ_ONLY, windowOffset, windowSize);
+            mWindowOffsets[window] = windowOffset;
+
+            return slice(mWindows[window], (int) (offset - windowOffset), length);
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        final ByteBuffer ret = buffer.duplicate();
+        ret.position(offset);
+        ret.limit(offset + length);
+
+        return ret.slice().asReadOnlyBuffer();
+    }
+}
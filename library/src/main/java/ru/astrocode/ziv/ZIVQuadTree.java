@@ -0,0 +1,181 @@
+package ru.astrocode.ziv;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Region quadtree of items with rectangular bounds.
+ * <p>
+ * Item that doesn't fit into a single child quadrant is stored in the node itself.
+ */
+
+final class ZIVQuadTree<T> {
+    private static final int MAX_ITEMS_PER_NODE = 8;
+    private static final int MAX_DEPTH = 12;
+
+    private final Node<T> mRoot;
+    private final IdentityHashMap<T, Node<T>> mItemNodes = new IdentityHashMap<>();
+
+    ZIVQuadTree(float left, float top, float right, float bottom) {
+        mRoot = new Node<>(left, top, right, bottom, 0);
+    }
+
+    int size() {
+        return mItemNodes.size();
+    }
+
+    boolean contains(T item) {
+        return mItemNodes.containsKey(item);
+    }
+
+    void insert(T item, float left, float top, float right, float bottom) {
+        if (mItemNodes.containsKey(item)) {
+            remove(item);
+        }
+        insert(mRoot, new Entry<>(item, left, top, right, bottom));
+    }
+
+    boolean remove(T item) {
+        final Node<T> node = mItemNodes.remove(item);
+
+        if (node == null) return false;
+
+        for (int i = 0; i < node.mEntries.size(); i++) {
+            if (node.mEntries.get(i).mItem == item) {
+                node.mEntries.remove(i);
+                break;
+            }
+        }
+
+        return true;
+    }
+
+    void clear() {
+        mItemNodes.clear();
+        mRoot.mEntries.clear();
+        mRoot.mChildren = null;
+    }
+
+    /**
+     * Adds to the out list all items whose bounds intersect the rect.
+     */
+    void query(float left, float top, float right, float bottom, List<T> out) {
+        query(mRoot, left, top, right, bottom, out);
+    }
+
+    private void insert(Node<T> node, Entry<T> entry) {
+        while (true) {
+            if (node.mChildren == null) {
+                if (node.mEntries.size() < MAX_ITEMS_PER_NODE || node.mDepth == MAX_DEPTH) {
+                    break;
+                }
+                split(node);
+            }
+
+            final Node<T> child = node.findChild(entry);
+            if (child == null) {
+                break;
+            }
+            node = child;
+        }
+
+        node.mEntries.add(entry);
+        mItemNodes.put(entry.mItem, node);
+    }
+
+    private void split(Node<T> node) {
+        final float centerX = (node.mLeft + node.mRight) * 0.5f;
+        final float centerY = (node.mTop + node.mBottom) * 0.5f;
+        final int depth = node.mDepth + 1;
+
+        @SuppressWarnings("unchecked")
+        final Node<T>[] children = new Node[4];
+
+        children[0] = new Node<>(node.mLeft, node.mTop, centerX, centerY, depth);
+        children[1] = new Node<>(centerX, node.mTop, node.mRight, centerY, depth);
+        children[2] = new Node<>(node.mLeft, centerY, centerX, node.mBottom, depth);
+        children[3] = new Node<>(centerX, centerY, node.mRight, node.mBottom, depth);
+
+        node.mChildren = children;
+
+        final ArrayList<Entry<T>> entries = new ArrayList<>(node.mEntries);
+        node.mEntries.clear();
+
+        for (Entry<T> entry : entries) {
+            final Node<T> child = node.findChild(entry);
+            final Node<T> target = child != null ? child : node;
+
+            target.mEntries.add(entry);
+            mItemNodes.put(entry.mItem, target);
+        }
+    }
+
+    private void query(Node<T> node, float left, float top, float right, float bottom, List<T> out) {
+        if (!node.intersects(left, top, right, bottom) && node != mRoot) return;
+
+        for (int i = 0; i < node.mEntries.size(); i++) {
+            final Entry<T> entry = node.mEntries.get(i);
+
+            if (entry.intersects(left, top, right, bottom)) {
+                out.add(entry.mItem);
+            }
+        }
+
+        if (node.mChildren != null) {
+            for (Node<T> child : node.mChildren) {
+                query(child, left, top, right, bottom, out);
+            }
+        }
+    }
+
+    private static final class Entry<T> {
+        final T mItem;
+        final float mLeft, mTop, mRight, mBottom;
+
+        Entry(T item, float left, float top, float right, float bottom) {
+            mItem = item;
+            mLeft = left;
+            mTop = top;
+            mRight = right;
+            mBottom = bottom;
+        }
+
+        boolean intersects(float left, float top, float right, float bottom) {
+            return mLeft <= right && left <= mRight && mTop <= bottom && top <= mBottom;
+        }
+    }
+
+    private static final class Node<T> {
+        final float mLeft, mTop, mRight, mBottom;
+        final int mDepth;
+
+        final ArrayList<Entry<T>> mEntries = new ArrayList<>();
+        Node<T>[] mChildren;
+
+        Node(float left, float top, float right, float bottom, int depth) {
+            mLeft = left;
+            mTop = top;
+            mRight = right;
+            mBottom = bottom;
+            mDepth = depth;
+        }
+
+        boolean intersects(float left, float top, float right, float bottom) {
+            return mLeft <= right && left <= mRight && mTop <= bottom && top <= mBottom;
+        }
+
+        /**
+         * Returns the child quadrant that fully contains the entry or null.
+         */
+        Node<T> findChild(Entry<T> entry) {
+            for (Node<T> child : mChildren) {
+                if (entry.mLeft >= child.mLeft && entry.mRight <= child.mRight &&
+                        entry.mTop >= child.mTop && entry.mBottom <= child.mBottom) {
+                    return child;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package ru.astrocode.ziv;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Tile pyramid decoded on demand from regions of a {@link ZIVImageSource}.
+ * <p>
+ * A region decoder handles one decodeRegion call at a time, so the pyramid holds a bounded pool of decoders
+ * of the same source. Decoders are created lazily up to the pool size, which is derived from the count of
+ * decoding threads and the heap size, and tiles are decoded in parallel on them.
+ */
+
+public final class ZIVRegionTilePyramid extends ZIVTilePyramid {
+    private final static String sErrorInvalidArgumentDecoderCount = "Decoder count value cannot be less than 1.";
+    private final static String sErrorInvalidSource = "Image size cannot be read: ";
+
+    private static final int DEFAULT_TILE_SIZE = 256;
+    private static final int DEFAULT_OVERLAP = 1;
+
+    private static final long DECODER_MEMORY_ESTIMATE = 4L * 1024L * 1024L;
+    private static final int DECODER_MEMORY_DIVIDER = 16;
+
+    private final ZIVImageSource mSource;
+    private final boolean mIsOpaque;
+
+    private volatile boolean mIsConfigFallback;
+
+    private final ArrayList<BitmapRegionDecoder> mIdleDecoders = new ArrayList<>();
+    private final int mMaxDecoderCount;
+    private int mDecoderCount;
+    private boolean mIsClosed;
+
+    private ZIVRegionTilePyramid(ZIVImageSource source, int width, int height, boolean isOpaque,
+                                 int tileSize, int decoderCount) {
+        super(width, height, tileSize, DEFAULT_OVERLAP);
+
+        mSource = source;
+        mIsOpaque = isOpaque;
+        mMaxDecoderCount = decoderCount;
+    }
+
+    /**
+     * Opens the pyramid with the default tile size and decoder pool size. Reads the image header.
+     *
+     * @param source Image source.
+     * @return Pyramid.
+     * @throws IOException If the image header cannot be read.
+     */
+    public static ZIVRegionTilePyramid open(ZIVImageSource source) throws IOException {
+        return open(source, DEFAULT_TILE_SIZE, getDefaultDecoderCount());
+    }
+
+    /**
+     * Opens the pyramid. Reads the image header.
+     *
+     * @param source       Image source.
+     * @param tileSize     Tile size(px).
+     * @param decoderCount Maximum count of region decoders used in parallel.
+     * @return Pyramid.
+     * @throws IOException If the image header cannot be read.
+     */
+    public static ZIVRegionTilePyramid open(ZIVImageSource source, int tileSize, int decoderCount) throws IOException {
+        if (decoderCount < 1) {
+            throw new IllegalArgumentException(sErrorInvalidArgumentDecoderCount);
+        }
+
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+
+        if (!ZIVImageSources.decodeBounds(source, options)) {
+            throw new IOException(sErrorInvalidSource + source.getKey());
+        }
+
+        return new ZIVRegionTilePyramid(source, options.outWidth, options.outHeight,
+                ZIVBitmapConfigs.isOpaqueMimeType(options.outMimeType), tileSize, decoderCount);
+    }
+
+    /**
+     * Returns the default size of the decoder pool: one decoder per decoding thread while the decoders take
+     * less than 1/16 of the heap.
+     */
+    public static int getDefaultDecoderCount() {
+        final long memoryLimit = Runtime.getRuntime().maxMemory() / DECODER_MEMORY_DIVIDER / DECODER_MEMORY_ESTIMATE;
+
+        return (int) Math.max(1, Math.min(ZIVDecodeExecutor.getThreadCount(), memoryLimit));
+    }
+
+    public ZIVImageSource getSource() {
+        return mSource;
+    }
+
+    /**
+     * Returns maximum count of region decoders used in parallel.
+     */
+    public int getMaxDecoderCount() {
+        return mMaxDecoderCount;
+    }
+
+    @Override
+    public boolean isOpaque() {
+        return mIsOpaque;
+    }
+
+    @Override
+    public String getKey() {
+        return mSource.getKey();
+    }
+
+    @Override
+    public Bitmap decodeTile(int level, int column, int row, BitmapFactory.Options options) throws IOException {
+        if (level < 0 || level > getMaxLevel() || column < 0 || row < 0 ||
+                column >= getColumnCount(level) || row >= getRowCount(level)) {
+            return null;
+        }
+
+        final int shift = getMaxLevel() - level;
+        final int tileSize = getTileSize(), overlap = getOverlap();
+
+        final Rect region = new Rect(
+                (int) Math.min(getWidth(), (long) Math.max(0, column * tileSize - overlap) << shift),
+                (int) Math.min(getHeight(), (long) Math.max(0, row * tileSize - overlap) << shift),
+                (int) Math.min(getWidth(), (long) ((column + 1) * tileSize + overlap) << shift),
+                (int) Math.min(getHeight(), (long) ((row + 1) * tileSize + overlap) << shift));
+
+        if (region.isEmpty()) return null;
+
+        options.inSampleSize = 1 << shift;
+
+        final BitmapRegionDecoder decoder = acquireDecoder();
+        if (decoder == null) return null;
+
+        try {
+            return ZIVImageSources.checkDecoded(decodeRegion(decoder, region, options), options,
+                    getKey() + "/" + level + "/" + column + "_" + row);
+        } finally {
+            releaseDecoder(decoder);
+        }
+    }
+
+    /**
+     * Decodes the region, if the decoder can't produce the requested config, the region and all following
+     * regions are decoded to ARGB_8888.
+     */
+    private Bitmap decodeRegion(BitmapRegionDecoder decoder, Rect region, BitmapFactory.Options options) {
+        if (mIsConfigFallback || options.inPreferredConfig == null) {
+            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        }
+
+        if (options.inPreferredConfig == Bitmap.Config.ARGB_8888) {
+            return decoder.decodeRegion(region, options);
+        }
+
+        Bitmap bitmap;
+        try {
+            bitmap = decoder.decodeRegion(region, options);
+        } catch (IllegalArgumentException e) {
+            bitmap = null;
+        }
+
+        if (bitmap == null) {
+            mIsConfigFallback = true;
+
+            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+            bitmap = decoder.decodeRegion(region, options);
+        }
+
+        return bitmap;
+    }
+
+    @Override
+    public void close() {
+        synchronized (mIdleDecoders) {
+            mIsClosed = true;
+
+            for (int i = 0; i < mIdleDecoders.size(); i++) {
+                mIdleDecoders.get(i).recycle();
+            }
+            mDecoderCount -= mIdleDecoders.size();
+            mIdleDecoders.clear();
+
+            mIdleDecoders.notifyAll();
+        }
+    }
+
+    /**
+     * Takes an idle decoder, creates a new one if the pool is not full or waits for a decoder to be released.
+     *
+     * @return Decoder or null if the pyramid is closed.
+     */
+    private BitmapRegionDecoder acquireDecoder() throws IOException {
+        synchronized (mIdleDecoders) {
+            while (true) {
+                if (mIsClosed) return null;
+
+                if (!mIdleDecoders.isEmpty()) {
+                    return mIdleDecoders.remove(mIdleDecoders.size() - 1);
+                }
+
+                if (mDecoderCount < mMaxDecoderCount) {
+                    mDecoderCount++;
+                    break;
+                }
+
+                try {
+                    mIdleDecoders.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+        }
+
+        BitmapRegionDecoder decoder = null;
+        try {
+            decoder = mSource.newRegionDecoder();
+        } finally {
+            if (decoder == null) {
+                synchronized (mIdleDecoders) {
+                    mDecoderCount--;
+                    mIdleDecoders.notifyAll();
+                }
+            }
+        }
+
+        return decoder;
+    }
+
+    private void releaseDecoder(BitmapRegionDecoder decoder) {
+        synchronized (mIdleDecoders) {
+            if (mIsClosed) {
+                decoder.recycle();
+                mDecoderCount--;
+            } else {
+                mIdleDecoders.add(decoder);
+            }
+
+            mIdleDecoders.notifyAll();
+        }
+    }
+}
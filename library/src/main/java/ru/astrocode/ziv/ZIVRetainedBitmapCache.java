@@ -0,0 +1,118 @@
+package ru.astrocode.ziv;
+
+import android.graphics.Bitmap;
+import android.support.v4.util.LruCache;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Process wide cache of the decoded image source bitmaps keyed by {@link ZIVImageSource#getKey()}.
+ * It outlives the views, so a view recreated after a configuration change shows the bitmap of the same source
+ * on its first frame instead of decoding it again. The least recently used bitmaps are dropped first,
+ * bitmaps are never recycled by the cache.
+ */
+
+final class ZIVRetainedBitmapCache {
+    private static final int DEFAULT_MEMORY_DIVIDER = 8;
+
+    private static long sMaxSize = Runtime.getRuntime().maxMemory() / DEFAULT_MEMORY_DIVIDER;
+    private static LruCache<String, ATIEntry> sCache;
+
+    private ZIVRetainedBitmapCache() {
+    }
+
+    /**
+     * Returns the retained bitmap of the source or null.
+     */
+    static synchronized ATIEntry get(String key) {
+        return key != null && sCache != null ? sCache.get(key) : null;
+    }
+
+    /**
+     * Retains the bitmap, unless the retained bitmap of the source has the same config and is not more subsampled.
+     */
+    static synchronized void put(String key, ATIEntry entry) {
+        if (key == null || entry.mBitmap == null || sMaxSize <= 0) return;
+
+        if (sCache == null) {
+            sCache = newCache(sMaxSize);
+        }
+
+        final ATIEntry retained = sCache.get(key);
+        if (retained != null && retained.mConfig == entry.mConfig && retained.mSampleSize <= entry.mSampleSize) return;
+
+        sCache.put(key, entry);
+    }
+
+    /**
+     * Returns copy of the retained bitmaps, unlike {@link #get} it doesn't make them recently used.
+     */
+    static synchronized Map<String, ATIEntry> snapshot() {
+        return sCache != null ? sCache.snapshot() : Collections.<String, ATIEntry>emptyMap();
+    }
+
+    /**
+     * Sets byte budget of the cache, 0 drops all bitmaps and disables the cache.
+     * The most recently used bitmaps that fit into the new budget are kept.
+     */
+    static synchronized void setMaxSize(long maxSize) {
+        sMaxSize = maxSize;
+
+        if (sCache == null) return;
+
+        final Map<String, ATIEntry> entries = sCache.snapshot();
+
+        sCache.evictAll();
+        sCache = null;
+
+        if (maxSize > 0) {
+            sCache = newCache(maxSize);
+
+            for (Map.Entry<String, ATIEntry> entry : entries.entrySet()) {
+                sCache.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    static synchronized long getMaxSize() {
+        return sMaxSize;
+    }
+
+    /**
+     * Returns the size of the retained bitmaps in bytes.
+     */
+    static synchronized long getSize() {
+        return sCache != null ? sCache.size() : 0;
+    }
+
+    private static LruCache<String, ATIEntry> newCache(long maxSize) {
+        return new LruCache<String, ATIEntry>((int) Math.min(Integer.MAX_VALUE, maxSize)) {
+            @Override
+            protected int sizeOf(String key, ATIEntry value) {
+                return (int) Math.min(Integer.MAX_VALUE, ZIVBitmapConfigs.getByteCount(value.mBitmap));
+            }
+        };
+    }
+
+    static final class ATIEntry {
+        final Bitmap mBitmap;
+        final int mSourceWidth, mSourceHeight;
+        final int mSampleSize;
+
+        /**
+         * Config requested by the decode policy, the bitmap may fall back to ARGB_8888.
+         */
+        final Bitmap.Config mConfig;
+        final boolean mIsOpaque;
+
+        ATIEntry(Bitmap bitmap, int sourceWidth, int sourceHeight, int sampleSize, Bitmap.Config config, boolean isOpaque) {
+            mBitmap = bitmap;
+            mSourceWidth = sourceWidth;
+            mSourceHeight = sourceHeight;
+            mSampleSize = sampleSize;
+            mConfig = config;
+            mIsOpaque = isOpaque;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package ru.astrocode.ziv;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+import java.io.IOException;
+
+/**
+ * Bitmap drawable of a subsampled {@link ZIVImageSource} bitmap. Intrinsic size is the size of the source
+ * image, so image coordinates don't depend on the sample size.
+ * <p>
+ * Hardware bitmaps cannot be drawn on a software canvas, so the thumbnail is decoded from the source again.
+ */
+
+final class ZIVSourceDrawable extends ZIVBitmapDrawable implements ZIVThumbnailDrawable {
+    private final ZIVImageSource mSource;
+    private final int mSourceWidth, mSourceHeight;
+    private final int mSampleSize;
+
+    ZIVSourceDrawable(Resources resources, Bitmap bitmap, ZIVImageSource source, int sourceWidth, int sourceHeight,
+                      int sampleSize) {
+        super(resources, bitmap);
+
+        mSource = source;
+        mSourceWidth = sourceWidth;
+        mSourceHeight = sourceHeight;
+        mSampleSize = sampleSize;
+    }
+
+    ZIVImageSource getSource() {
+        return mSource;
+    }
+
+    /**
+     * Returns sample size the bitmap was decoded with.
+     */
+    int getSampleSize() {
+        return mSampleSize;
+    }
+
+    @Override
+    public void drawThumbnail(Canvas canvas, float scale) throws IOException {
+        final int targetWidth = Math.max(1, (int) Math.ceil(mSourceWidth * scale));
+        final int targetHeight = Math.max(1, (int) Math.ceil(mSourceHeight * scale));
+
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = ZIVImageView.calculateSampleSize(mSourceWidth, mSourceHeight, targetWidth, targetHeight,
+                ZIVImageView.MAX_SOURCE_BITMAP_SIZE);
+
+        final Bitmap bitmap = mSource.decode(options);
+        if (bitmap == null) return;
+
+        canvas.drawBitmap(bitmap, null, new RectF(0, 0, mSourceWidth, mSourceHeight), new Paint(Paint.FILTER_BITMAP_FLAG));
+        bitmap.recycle();
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return mSourceWidth;
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return mSourceHeight;
+    }
+}
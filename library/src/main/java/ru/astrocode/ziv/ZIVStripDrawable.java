@@ -0,0 +1,433 @@
+package ru.astrocode.ziv;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Drawable of image sources laid out end to end along one axis. Pages are scaled to the largest page size
+ * across the axis, intrinsic size is the size of the whole strip.
+ * <p>
+ * {@link ZIVImageView} sets the visible part of the strip before every draw, only the pages that intersect it
+ * and one page at each side are decoded, subsampled to the current scale. Bitmaps of the other pages are dropped,
+ * so the retained memory doesn't depend on the count of pages.
+ */
+
+final class ZIVStripDrawable extends Drawable implements ZIVViewportDrawable, ZIVThumbnailDrawable {
+    private final static String TAG = "ZIVStripDrawable";
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    private static final int PAGE_MARGIN = 1;
+
+    private final ZIVImageSource[] mSources;
+    private final int[] mWidths, mHeights;
+    private final boolean mIsVertical;
+    private final boolean mIsOpaque;
+
+    private final int mCrossSize;
+    private final int[] mOffsets, mLengths;
+
+    private final Bitmap[] mBitmaps;
+    private final int[] mSampleSizes, mLoadingSampleSizes;
+    /**
+     * Sample sizes the pages failed to decode with, the page is requested again only with another sample size.
+     */
+    private final int[] mFailedSampleSizes;
+
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    private volatile Bitmap.Config mConfig = Bitmap.Config.ARGB_8888;
+
+    private final RectF mVisibleRect = new RectF();
+    private float mScale;
+
+    private volatile ATIVisibleRange mVisibleRange;
+    private volatile boolean mIsReleased;
+
+    private final RectF mPageRect = new RectF();
+
+    /**
+     * @param sources    Image sources of the pages.
+     * @param widths     Widths of the pages read from their headers.
+     * @param heights    Heights of the pages read from their headers.
+     * @param isVertical True if the pages are laid out from top to bottom, false if from left to right.
+     * @param isOpaque   True if no page has alpha.
+     */
+    ZIVStripDrawable(List<ZIVImageSource> sources, int[] widths, int[] heights, boolean isVertical, boolean isOpaque) {
+        final int count = sources.size();
+
+        mSources = sources.toArray(new ZIVImageSource[count]);
+        mWidths = widths;
+        mHeights = heights;
+        mIsVertical = isVertical;
+        mIsOpaque = isOpaque;
+
+        int crossSize = 0;
+        for (int i = 0; i < count; i++) {
+            crossSize = Math.max(crossSize, isVertical ? widths[i] : heights[i]);
+        }
+        mCrossSize = crossSize;
+
+        mOffsets = new int[count];
+        mLengths = new int[count];
+
+        int offset = 0;
+        for (int i = 0; i < count; i++) {
+            mOffsets[i] = offset;
+            mLengths[i] = isVertical ? Math.round((float) heights[i] * crossSize / widths[i]) :
+                    Math.round((float) widths[i] * crossSize / heights[i]);
+            offset += mLengths[i];
+        }
+
+        mBitmaps = new Bitmap[count];
+        mSampleSizes = new int[count];
+        mLoadingSampleSizes = new int[count];
+        mFailedSampleSizes = new int[count];
+    }
+
+    /**
+     * Returns true if the pages are laid out from top to bottom.
+     */
+    boolean isVertical() {
+        return mIsVertical;
+    }
+
+    /**
+     * Returns true if no page has alpha.
+     */
+    boolean isOpaque() {
+        return mIsOpaque;
+    }
+
+    /**
+     * Returns count of the pages.
+     */
+    int getPageCount() {
+        return mSources.length;
+    }
+
+    /**
+     * Returns image source of the page.
+     */
+    ZIVImageSource getPageSource(int index) {
+        return mSources[index];
+    }
+
+    /**
+     * Returns index of the page at the offset along the strip axis.
+     */
+    int getPageAt(float offset) {
+        int low = 0, high = mOffsets.length - 1;
+
+        while (low < high) {
+            final int middle = (low + high + 1) >>> 1;
+
+            if (mOffsets[middle] <= offset) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        return low;
+    }
+
+    @Override
+    public void setViewport(RectF visibleRect, float scale) {
+        mVisibleRect.set(visibleRect);
+        mScale = scale;
+    }
+
+    /**
+     * Decodes every page subsampled to the scale, a page that cannot be decoded is skipped.
+     */
+    @Override
+    public void drawThumbnail(Canvas canvas, float scale) {
+        final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        final RectF pageRect = new RectF();
+
+        for (int i = 0; i < mSources.length && !mIsReleased; i++) {
+            final BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = getSampleSize(i, scale);
+            options.inPreferredConfig = mConfig;
+
+            final Bitmap bitmap;
+            try {
+                bitmap = decodePage(i, options);
+            } catch (IOException | IllegalArgumentException e) {
+                Log.e(TAG, e.getMessage(), e);
+                continue;
+            }
+
+            getPageRect(i, pageRect);
+            canvas.drawBitmap(bitmap, null, pageRect, paint);
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * Sets config of the pages decoded from now on.
+     */
+    void setDecodeConfig(Bitmap.Config config) {
+        mConfig = config;
+    }
+
+    /**
+     * Returns the heap memory saved by the decoded pages compared to ARGB_8888 pages.
+     */
+    long getSavedByteCount() {
+        long count = 0;
+
+        for (Bitmap bitmap : mBitmaps) {
+            if (bitmap != null) {
+                count += ZIVBitmapConfigs.getSavedByteCount(bitmap);
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Adds the memory held by the decoded pages to the usage.
+     */
+    void addMemoryUsage(ZIVMemoryUsage usage) {
+        for (Bitmap bitmap : mBitmaps) {
+            if (bitmap != null) {
+                usage.mDisplayedBitmapBytes += ZIVBitmapConfigs.getByteCount(bitmap);
+            }
+        }
+    }
+
+    /**
+     * Stops loading and drops all pages.
+     */
+    void release() {
+        mIsReleased = true;
+        mVisibleRange = null;
+
+        for (int i = 0; i < mBitmaps.length; i++) {
+            mBitmaps[i] = null;
+            mSampleSizes[i] = 0;
+            mLoadingSampleSizes[i] = 0;
+            mFailedSampleSizes[i] = 0;
+        }
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return mIsVertical ? mCrossSize : getLength();
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return mIsVertical ? getLength() : mCrossSize;
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        if (mScale <= 0 || mVisibleRect.isEmpty() || mBitmaps.length == 0) return;
+
+        final int first = getPageAt(mIsVertical ? mVisibleRect.top : mVisibleRect.left);
+        final int last = getPageAt(mIsVertical ? mVisibleRect.bottom : mVisibleRect.right);
+
+        final int firstLoaded = Math.max(0, first - PAGE_MARGIN);
+        final int lastLoaded = Math.min(mBitmaps.length - 1, last + PAGE_MARGIN);
+
+        final ATIVisibleRange range = mVisibleRange;
+        if (range == null || !range.equals(firstLoaded, lastLoaded)) {
+            mVisibleRange = new ATIVisibleRange(firstLoaded, lastLoaded);
+
+            for (int i = 0; i < mBitmaps.length; i++) {
+                if (i < firstLoaded || i > lastLoaded) {
+                    mBitmaps[i] = null;
+                    mSampleSizes[i] = 0;
+                    mFailedSampleSizes[i] = 0;
+                }
+            }
+        }
+
+        for (int i = firstLoaded; i <= lastLoaded; i++) {
+            final int sampleSize = getSampleSize(i, mScale);
+
+            if (mSampleSizes[i] != sampleSize && mFailedSampleSizes[i] != sampleSize) {
+                requestPage(i, sampleSize);
+            }
+
+            if (i >= first && i <= last && mBitmaps[i] != null) {
+                getPageRect(i, mPageRect);
+                canvas.drawBitmap(mBitmaps[i], null, mPageRect, mPaint);
+            }
+        }
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        mPaint.setAlpha(alpha);
+        invalidateSelf();
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter colorFilter) {
+        mPaint.setColorFilter(colorFilter);
+        invalidateSelf();
+    }
+
+    @Override
+    public void setFilterBitmap(boolean filter) {
+        mPaint.setFilterBitmap(filter);
+        invalidateSelf();
+    }
+
+    @Override
+    public boolean isFilterBitmap() {
+        return mPaint.isFilterBitmap();
+    }
+
+    @Override
+    public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+
+    private int getLength() {
+        final int last = mOffsets.length - 1;
+
+        return last < 0 ? 0 : mOffsets[last] + mLengths[last];
+    }
+
+    private void getPageRect(int index, RectF out) {
+        if (mIsVertical) {
+            out.set(0, mOffsets[index], mCrossSize, mOffsets[index] + mLengths[index]);
+        } else {
+            out.set(mOffsets[index], 0, mOffsets[index] + mLengths[index], mCrossSize);
+        }
+    }
+
+    /**
+     * Returns sample size that keeps the page not smaller than it is shown with the scale.
+     */
+    private int getSampleSize(int index, float scale) {
+        final float pageScale = mIsVertical ? (float) mCrossSize / mWidths[index] : (float) mCrossSize / mHeights[index];
+        final int targetWidth = Math.max(1, (int) Math.ceil(mWidths[index] * pageScale * scale));
+        final int targetHeight = Math.max(1, (int) Math.ceil(mHeights[index] * pageScale * scale));
+
+        return ZIVImageView.calculateSampleSize(mWidths[index], mHeights[index], targetWidth, targetHeight,
+                ZIVImageView.MAX_SOURCE_BITMAP_SIZE);
+    }
+
+    /**
+     * Decodes the page, falls back to ARGB_8888 if the page cannot be decoded to the requested config.
+     */
+    private Bitmap decodePage(int index, BitmapFactory.Options options) throws IOException {
+        final ZIVImageSource source = mSources[index];
+
+        if (options.inPreferredConfig == Bitmap.Config.ARGB_8888) {
+            return source.decode(options);
+        }
+
+        try {
+            return source.decode(options);
+        } catch (IOException | IllegalArgumentException e) {
+            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+            return source.decode(options);
+        }
+    }
+
+    private void requestPage(int index, int sampleSize) {
+        if (mIsReleased || mLoadingSampleSizes[index] != 0) return;
+
+        mLoadingSampleSizes[index] = sampleSize;
+        ZIVDecodeExecutor.get().execute(new ATIPageLoader(index, sampleSize));
+    }
+
+    private void onPageLoaded(ATIPageLoader loader, Bitmap bitmap) {
+        mLoadingSampleSizes[loader.mIndex] = 0;
+
+        if (mIsReleased) return;
+
+        final ATIVisibleRange range = mVisibleRange;
+        if (range == null || !range.contains(loader.mIndex)) return;
+
+        if (bitmap == null) {
+            if (loader.mIsFailed) {
+                mFailedSampleSizes[loader.mIndex] = loader.mSampleSize;
+            }
+            return;
+        }
+
+        mBitmaps[loader.mIndex] = bitmap;
+        mSampleSizes[loader.mIndex] = loader.mSampleSize;
+
+        invalidateSelf();
+    }
+
+    private static final class ATIVisibleRange {
+        final int mFirst, mLast;
+
+        ATIVisibleRange(int first, int last) {
+            mFirst = first;
+            mLast = last;
+        }
+
+        boolean equals(int first, int last) {
+            return mFirst == first && mLast == last;
+        }
+
+        boolean contains(int index) {
+            return index >= mFirst && index <= mLast;
+        }
+    }
+
+    private final class ATIPageLoader implements Runnable {
+        final int mIndex;
+        final int mSampleSize;
+
+        boolean mIsFailed;
+
+        ATIPageLoader(int index, int sampleSize) {
+            mIndex = index;
+            mSampleSize = sampleSize;
+        }
+
+        @Override
+        public void run() {
+            Bitmap bitmap = null;
+
+            final ATIVisibleRange range = mVisibleRange;
+
+            if (range != null && range.contains(mIndex) && !mIsReleased) {
+                final BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inSampleSize = mSampleSize;
+                options.inPreferredConfig = mConfig;
+
+                try {
+                    bitmap = decodePage(mIndex, options);
+                } catch (IOException | IllegalArgumentException e) {
+                    Log.e(TAG, e.getMessage(), e);
+                }
+
+                mIsFailed = bitmap == null;
+            }
+
+            final Bitmap result = bitmap;
+
+            sMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onPageLoaded(ATIPageLoader.this, result);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package ru.astrocode.ziv;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Trace;
+
+/**
+ * Tracer that writes the sections to the system trace(systrace, Perfetto). Does nothing below API 18.
+ */
+
+public final class ZIVSystemTracer implements ZIVTracer {
+    private final boolean mIsSupported = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+
+    @Override
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    public void beginSection(String name) {
+        if (mIsSupported) {
+            Trace.beginSection(name);
+        }
+    }
+
+    @Override
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    public void endSection() {
+        if (mIsSupported) {
+            Trace.endSection();
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package ru.astrocode.ziv;
+
+import android.graphics.Canvas;
+
+import java.io.IOException;
+
+/**
+ * Drawable that keeps only a part of its content decoded. {@link ZIVNavigatorView} asks it to render the whole
+ * image instead of drawing it.
+ */
+
+interface ZIVThumbnailDrawable {
+
+    /**
+     * Decodes and draws the whole image, called in background.
+     *
+     * @param canvas Canvas in the coordinates of the intrinsic size.
+     * @param scale  Canvas pixels per image pixel.
+     * @throws IOException If the image cannot be decoded.
+     */
+    void drawThumbnail(Canvas canvas, float scale) throws IOException;
+}
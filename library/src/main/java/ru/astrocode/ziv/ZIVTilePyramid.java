@@ -0,0 +1,111 @@
+package ru.astrocode.ziv;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.io.IOException;
+
+/**
+ * Multi-resolution tile pyramid with the Deep Zoom geometry.
+ * <p>
+ * Level {@link #getMaxLevel()} is the full resolution image, every previous level is half the size
+ * (rounded up) of the next one, level 0 is 1x1 pixel. Tiles are {@link #getTileSize()} pixels wide and high
+ * plus {@link #getOverlap()} pixels shared with every neighbour tile.
+ */
+
+public abstract class ZIVTilePyramid {
+    private final int mWidth, mHeight;
+    private final int mTileSize, mOverlap;
+    private final int mMaxLevel;
+
+    protected ZIVTilePyramid(int width, int height, int tileSize, int overlap) {
+        mWidth = width;
+        mHeight = height;
+        mTileSize = tileSize;
+        mOverlap = overlap;
+
+        int maxLevel = 0;
+        while ((1L << maxLevel) < Math.max(width, height)) {
+            maxLevel++;
+        }
+        mMaxLevel = maxLevel;
+    }
+
+    public final int getWidth() {
+        return mWidth;
+    }
+
+    public final int getHeight() {
+        return mHeight;
+    }
+
+    public final int getTileSize() {
+        return mTileSize;
+    }
+
+    public final int getOverlap() {
+        return mOverlap;
+    }
+
+    public final int getMaxLevel() {
+        return mMaxLevel;
+    }
+
+    public final int getLevelWidth(int level) {
+        return scale(mWidth, mMaxLevel - level);
+    }
+
+    public final int getLevelHeight(int level) {
+        return scale(mHeight, mMaxLevel - level);
+    }
+
+    public final int getColumnCount(int level) {
+        return (getLevelWidth(level) + mTileSize - 1) / mTileSize;
+    }
+
+    public final int getRowCount(int level) {
+        return (getLevelHeight(level) + mTileSize - 1) / mTileSize;
+    }
+
+    /**
+     * Returns key that identifies the pyramid, used by caches.
+     */
+    public abstract String getKey();
+
+    /**
+     * Decodes the tile. Called concurrently from the decoding threads.
+     *
+     * @param level   Level.
+     * @param column  Column.
+     * @param row     Row.
+     * @param options Decoding options.
+     * @return Tile bitmap or null if the tile doesn't exist.
+     * @throws IOException If the tile cannot be read.
+     */
+    public abstract Bitmap decodeTile(int level, int column, int row, BitmapFactory.Options options) throws IOException;
+
+    /**
+     * Returns true if the tiles never have alpha, such tiles may be decoded to RGB_565.
+     */
+    public boolean isOpaque() {
+        return false;
+    }
+
+    /**
+     * Returns true if the tiles are stored encoded and decoding them doesn't cost more than decoding
+     * a cached jpeg copy, in that case decoded tiles are not cached in the compressed form.
+     */
+    public boolean hasEncodedTiles() {
+        return false;
+    }
+
+    /**
+     * Releases resources held by the pyramid.
+     */
+    public void close() {
+    }
+
+    private static int scale(int size, int shift) {
+        return (int) ((size + (1L << shift) - 1) >> shift);
+    }
+}
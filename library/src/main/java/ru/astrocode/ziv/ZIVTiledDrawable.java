@@ -0,0 +1,446 @@
+package ru.astrocode.ziv;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.HashSet;
+
+/**
+ * Drawable of a {@link ZIVTilePyramid}. Intrinsic size is the size of the full resolution image.
+ * <p>
+ * {@link ZIVImageView} sets the visible part of the image before every draw, only the tiles of the level
+ * that matches the current scale and intersect the visible part are decoded and drawn.
+ * While a tile is loading, the part of the nearest coarser loaded tile that covers it is drawn instead.
+ * The coarsest level that fits into a single tile is always kept and drawn under all tiles.
+ * <p>
+ * Unless the pyramid already stores encoded tiles, tiles evicted from the decoded tiles cache are moved to
+ * the process wide {@link ZIVCompressedTileCache}, decoding them from there is cheaper than decoding them
+ * from the pyramid.
+ */
+
+final class ZIVTiledDrawable extends Drawable implements ZIVViewportDrawable, ZIVThumbnailDrawable {
+    private final static String TAG = "ZIVTiledDrawable";
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    private final ZIVTilePyramid mPyramid;
+    private final int mBaseLevel;
+
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    private final LruCache<Long, Bitmap> mCache;
+    private final ZIVCompressedTileCache mCompressedCache;
+    private final String mCompressedCacheKey;
+    private final HashSet<Long> mLoadingTiles = new HashSet<>();
+
+    private Bitmap mBaseTile;
+
+    private volatile Bitmap.Config mConfig = Bitmap.Config.ARGB_8888;
+    private long mSavedByteCount;
+
+    private final RectF mVisibleRect = new RectF();
+    private float mScale;
+
+    private volatile ATIVisibleRange mVisibleRange;
+    private volatile boolean mIsReleased;
+
+    private final RectF mTileRect = new RectF();
+    private final RectF mFallbackRect = new RectF();
+    private final Rect mSourceRect = new Rect();
+
+    ZIVTiledDrawable(ZIVTilePyramid pyramid, int cacheSize) {
+        mPyramid = pyramid;
+
+        int baseLevel = pyramid.getMaxLevel();
+        while (baseLevel > 0 && (pyramid.getColumnCount(baseLevel) > 1 || pyramid.getRowCount(baseLevel) > 1)) {
+            baseLevel--;
+        }
+        mBaseLevel = baseLevel;
+
+        mCache = new LruCache<Long, Bitmap>(cacheSize) {
+            @Override
+            protected int sizeOf(Long key, Bitmap value) {
+                return value.getRowBytes() * value.getHeight();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, Long key, Bitmap oldValue, Bitmap newValue) {
+                mSavedByteCount -= ZIVBitmapConfigs.getSavedByteCount(oldValue);
+
+                if (evicted && mCompressedCache != null && !mIsReleased && mCompressedCache.getMaxSize() > 0 &&
+                        !mCompressedCache.contains(mCompressedCacheKey, key)) {
+                    ZIVDecodeExecutor.get().execute(new ATITileEncoder(key, oldValue));
+                }
+            }
+        };
+
+        mCompressedCache = pyramid.hasEncodedTiles() ? null : ZIVCompressedTileCache.get();
+        // The tile key has no tile size, pyramids of the same image may be sliced differently.
+        mCompressedCacheKey = pyramid.getKey() + "/" + pyramid.getTileSize() + "/" + pyramid.getOverlap();
+
+        requestTile(mBaseLevel, 0, 0);
+    }
+
+    ZIVTilePyramid getPyramid() {
+        return mPyramid;
+    }
+
+    @Override
+    public void setViewport(RectF visibleRect, float scale) {
+        mVisibleRect.set(visibleRect);
+        mScale = scale;
+    }
+
+    /**
+     * Draws the base tile, it covers the whole image.
+     */
+    @Override
+    public void drawThumbnail(Canvas canvas, float scale) throws IOException {
+        if (mIsReleased) return;
+
+        final Bitmap tile = mPyramid.decodeTile(mBaseLevel, 0, 0, new BitmapFactory.Options());
+        if (tile == null) return;
+
+        canvas.drawBitmap(tile, null, new RectF(0, 0, mPyramid.getWidth(), mPyramid.getHeight()),
+                new Paint(Paint.FILTER_BITMAP_FLAG));
+        tile.recycle();
+    }
+
+    /**
+     * Sets config of the tiles decoded from now on.
+     */
+    void setDecodeConfig(Bitmap.Config config) {
+        mConfig = config;
+    }
+
+    /**
+     * Returns the heap memory saved by the decoded tiles compared to ARGB_8888 tiles.
+     */
+    long getSavedByteCount() {
+        return mSavedByteCount + (mBaseTile != null ? ZIVBitmapConfigs.getSavedByteCount(mBaseTile) : 0);
+    }
+
+    /**
+     * Adds the memory held by the tiles to the usage.
+     */
+    void addMemoryUsage(ZIVMemoryUsage usage) {
+        usage.mTileCacheBytes += mCache.size();
+        usage.mCompressedTileCacheBytes += mCompressedCache != null ? mCompressedCache.getSize(mCompressedCacheKey) : 0;
+        usage.mPlaceholderBytes += mBaseTile != null ? ZIVBitmapConfigs.getByteCount(mBaseTile) : 0;
+    }
+
+    /**
+     * Returns the level whose tiles are not magnified when drawn with the scale.
+     */
+    int getLevelForScale(float scale) {
+        int level = mPyramid.getMaxLevel();
+
+        while (level > mBaseLevel && scale * (1 << (mPyramid.getMaxLevel() - level + 1)) <= 1f) {
+            level--;
+        }
+
+        return level;
+    }
+
+    /**
+     * Stops loading and drops all tiles.
+     */
+    void release() {
+        mIsReleased = true;
+        mVisibleRange = null;
+
+        mCache.evictAll();
+        mLoadingTiles.clear();
+        mBaseTile = null;
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return mPyramid.getWidth();
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return mPyramid.getHeight();
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        if (mBaseTile != null) {
+            drawBaseTile(canvas);
+        }
+
+        if (mScale <= 0 || mVisibleRect.isEmpty()) return;
+
+        final int level = getLevelForScale(mScale);
+        if (level == mBaseLevel) return;
+
+        final int tileSize = mPyramid.getTileSize();
+
+        final float scaleX = (float) mPyramid.getWidth() / mPyramid.getLevelWidth(level);
+        final float scaleY = (float) mPyramid.getHeight() / mPyramid.getLevelHeight(level);
+
+        final int firstColumn = Math.max(0, (int) (mVisibleRect.left / scaleX) / tileSize);
+        final int firstRow = Math.max(0, (int) (mVisibleRect.top / scaleY) / tileSize);
+        final int lastColumn = Math.min(mPyramid.getColumnCount(level) - 1, (int) (mVisibleRect.right / scaleX) / tileSize);
+        final int lastRow = Math.min(mPyramid.getRowCount(level) - 1, (int) (mVisibleRect.bottom / scaleY) / tileSize);
+
+        final ATIVisibleRange range = mVisibleRange;
+        if (range == null || !range.equals(level, firstColumn, firstRow, lastColumn, lastRow)) {
+            mVisibleRange = new ATIVisibleRange(level, firstColumn, firstRow, lastColumn, lastRow);
+        }
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                final Bitmap tile = mCache.get(getKey(level, column, row));
+
+                if (tile != null) {
+                    getTileRect(level, column, row, scaleX, scaleY, mTileRect);
+                    canvas.drawBitmap(tile, null, mTileRect, mPaint);
+                } else {
+                    requestTile(level, column, row);
+                    drawCoarserTile(canvas, level, column, row);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        mPaint.setAlpha(alpha);
+        invalidateSelf();
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter colorFilter) {
+        mPaint.setColorFilter(colorFilter);
+        invalidateSelf();
+    }
+
+    @Override
+    public void setFilterBitmap(boolean filter) {
+        mPaint.setFilterBitmap(filter);
+        invalidateSelf();
+    }
+
+    @Override
+    public boolean isFilterBitmap() {
+        return mPaint.isFilterBitmap();
+    }
+
+    @Override
+    public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+
+    /**
+     * Draws the visible part of the base tile, the whole tile if the viewport is not set yet.
+     */
+    private void drawBaseTile(Canvas canvas) {
+        mTileRect.set(0, 0, mPyramid.getWidth(), mPyramid.getHeight());
+
+        if (mScale <= 0 || mVisibleRect.isEmpty()) {
+            canvas.drawBitmap(mBaseTile, null, mTileRect, mPaint);
+            return;
+        }
+
+        final float bitmapScaleX = mBaseTile.getWidth() / mTileRect.width();
+        final float bitmapScaleY = mBaseTile.getHeight() / mTileRect.height();
+
+        mSourceRect.set(Math.max(0, (int) Math.floor(mVisibleRect.left * bitmapScaleX) - 1),
+                Math.max(0, (int) Math.floor(mVisibleRect.top * bitmapScaleY) - 1),
+                Math.min(mBaseTile.getWidth(), (int) Math.ceil(mVisibleRect.right * bitmapScaleX) + 1),
+                Math.min(mBaseTile.getHeight(), (int) Math.ceil(mVisibleRect.bottom * bitmapScaleY) + 1));
+
+        if (mSourceRect.isEmpty()) return;
+
+        mFallbackRect.set(mSourceRect.left / bitmapScaleX, mSourceRect.top / bitmapScaleY,
+                mSourceRect.right / bitmapScaleX, mSourceRect.bottom / bitmapScaleY);
+
+        canvas.drawBitmap(mBaseTile, mSourceRect, mFallbackRect, mPaint);
+    }
+
+    /**
+     * Draws the part of the nearest coarser cached tile that covers the tile.
+     */
+    private void drawCoarserTile(Canvas canvas, int level, int column, int row) {
+        for (int coarser = level - 1; coarser > mBaseLevel; coarser--) {
+            final int shift = level - coarser;
+            final Bitmap tile = mCache.get(getKey(coarser, column >> shift, row >> shift));
+
+            if (tile == null) continue;
+
+            final float scaleX = (float) mPyramid.getWidth() / mPyramid.getLevelWidth(coarser);
+            final float scaleY = (float) mPyramid.getHeight() / mPyramid.getLevelHeight(coarser);
+
+            getTileRect(coarser, column >> shift, row >> shift, scaleX, scaleY, mTileRect);
+
+            final float levelScaleX = (float) mPyramid.getWidth() / mPyramid.getLevelWidth(level);
+            final float levelScaleY = (float) mPyramid.getHeight() / mPyramid.getLevelHeight(level);
+            final int tileSize = mPyramid.getTileSize();
+
+            final float left = column * tileSize * levelScaleX;
+            final float top = row * tileSize * levelScaleY;
+            final float right = Math.min(mPyramid.getLevelWidth(level), (column + 1) * tileSize) * levelScaleX;
+            final float bottom = Math.min(mPyramid.getLevelHeight(level), (row + 1) * tileSize) * levelScaleY;
+
+            final float bitmapScaleX = tile.getWidth() / mTileRect.width();
+            final float bitmapScaleY = tile.getHeight() / mTileRect.height();
+
+            mSourceRect.set(Math.max(0, (int) Math.floor((left - mTileRect.left) * bitmapScaleX)),
+                    Math.max(0, (int) Math.floor((top - mTileRect.top) * bitmapScaleY)),
+                    Math.min(tile.getWidth(), (int) Math.ceil((right - mTileRect.left) * bitmapScaleX)),
+                    Math.min(tile.getHeight(), (int) Math.ceil((bottom - mTileRect.top) * bitmapScaleY)));
+
+            if (mSourceRect.isEmpty()) return;
+
+            mFallbackRect.set(mTileRect.left + mSourceRect.left / bitmapScaleX,
+                    mTileRect.top + mSourceRect.top / bitmapScaleY,
+                    mTileRect.left + mSourceRect.right / bitmapScaleX,
+                    mTileRect.top + mSourceRect.bottom / bitmapScaleY);
+
+            canvas.drawBitmap(tile, mSourceRect, mFallbackRect, mPaint);
+            return;
+        }
+    }
+
+    private void getTileRect(int level, int column, int row, float scaleX, float scaleY, RectF out) {
+        final int tileSize = mPyramid.getTileSize();
+        final int overlap = mPyramid.getOverlap();
+
+        final int left = Math.max(0, column * tileSize - overlap);
+        final int top = Math.max(0, row * tileSize - overlap);
+        final int right = Math.min(mPyramid.getLevelWidth(level), (column + 1) * tileSize + overlap);
+        final int bottom = Math.min(mPyramid.getLevelHeight(level), (row + 1) * tileSize + overlap);
+
+        out.set(left * scaleX, top * scaleY, right * scaleX, bottom * scaleY);
+    }
+
+    private void requestTile(int level, int column, int row) {
+        final long key = getKey(level, column, row);
+
+        if (mIsReleased || !mLoadingTiles.add(key)) return;
+
+        ZIVDecodeExecutor.get().execute(new ATITileLoader(level, column, row, key));
+    }
+
+    private void onTileLoaded(ATITileLoader loader, Bitmap bitmap) {
+        mLoadingTiles.remove(loader.mKey);
+
+        if (mIsReleased || bitmap == null) return;
+
+        if (loader.mLevel == mBaseLevel) {
+            mBaseTile = bitmap;
+        } else {
+            mCache.put(loader.mKey, bitmap);
+            mSavedByteCount += ZIVBitmapConfigs.getSavedByteCount(bitmap);
+        }
+
+        invalidateSelf();
+    }
+
+    private static long getKey(int level, int column, int row) {
+        return ((long) level << 48) | ((long) column << 24) | row;
+    }
+
+    private static final class ATIVisibleRange {
+        final int mLevel;
+        final int mFirstColumn, mFirstRow, mLastColumn, mLastRow;
+
+        ATIVisibleRange(int level, int firstColumn, int firstRow, int lastColumn, int lastRow) {
+            mLevel = level;
+            mFirstColumn = firstColumn;
+            mFirstRow = firstRow;
+            mLastColumn = lastColumn;
+            mLastRow = lastRow;
+        }
+
+        boolean equals(int level, int firstColumn, int firstRow, int lastColumn, int lastRow) {
+            return mLevel == level && mFirstColumn == firstColumn && mFirstRow == firstRow &&
+                    mLastColumn == lastColumn && mLastRow == lastRow;
+        }
+
+        boolean contains(int level, int column, int row) {
+            return mLevel == level && column >= mFirstColumn && column <= mLastColumn &&
+                    row >= mFirstRow && row <= mLastRow;
+        }
+    }
+
+    /**
+     * Moves the tile evicted from the decoded tiles cache to the second tier cache.
+     */
+    private final class ATITileEncoder implements Runnable {
+        final long mKey;
+        final Bitmap mTile;
+
+        ATITileEncoder(long key, Bitmap tile) {
+            mKey = key;
+            mTile = tile;
+        }
+
+        @Override
+        public void run() {
+            if (!mIsReleased) {
+                mCompressedCache.put(mCompressedCacheKey, mKey, mTile);
+            }
+        }
+    }
+
+    private final class ATITileLoader implements Runnable {
+        final int mLevel, mColumn, mRow;
+        final long mKey;
+
+        ATITileLoader(int level, int column, int row, long key) {
+            mLevel = level;
+            mColumn = column;
+            mRow = row;
+            mKey = key;
+        }
+
+        @Override
+        public void run() {
+            Bitmap bitmap = null;
+
+            final ATIVisibleRange range = mVisibleRange;
+            final boolean isWanted = mLevel == mBaseLevel || (range != null && range.contains(mLevel, mColumn, mRow));
+
+            if (isWanted && !mIsReleased) {
+                final BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inPreferredConfig = mConfig;
+
+                try {
+                    if (mCompressedCache != null) {
+                        bitmap = mCompressedCache.get(mCompressedCacheKey, mKey, options);
+                    }
+
+                    if (bitmap == null) {
+                        bitmap = mPyramid.decodeTile(mLevel, mColumn, mRow, options);
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, e.getMessage(), e);
+                }
+            }
+
+            final Bitmap result = bitmap;
+
+            sMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onTileLoaded(ATITileLoader.this, result);
+                }
+            });
+        }
+    }
+}
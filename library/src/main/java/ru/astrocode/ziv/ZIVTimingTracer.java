@@ -0,0 +1,108 @@
+package ru.astrocode.ziv;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tracer that accumulates count, total and maximum time of every section, e.g. for tests or to sample
+ * the hot paths in the field. Time of a section includes its nested sections.
+ */
+
+public final class ZIVTimingTracer implements ZIVTracer {
+    private final static String sErrorIllegalStateNoSection = "There is no section to end.";
+
+    private static final int MAX_DEPTH = 32;
+
+    private final Map<String, Stats> mStats = new HashMap<>();
+
+    private final String[] mNames = new String[MAX_DEPTH];
+    private final long[] mStartTimes = new long[MAX_DEPTH];
+    private int mDepth;
+
+    @Override
+    public void beginSection(String name) {
+        // Sections nested deeper than the stack are not timed, but are still matched by endSection().
+        if (mDepth < MAX_DEPTH) {
+            mNames[mDepth] = name;
+            mStartTimes[mDepth] = System.nanoTime();
+        }
+        mDepth++;
+    }
+
+    @Override
+    public void endSection() {
+        if (mDepth == 0) {
+            throw new IllegalStateException(sErrorIllegalStateNoSection);
+        }
+
+        mDepth--;
+        if (mDepth >= MAX_DEPTH) return;
+
+        final long time = System.nanoTime() - mStartTimes[mDepth];
+        final String name = mNames[mDepth];
+        mNames[mDepth] = null;
+
+        Stats stats = mStats.get(name);
+        if (stats == null) {
+            stats = new Stats();
+            mStats.put(name, stats);
+        }
+
+        stats.mCount++;
+        stats.mTotalNanos += time;
+        stats.mMaxNanos = Math.max(stats.mMaxNanos, time);
+    }
+
+    /**
+     * Returns stats of the section.
+     *
+     * @param name Section name.
+     * @return Stats or null if the section has not ended yet.
+     */
+    public Stats getStats(String name) {
+        return mStats.get(name);
+    }
+
+    /**
+     * Returns stats of all ended sections.
+     *
+     * @return Copy of the stats, keyed by section name.
+     */
+    public Map<String, Stats> getAllStats() {
+        return new HashMap<>(mStats);
+    }
+
+    public void reset() {
+        mStats.clear();
+    }
+
+    /**
+     * Timing of a section.
+     */
+    public static final class Stats {
+        private long mCount, mTotalNanos, mMaxNanos;
+
+        public long getCount() {
+            return mCount;
+        }
+
+        /**
+         * @return Total time(ns).
+         */
+        public long getTotalNanos() {
+            return mTotalNanos;
+        }
+
+        /**
+         * @return Maximum time(ns).
+         */
+        public long getMaxNanos() {
+            return mMaxNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + mCount + " total_ns=" + mTotalNanos + " max_ns=" + mMaxNanos;
+        }
+    }
+}
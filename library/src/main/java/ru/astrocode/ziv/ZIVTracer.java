@@ -0,0 +1,37 @@
+package ru.astrocode.ziv;
+
+/**
+ * Receiver of the trace sections of the {@link ZIVImageView} hot paths, see {@link ZIVImageView#setTracer(ZIVTracer)}.
+ * Sections are begun and ended on the main thread and are properly nested.
+ */
+
+public interface ZIVTracer {
+    /**
+     * Touch event handling, including the gesture detectors.
+     */
+    String SECTION_TOUCH = "ZIV.onTouchEvent";
+
+    /**
+     * Scale, rotation and translation of the viewport and the draw matrix update.
+     */
+    String SECTION_TRANSFORM = "ZIV.transform";
+
+    /**
+     * Draw matrix handed to the ImageView.
+     */
+    String SECTION_SET_MATRIX = "ZIV.setImageMatrix";
+
+    /**
+     * Drawing of the image and the annotations.
+     */
+    String SECTION_DRAW = "ZIV.onDraw";
+
+    /**
+     * Viewport listener callbacks.
+     */
+    String SECTION_LISTENERS = "ZIV.listeners";
+
+    void beginSection(String name);
+
+    void endSection();
+}
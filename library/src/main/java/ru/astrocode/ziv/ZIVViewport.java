@@ -0,0 +1,181 @@
+package ru.astrocode.ziv;
+
+import android.graphics.Matrix;
+import android.graphics.RectF;
+
+/**
+ * Zoom, rotation and translation of {@link ZIVImageView} relative to the normal matrix, kept in double.
+ * Repeated incremental scales and translations don't accumulate float error at large zoom values,
+ * only the final draw matrix is converted to float. Rects are mapped to their bounding boxes.
+ */
+
+final class ZIVViewport {
+    /**
+     * Scale closer to 1 and rotation closer to 0 than this are snapped to exactly 1 and 0.
+     */
+    private static final double SNAP_EPSILON = 1e-6;
+
+    private double mScale = 1, mTranslateX, mTranslateY;
+    private double mRotation, mCos = 1, mSin;
+
+    private final float[] mValues = new float[9];
+
+    void reset() {
+        mScale = 1;
+        mTranslateX = 0;
+        mTranslateY = 0;
+        setRotation(0);
+    }
+
+    /**
+     * Scales by the factor around the pivot.
+     */
+    void scale(double factor, double pivotX, double pivotY) {
+        mTranslateX = pivotX + (mTranslateX - pivotX) * factor;
+        mTranslateY = pivotY + (mTranslateY - pivotY) * factor;
+        mScale *= factor;
+
+        if (Math.abs(mScale - 1) < SNAP_EPSILON) {
+            mScale = 1;
+        }
+    }
+
+    /**
+     * Rotates by the angle around the pivot.
+     *
+     * @param degrees Angle(degrees), clockwise.
+     */
+    void rotate(double degrees, double pivotX, double pivotY) {
+        final double radians = Math.toRadians(degrees);
+        final double cos = Math.cos(radians), sin = Math.sin(radians);
+
+        final double x = mTranslateX - pivotX, y = mTranslateY - pivotY;
+
+        mTranslateX = pivotX + x * cos - y * sin;
+        mTranslateY = pivotY + x * sin + y * cos;
+
+        setRotation(mRotation + degrees);
+    }
+
+    void translate(double dx, double dy) {
+        mTranslateX += dx;
+        mTranslateY += dy;
+    }
+
+    double getScale() {
+        return mScale;
+    }
+
+    /**
+     * Returns rotation angle in (-180, 180] degrees, clockwise.
+     */
+    double getRotation() {
+        return mRotation;
+    }
+
+    double getTranslateX() {
+        return mTranslateX;
+    }
+
+    double getTranslateY() {
+        return mTranslateY;
+    }
+
+    /**
+     * Maps the rect by the viewport, a rotated rect is mapped to its bounding box.
+     */
+    void mapRect(RectF src, RectF out) {
+        final double a = mScale * mCos, b = -mScale * mSin;
+        final double c = mScale * mSin, d = mScale * mCos;
+
+        final double x0 = a * src.left, x1 = a * src.right;
+        final double y0 = b * src.top, y1 = b * src.bottom;
+        final double x2 = c * src.left, x3 = c * src.right;
+        final double y2 = d * src.top, y3 = d * src.bottom;
+
+        out.set((float) (Math.min(x0, x1) + Math.min(y0, y1) + mTranslateX),
+                (float) (Math.min(x2, x3) + Math.min(y2, y3) + mTranslateY),
+                (float) (Math.max(x0, x1) + Math.max(y0, y1) + mTranslateX),
+                (float) (Math.max(x2, x3) + Math.max(y2, y3) + mTranslateY));
+    }
+
+    /**
+     * Sets the draw matrix: the normal matrix followed by the viewport, computed in double.
+     *
+     * @param normalValues Values of the normal matrix.
+     * @param out          Draw matrix.
+     */
+    void getDrawMatrix(float[] normalValues, Matrix out) {
+        final double a = mScale * mCos, b = -mScale * mSin;
+        final double c = mScale * mSin, d = mScale * mCos;
+
+        final double persp0 = normalValues[Matrix.MPERSP_0];
+        final double persp1 = normalValues[Matrix.MPERSP_1];
+        final double persp2 = normalValues[Matrix.MPERSP_2];
+
+        mValues[Matrix.MSCALE_X] = (float) (a * normalValues[Matrix.MSCALE_X] + b * normalValues[Matrix.MSKEW_Y] + mTranslateX * persp0);
+        mValues[Matrix.MSKEW_X] = (float) (a * normalValues[Matrix.MSKEW_X] + b * normalValues[Matrix.MSCALE_Y] + mTranslateX * persp1);
+        mValues[Matrix.MTRANS_X] = (float) (a * normalValues[Matrix.MTRANS_X] + b * normalValues[Matrix.MTRANS_Y] + mTranslateX * persp2);
+        mValues[Matrix.MSKEW_Y] = (float) (c * normalValues[Matrix.MSCALE_X] + d * normalValues[Matrix.MSKEW_Y] + mTranslateY * persp0);
+        mValues[Matrix.MSCALE_Y] = (float) (c * normalValues[Matrix.MSKEW_X] + d * normalValues[Matrix.MSCALE_Y] + mTranslateY * persp1);
+        mValues[Matrix.MTRANS_Y] = (float) (c * normalValues[Matrix.MTRANS_X] + d * normalValues[Matrix.MTRANS_Y] + mTranslateY * persp2);
+        mValues[Matrix.MPERSP_0] = (float) persp0;
+        mValues[Matrix.MPERSP_1] = (float) persp1;
+        mValues[Matrix.MPERSP_2] = (float) persp2;
+
+        out.setValues(mValues);
+    }
+
+    /**
+     * Sets the inverse of the draw matrix, computed in double if neither the normal matrix nor the viewport rotates.
+     *
+     * @param normalValues Values of the normal matrix.
+     * @param drawMatrix   Draw matrix, inverted in float otherwise.
+     * @param out          Inverse draw matrix.
+     */
+    void getInverseDrawMatrix(float[] normalValues, Matrix drawMatrix, Matrix out) {
+        if (mRotation != 0 || normalValues[Matrix.MSKEW_X] != 0 || normalValues[Matrix.MSKEW_Y] != 0 ||
+                normalValues[Matrix.MPERSP_0] != 0 || normalValues[Matrix.MPERSP_1] != 0 ||
+                normalValues[Matrix.MPERSP_2] != 1 ||
+                normalValues[Matrix.MSCALE_X] == 0 || normalValues[Matrix.MSCALE_Y] == 0) {
+            drawMatrix.invert(out);
+            return;
+        }
+
+        final double scaleX = mScale * normalValues[Matrix.MSCALE_X];
+        final double scaleY = mScale * normalValues[Matrix.MSCALE_Y];
+        final double translateX = mScale * normalValues[Matrix.MTRANS_X] + mTranslateX;
+        final double translateY = mScale * normalValues[Matrix.MTRANS_Y] + mTranslateY;
+
+        mValues[Matrix.MSCALE_X] = (float) (1 / scaleX);
+        mValues[Matrix.MSKEW_X] = 0;
+        mValues[Matrix.MTRANS_X] = (float) (-translateX / scaleX);
+        mValues[Matrix.MSKEW_Y] = 0;
+        mValues[Matrix.MSCALE_Y] = (float) (1 / scaleY);
+        mValues[Matrix.MTRANS_Y] = (float) (-translateY / scaleY);
+        mValues[Matrix.MPERSP_0] = 0;
+        mValues[Matrix.MPERSP_1] = 0;
+        mValues[Matrix.MPERSP_2] = 1;
+
+        out.setValues(mValues);
+    }
+
+    private void setRotation(double degrees) {
+        degrees %= 360;
+        if (degrees > 180) {
+            degrees -= 360;
+        } else if (degrees <= -180) {
+            degrees += 360;
+        }
+
+        if (Math.abs(degrees) < SNAP_EPSILON) {
+            degrees = 0;
+        }
+
+        mRotation = degrees;
+
+        final double radians = Math.toRadians(degrees);
+        mCos = Math.cos(radians);
+        mSin = Math.sin(radians);
+    }
+}
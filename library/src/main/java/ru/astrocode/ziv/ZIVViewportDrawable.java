@@ -0,0 +1,19 @@
+package ru.astrocode.ziv;
+
+import android.graphics.RectF;
+
+/**
+ * Drawable that decodes only the visible part of its content. {@link ZIVImageView} sets the viewport
+ * before every draw.
+ */
+
+interface ZIVViewportDrawable {
+
+    /**
+     * Sets the visible part of the image.
+     *
+     * @param visibleRect Visible rect in image coordinates.
+     * @param scale       Screen pixels per image pixel.
+     */
+    void setViewport(RectF visibleRect, float scale);
+}
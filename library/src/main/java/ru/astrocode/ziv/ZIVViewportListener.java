@@ -0,0 +1,11 @@
+package ru.astrocode.ziv;
+
+/**
+ * Listener that is notified when the visible part of the {@link ZIVImageView} image is changed.
+ */
+
+public interface ZIVViewportListener {
+
+    void onViewportChanged(ZIVImageView view);
+
+}
@@ -0,0 +1,106 @@
+package ru.astrocode.ziv;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * Compact, resolution independent record of the {@link ZIVImageView} viewport: zoom, rotation, the image point
+ * at the center of the view and the zoom history. Image point is relative to the image size,
+ * zoom history pivots are relative to the view size.
+ */
+
+public final class ZIVViewportState implements Parcelable {
+    private static final int ZOOM_INFO_VALUES = 4;
+
+    final float mZoom;
+    final float mRotation;
+    final float mCenterX, mCenterY;
+    final float[] mZoomHistory;
+
+    ZIVViewportState(float zoom, float rotation, float centerX, float centerY, float[] zoomHistory) {
+        mZoom = zoom;
+        mRotation = rotation;
+        mCenterX = centerX;
+        mCenterY = centerY;
+        mZoomHistory = zoomHistory;
+    }
+
+    private ZIVViewportState(Parcel in) {
+        mZoom = in.readFloat();
+        mRotation = in.readFloat();
+        mCenterX = in.readFloat();
+        mCenterY = in.readFloat();
+        mZoomHistory = in.createFloatArray();
+    }
+
+    /**
+     * Returns zoom value.
+     *
+     * @return Zoom value.
+     */
+    public float getZoom() {
+        return mZoom;
+    }
+
+    /**
+     * Returns rotation applied by gestures.
+     *
+     * @return Angle(degrees), clockwise.
+     */
+    public float getRotation() {
+        return mRotation;
+    }
+
+    /**
+     * Returns x of the image point at the center of the view.
+     *
+     * @return Point x(0..1 of the image width).
+     */
+    public float getCenterX() {
+        return mCenterX;
+    }
+
+    /**
+     * Returns y of the image point at the center of the view.
+     *
+     * @return Point y(0..1 of the image height).
+     */
+    public float getCenterY() {
+        return mCenterY;
+    }
+
+    /**
+     * Returns count of the zoom history entries.
+     *
+     * @return Count of entries.
+     */
+    public int getZoomHistorySize() {
+        return mZoomHistory.length / ZOOM_INFO_VALUES;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeFloat(mZoom);
+        dest.writeFloat(mRotation);
+        dest.writeFloat(mCenterX);
+        dest.writeFloat(mCenterY);
+        dest.writeFloatArray(mZoomHistory);
+    }
+
+    public static final Creator<ZIVViewportState> CREATOR = new Creator<ZIVViewportState>() {
+        @Override
+        public ZIVViewportState createFromParcel(Parcel in) {
+            return new ZIVViewportState(in);
+        }
+
+        @Override
+        public ZIVViewportState[] newArray(int size) {
+            return new ZIVViewportState[size];
+        }
+    };
+}
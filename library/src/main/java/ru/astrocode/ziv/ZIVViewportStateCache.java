@@ -0,0 +1,44 @@
+package ru.astrocode.ziv;
+
+import android.support.v4.util.LruCache;
+
+/**
+ * Bounded cache of {@link ZIVViewportState} records keyed by item id, shared by the recycled
+ * {@link ZIVImageView} instances of a list or a pager. The least recently used records are dropped first.
+ */
+
+public final class ZIVViewportStateCache {
+    private final static String sErrorInvalidArgumentMaxSize = "Max size value cannot be less than 1.";
+
+    private final LruCache<Long, ZIVViewportState> mStates;
+
+    /**
+     * @param maxSize Maximum count of records.
+     */
+    public ZIVViewportStateCache(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException(sErrorInvalidArgumentMaxSize);
+        }
+        mStates = new LruCache<>(maxSize);
+    }
+
+    public ZIVViewportState get(long itemId) {
+        return mStates.get(itemId);
+    }
+
+    public void put(long itemId, ZIVViewportState state) {
+        mStates.put(itemId, state);
+    }
+
+    public void remove(long itemId) {
+        mStates.remove(itemId);
+    }
+
+    public void clear() {
+        mStates.evictAll();
+    }
+
+    public int size() {
+        return mStates.size();
+    }
+}
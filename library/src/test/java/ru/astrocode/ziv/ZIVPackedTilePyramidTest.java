@@ -0,0 +1,185 @@
+package ru.astrocode.ziv;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import ru.astrocode.ziv.tiler.ZIVPackedTileWriter;
+import ru.astrocode.ziv.tiler.ZIVPyramidInfo;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Pyramid written by the tiler's {@link ZIVPackedTileWriter} and read back by {@link ZIVPackedTilePyramid}.
+ */
+public class ZIVPackedTilePyramidTest {
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void header_roundTrip() throws IOException {
+        final ZIVPyramidInfo info = new ZIVPyramidInfo(1000, 600, 254, 1, "jpg");
+        final ZIVPackedTilePyramid pyramid = ZIVPackedTilePyramid.open(write(info, -1, -1, -1));
+
+        try {
+            assertEquals(1000, pyramid.getWidth());
+            assertEquals(600, pyramid.getHeight());
+            assertEquals(254, pyramid.getTileSize());
+            assertEquals(1, pyramid.getOverlap());
+            assertEquals(info.getMaxLevel(), pyramid.getMaxLevel());
+            assertTrue(pyramid.isOpaque());
+
+            for (int level = 0; level <= info.getMaxLevel(); level++) {
+                assertEquals(info.getColumnCount(level), pyramid.getColumnCount(level));
+                assertEquals(info.getRowCount(level), pyramid.getRowCount(level));
+            }
+        } finally {
+            pyramid.close();
+        }
+    }
+
+    @Test
+    public void tileData_roundTrip() throws IOException {
+        final ZIVPyramidInfo info = new ZIVPyramidInfo(1000, 600, 254, 1, "png");
+        final ZIVPackedTilePyramid pyramid = ZIVPackedTilePyramid.open(write(info, -1, -1, -1));
+
+        try {
+            assertFalse(pyramid.isOpaque());
+
+            for (int level = 0; level <= info.getMaxLevel(); level++) {
+                for (int row = 0; row < info.getRowCount(level); row++) {
+                    for (int column = 0; column < info.getColumnCount(level); column++) {
+                        assertArrayEquals(tileBytes(level, column, row), toArray(pyramid.getTileData(level, column, row)));
+                    }
+                }
+            }
+        } finally {
+            pyramid.close();
+        }
+    }
+
+    @Test
+    public void tileData_missingOrOutOfRange() throws IOException {
+        final ZIVPyramidInfo info = new ZIVPyramidInfo(1000, 600, 254, 1, "jpg");
+        final int maxLevel = info.getMaxLevel();
+        final ZIVPackedTilePyramid pyramid = ZIVPackedTilePyramid.open(write(info, maxLevel, 2, 1));
+
+        try {
+            assertNull(pyramid.getTileData(maxLevel, 2, 1));
+            assertArrayEquals(tileBytes(maxLevel, 1, 1), toArray(pyramid.getTileData(maxLevel, 1, 1)));
+
+            assertNull(pyramid.getTileData(maxLevel, info.getColumnCount(maxLevel), 0));
+            assertNull(pyramid.getTileData(maxLevel, 0, info.getRowCount(maxLevel)));
+            assertNull(pyramid.getTileData(maxLevel, -1, 0));
+            assertNull(pyramid.getTileData(maxLevel + 1, 0, 0));
+            assertNull(pyramid.getTileData(-1, 0, 0));
+        } finally {
+            pyramid.close();
+        }
+    }
+
+    @Test
+    public void open_rejectsTruncatedIndex() throws IOException {
+        final File file = write(new ZIVPyramidInfo(1000, 600, 254, 1, "jpg"), -1, -1, -1);
+
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(randomAccessFile.length() - 1);
+        } finally {
+            randomAccessFile.close();
+        }
+
+        try {
+            ZIVPackedTilePyramid.open(file).close();
+            fail("Truncated index was accepted.");
+        } catch (IOException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void begin_rejectsUnknownFormat() throws IOException {
+        final File directory = mFolder.newFolder();
+
+        final ZIVPackedTileWriter writer = new ZIVPackedTileWriter(directory, "image");
+        try {
+            writer.begin(new ZIVPyramidInfo(1000, 600, 254, 1, "bmp"));
+            fail("Unknown format was accepted.");
+        } catch (IOException e) {
+            // Expected.
+        } finally {
+            writer.close();
+        }
+
+        assertFalse(new File(directory, "image.zivp").exists());
+    }
+
+    @Test
+    public void close_deletesUnfinishedFile() throws IOException {
+        final File directory = mFolder.newFolder();
+
+        final ZIVPackedTileWriter writer = new ZIVPackedTileWriter(directory, "image");
+        writer.begin(new ZIVPyramidInfo(1000, 600, 254, 1, "jpg"));
+        writer.writeTile(0, 0, 0, tileBytes(0, 0, 0));
+        writer.close();
+
+        assertFalse(new File(directory, "image.zivp").exists());
+    }
+
+    /**
+     * Writes every tile except the skipped one, the levels in reverse order like the parallel encoder may do.
+     */
+    private File write(ZIVPyramidInfo info, int skipLevel, int skipColumn, int skipRow) throws IOException {
+        final File directory = mFolder.newFolder();
+
+        final ZIVPackedTileWriter writer = new ZIVPackedTileWriter(directory, "image");
+        try {
+            writer.begin(info);
+
+            for (int level = info.getMaxLevel(); level >= 0; level--) {
+                for (int row = info.getRowCount(level) - 1; row >= 0; row--) {
+                    for (int column = 0; column < info.getColumnCount(level); column++) {
+                        if (level == skipLevel && column == skipColumn && row == skipRow) continue;
+
+                        writer.writeTile(level, column, row, tileBytes(level, column, row));
+                    }
+                }
+            }
+
+            writer.finish();
+        } finally {
+            writer.close();
+        }
+
+        return new File(directory, "image.zivp");
+    }
+
+    private static byte[] tileBytes(int level, int column, int row) {
+        final byte[] ret = new byte[1 + level + column * 3 + row * 7];
+
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = (byte) (i * 31 + level * 7 + column * 5 + row);
+        }
+
+        return ret;
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        if (buffer == null) return null;
+
+        final byte[] ret = new byte[buffer.remaining()];
+        buffer.duplicate().get(ret);
+
+        return ret;
+    }
+}
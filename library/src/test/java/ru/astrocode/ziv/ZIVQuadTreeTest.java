@@ -0,0 +1,151 @@
+package ru.astrocode.ziv;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ZIVQuadTreeTest {
+
+    @Test
+    public void insert_queryFindsIntersectingItems() {
+        final ZIVQuadTree<String> tree = new ZIVQuadTree<>(0, 0, 100, 100);
+        tree.insert("a", 10, 10, 20, 20);
+        tree.insert("b", 60, 60, 70, 70);
+        tree.insert("center", 40, 40, 60, 60);
+
+        assertEquals(3, tree.size());
+        assertEquals(list("a"), query(tree, 0, 0, 15, 15));
+        assertEquals(list("b", "center"), query(tree, 55, 55, 65, 65));
+        assertEquals(list(), query(tree, 80, 0, 100, 20));
+    }
+
+    @Test
+    public void query_touchingBoundsIntersect() {
+        final ZIVQuadTree<String> tree = new ZIVQuadTree<>(0, 0, 100, 100);
+        tree.insert("a", 10, 10, 20, 20);
+
+        assertEquals(list("a"), query(tree, 20, 20, 30, 30));
+        assertEquals(list(), query(tree, 20.5f, 20.5f, 30, 30));
+    }
+
+    @Test
+    public void split_keepsItemsQueryable() {
+        final ZIVQuadTree<Integer> tree = new ZIVQuadTree<>(0, 0, 1000, 1000);
+        final Random random = new Random(42);
+
+        final float[][] bounds = new float[500][];
+
+        for (int i = 0; i < bounds.length; i++) {
+            final float left = random.nextFloat() * 990, top = random.nextFloat() * 990;
+            // Every tenth item is large, so it straddles the quadrants and stays in an inner node.
+            final float size = i % 10 == 0 ? 300 : 1 + random.nextFloat() * 9;
+
+            bounds[i] = new float[]{left, top, Math.min(1000, left + size), Math.min(1000, top + size)};
+            tree.insert(i, bounds[i][0], bounds[i][1], bounds[i][2], bounds[i][3]);
+        }
+
+        assertEquals(bounds.length, tree.size());
+
+        for (int i = 0; i < 200; i++) {
+            final float left = random.nextFloat() * 900, top = random.nextFloat() * 900;
+            final float right = left + random.nextFloat() * 100, bottom = top + random.nextFloat() * 100;
+
+            assertEquals(bruteForce(bounds, left, top, right, bottom), query(tree, left, top, right, bottom));
+        }
+    }
+
+    @Test
+    public void split_stopsAtMaxDepth() {
+        final ZIVQuadTree<Integer> tree = new ZIVQuadTree<>(0, 0, 1000, 1000);
+
+        for (int i = 0; i < 100; i++) {
+            tree.insert(i, 1, 1, 1, 1);
+        }
+
+        assertEquals(100, tree.size());
+        assertEquals(100, query(tree, 0, 0, 2, 2).size());
+    }
+
+    @Test
+    public void remove_dropsItem() {
+        final ZIVQuadTree<Integer> tree = new ZIVQuadTree<>(0, 0, 100, 100);
+
+        for (int i = 0; i < 20; i++) {
+            tree.insert(i, i * 4, i * 4, i * 4 + 2, i * 4 + 2);
+        }
+
+        assertTrue(tree.remove(5));
+        assertFalse(tree.remove(5));
+        assertFalse(tree.contains(5));
+        assertEquals(19, tree.size());
+        assertEquals(list(), query(tree, 20, 20, 22, 22));
+        assertEquals(list(4, 6), query(tree, 16, 16, 24, 24));
+    }
+
+    @Test
+    public void insert_existingItemMovesIt() {
+        final ZIVQuadTree<String> tree = new ZIVQuadTree<>(0, 0, 100, 100);
+        tree.insert("a", 10, 10, 20, 20);
+        tree.insert("a", 70, 70, 80, 80);
+
+        assertEquals(1, tree.size());
+        assertEquals(list(), query(tree, 10, 10, 20, 20));
+        assertEquals(list("a"), query(tree, 75, 75, 76, 76));
+    }
+
+    @Test
+    public void insert_outsideBoundsIsStillFound() {
+        final ZIVQuadTree<String> tree = new ZIVQuadTree<>(0, 0, 100, 100);
+        tree.insert("outside", 150, 150, 160, 160);
+
+        assertEquals(list("outside"), query(tree, 155, 155, 170, 170));
+    }
+
+    @Test
+    public void clear_removesEverything() {
+        final ZIVQuadTree<Integer> tree = new ZIVQuadTree<>(0, 0, 100, 100);
+
+        for (int i = 0; i < 50; i++) {
+            tree.insert(i, i, i, i + 1, i + 1);
+        }
+        tree.clear();
+
+        assertEquals(0, tree.size());
+        assertFalse(tree.contains(0));
+        assertEquals(list(), query(tree, 0, 0, 100, 100));
+    }
+
+    private static <T extends Comparable<T>> List<T> query(ZIVQuadTree<T> tree, float left, float top, float right, float bottom) {
+        final ArrayList<T> ret = new ArrayList<>();
+        tree.query(left, top, right, bottom, ret);
+
+        Collections.sort(ret);
+        return ret;
+    }
+
+    private static List<Integer> bruteForce(float[][] bounds, float left, float top, float right, float bottom) {
+        final ArrayList<Integer> ret = new ArrayList<>();
+
+        for (int i = 0; i < bounds.length; i++) {
+            if (bounds[i][0] <= right && left <= bounds[i][2] && bounds[i][1] <= bottom && top <= bounds[i][3]) {
+                ret.add(i);
+            }
+        }
+
+        return ret;
+    }
+
+    @SafeVarargs
+    private static <T> List<T> list(T... items) {
+        final ArrayList<T> ret = new ArrayList<>();
+        Collections.addAll(ret, items);
+        return ret;
+    }
+}
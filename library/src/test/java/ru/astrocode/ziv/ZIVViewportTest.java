@@ -0,0 +1,155 @@
+package ru.astrocode.ziv;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Only the double state of the viewport is tested, the rect and matrix helpers need the Android graphics classes.
+ */
+public class ZIVViewportTest {
+
+    @Test
+    public void scale_keepsPivotAtExtremeZoom() {
+        final ZIVViewport viewport = new ZIVViewport();
+        viewport.translate(-123.25, 456.5);
+
+        final double pivotX = 537.75, pivotY = 911.125;
+
+        for (int i = 0; i < 40; i++) {
+            final double contentX = toContentX(viewport, pivotX);
+            final double contentY = toContentY(viewport, pivotY);
+
+            viewport.scale(2, pivotX, pivotY);
+
+            assertEquals(pivotX, toViewX(viewport, contentX), 1e-6);
+            assertEquals(pivotY, toViewY(viewport, contentY), 1e-6);
+        }
+
+        assertEquals(Math.pow(2, 40), viewport.getScale(), 0);
+    }
+
+    @Test
+    public void scale_inverseRestoresViewport() {
+        final ZIVViewport viewport = new ZIVViewport();
+        viewport.translate(-123.25, 456.5);
+
+        for (int i = 0; i < 1000; i++) {
+            viewport.scale(1.05, 100 + i, 200 - i);
+        }
+        for (int i = 999; i >= 0; i--) {
+            viewport.scale(1 / 1.05, 100 + i, 200 - i);
+        }
+
+        assertEquals(1, viewport.getScale(), 0);
+        assertEquals(-123.25, viewport.getTranslateX(), 1e-6);
+        assertEquals(456.5, viewport.getTranslateY(), 1e-6);
+    }
+
+    @Test
+    public void scale_incrementalMatchesSingleStep() {
+        final ZIVViewport incremental = new ZIVViewport();
+        final ZIVViewport single = new ZIVViewport();
+
+        for (int i = 0; i < 500; i++) {
+            incremental.scale(1.1, 300, 400);
+        }
+        single.scale(Math.pow(1.1, 500), 300, 400);
+
+        assertEquals(1, incremental.getScale() / single.getScale(), 1e-12);
+        assertEquals(1, incremental.getTranslateX() / single.getTranslateX(), 1e-12);
+        assertEquals(1, incremental.getTranslateY() / single.getTranslateY(), 1e-12);
+    }
+
+    @Test
+    public void translate_isNotLostAtExtremeZoom() {
+        final ZIVViewport viewport = new ZIVViewport();
+        viewport.scale(1e6, 0, 0);
+
+        final double contentX = 12345.6789;
+        final double viewX = toViewX(viewport, contentX);
+
+        // The view coordinate is about 1e10, where a float step is 1024 pixels and a one pixel scroll would be lost.
+        viewport.translate(1, 0);
+
+        assertEquals(viewX + 1, toViewX(viewport, contentX), 1e-4);
+        assertEquals(contentX - 1e-6, toContentX(viewport, viewX), 1e-9);
+    }
+
+    @Test
+    public void scale_snapsToOne() {
+        final ZIVViewport viewport = new ZIVViewport();
+
+        viewport.scale(3, 10, 10);
+        viewport.scale(1 / 3.0 + 1e-9, 10, 10);
+
+        assertEquals(1, viewport.getScale(), 0);
+    }
+
+    @Test
+    public void rotate_normalizesAngle() {
+        final ZIVViewport viewport = new ZIVViewport();
+
+        viewport.rotate(270, 0, 0);
+        assertEquals(-90, viewport.getRotation(), 1e-9);
+
+        viewport.rotate(-90, 0, 0);
+        assertEquals(180, viewport.getRotation(), 1e-9);
+
+        viewport.rotate(180, 0, 0);
+        assertEquals(0, viewport.getRotation(), 0);
+
+        viewport.rotate(-540, 0, 0);
+        assertEquals(180, viewport.getRotation(), 1e-9);
+    }
+
+    @Test
+    public void rotate_aroundPivotAndBack() {
+        final ZIVViewport viewport = new ZIVViewport();
+        viewport.scale(1e6, 50, 60);
+
+        final double translateX = viewport.getTranslateX(), translateY = viewport.getTranslateY();
+
+        viewport.rotate(90, 10, 0);
+
+        assertEquals(10 - translateY, viewport.getTranslateX(), 1e-6);
+        assertEquals(translateX - 10, viewport.getTranslateY(), 1e-6);
+
+        viewport.rotate(-90, 10, 0);
+
+        assertEquals(0, viewport.getRotation(), 0);
+        assertEquals(translateX, viewport.getTranslateX(), 1e-6);
+        assertEquals(translateY, viewport.getTranslateY(), 1e-6);
+    }
+
+    @Test
+    public void reset_restoresIdentity() {
+        final ZIVViewport viewport = new ZIVViewport();
+        viewport.scale(5, 1, 2);
+        viewport.rotate(30, 3, 4);
+        viewport.translate(7, 8);
+
+        viewport.reset();
+
+        assertEquals(1, viewport.getScale(), 0);
+        assertEquals(0, viewport.getRotation(), 0);
+        assertEquals(0, viewport.getTranslateX(), 0);
+        assertEquals(0, viewport.getTranslateY(), 0);
+    }
+
+    private static double toViewX(ZIVViewport viewport, double contentX) {
+        return contentX * viewport.getScale() + viewport.getTranslateX();
+    }
+
+    private static double toViewY(ZIVViewport viewport, double contentY) {
+        return contentY * viewport.getScale() + viewport.getTranslateY();
+    }
+
+    private static double toContentX(ZIVViewport viewport, double viewX) {
+        return (viewX - viewport.getTranslateX()) / viewport.getScale();
+    }
+
+    private static double toContentY(ZIVViewport viewport, double viewY) {
+        return (viewY - viewport.getTranslateY()) / viewport.getScale();
+    }
+}
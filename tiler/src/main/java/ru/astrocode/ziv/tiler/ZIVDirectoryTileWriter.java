@@ -0,0 +1,86 @@
+package ru.astrocode.ziv.tiler;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * Writes the pyramid in the Deep Zoom directory layout:
+ * <pre>
+ * name.dzi                        XML descriptor
+ * name_files/level/column_row.format  tiles
+ * </pre>
+ * The descriptor is written by {@link #finish}, so an interrupted pyramid is never opened.
+ */
+
+public final class ZIVDirectoryTileWriter implements ZIVTileWriter {
+    private final File mDirectory;
+    private final String mName;
+
+    private ZIVPyramidInfo mInfo;
+    private File mTilesDirectory;
+    private String mFormat;
+
+    public ZIVDirectoryTileWriter(File directory, String name) {
+        mDirectory = directory;
+        mName = name;
+    }
+
+    @Override
+    public void begin(ZIVPyramidInfo info) throws IOException {
+        mInfo = info;
+        mFormat = info.getFormat();
+        mTilesDirectory = new File(mDirectory, mName + "_files");
+
+        // The descriptor of the previous pyramid would point to the tiles that are being replaced.
+        final File descriptor = getDescriptorFile();
+        if (descriptor.exists() && !descriptor.delete()) {
+            throw new IOException("File cannot be deleted: " + descriptor);
+        }
+
+        for (int level = 0; level < info.getLevelCount(); level++) {
+            final File levelDirectory = new File(mTilesDirectory, Integer.toString(level));
+            if (!levelDirectory.isDirectory() && !levelDirectory.mkdirs()) {
+                throw new IOException("Directory cannot be created: " + levelDirectory);
+            }
+        }
+    }
+
+    @Override
+    public void writeTile(int level, int column, int row, byte[] data) throws IOException {
+        final File file = new File(new File(mTilesDirectory, Integer.toString(level)), column + "_" + row + "." + mFormat);
+
+        final FileOutputStream stream = new FileOutputStream(file);
+        try {
+            stream.write(data);
+        } finally {
+            stream.close();
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(getDescriptorFile()),
+                Charset.forName("UTF-8"));
+        try {
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            writer.write("<Image xmlns=\"http://schemas.microsoft.com/deepzoom/2008\" Format=\"" + mInfo.getFormat() +
+                    "\" Overlap=\"" + mInfo.getOverlap() + "\" TileSize=\"" + mInfo.getTileSize() + "\">\n");
+            writer.write("    <Size Width=\"" + mInfo.getWidth() + "\" Height=\"" + mInfo.getHeight() + "\"/>\n");
+            writer.write("</Image>\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private File getDescriptorFile() {
+        return new File(mDirectory, mName + ".dzi");
+    }
+}
@@ -0,0 +1,171 @@
+package ru.astrocode.ziv.tiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes the pyramid into a single name.zivp file read by ZIVPackedTilePyramid:
+ * <pre>
+ * header, 32 bytes(big-endian):
+ *   0  magic "ZIVP"
+ *   4  u16 version(1)
+ *   6  u16 flags(0)
+ *   8  u32 image width
+ *  12  u32 image height
+ *  16  u16 tile size
+ *  18  u16 tile overlap
+ *  20  u16 level count
+ *  22  u16 tile format(0 - jpeg, 1 - png, 2 - webp)
+ *  24  u64 index offset
+ * payloads: encoded tiles in the order they are written
+ * index:
+ *   level table, 16 bytes for every level: u32 column count, u32 row count, u64 offset of the level tile table
+ *   level tile table, 12 bytes for every tile in row-major order: u64 payload offset, u32 payload length
+ * </pre>
+ * The index and the header are written by {@link #finish}, so payloads are appended without seeking back.
+ * An unfinished file is deleted when the writer is closed.
+ */
+
+public final class ZIVPackedTileWriter implements ZIVTileWriter {
+    private static final int MAGIC = 0x5A495650;
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 32;
+    private static final int LEVEL_ENTRY_SIZE = 16;
+    private static final int TILE_ENTRY_SIZE = 12;
+
+    private final File mFile;
+
+    private RandomAccessFile mOutput;
+    private FileChannel mChannel;
+    private long mPosition;
+
+    private ZIVPyramidInfo mInfo;
+    private int mFormatCode;
+    private long[][] mOffsets;
+    private int[][] mLengths;
+
+    public ZIVPackedTileWriter(File directory, String name) {
+        mFile = new File(directory, name + ".zivp");
+    }
+
+    @Override
+    public void begin(ZIVPyramidInfo info) throws IOException {
+        if (info.getTileSize() > 0xFFFF || info.getOverlap() > 0xFFFF) {
+            throw new IOException("Tile size is too large for the packed format.");
+        }
+
+        mFormatCode = getFormatCode(info.getFormat());
+
+        mInfo = info;
+        mOffsets = new long[info.getLevelCount()][];
+        mLengths = new int[info.getLevelCount()][];
+
+        for (int level = 0; level < info.getLevelCount(); level++) {
+            final int tileCount = info.getColumnCount(level) * info.getRowCount(level);
+            mOffsets[level] = new long[tileCount];
+            mLengths[level] = new int[tileCount];
+        }
+
+        mOutput = new RandomAccessFile(mFile, "rw");
+        mOutput.setLength(0);
+        mChannel = mOutput.getChannel();
+
+        mChannel.write(ByteBuffer.allocate(HEADER_SIZE), 0);
+        mPosition = HEADER_SIZE;
+    }
+
+    @Override
+    public synchronized void writeTile(int level, int column, int row, byte[] data) throws IOException {
+        final int tile = row * mInfo.getColumnCount(level) + column;
+
+        write(ByteBuffer.wrap(data));
+
+        mOffsets[level][tile] = mPosition - data.length;
+        mLengths[level][tile] = data.length;
+    }
+
+    @Override
+    public synchronized void finish() throws IOException {
+        final long indexOffset = mPosition;
+        final int levelCount = mInfo.getLevelCount();
+
+        final ByteBuffer levels = ByteBuffer.allocate(levelCount * LEVEL_ENTRY_SIZE);
+        long tableOffset = indexOffset + levelCount * LEVEL_ENTRY_SIZE;
+
+        for (int level = 0; level < levelCount; level++) {
+            levels.putInt(mInfo.getColumnCount(level));
+            levels.putInt(mInfo.getRowCount(level));
+            levels.putLong(tableOffset);
+
+            tableOffset += (long) mLengths[level].length * TILE_ENTRY_SIZE;
+        }
+        levels.flip();
+        write(levels);
+
+        for (int level = 0; level < levelCount; level++) {
+            final ByteBuffer table = ByteBuffer.allocate(mLengths[level].length * TILE_ENTRY_SIZE);
+
+            for (int tile = 0; tile < mLengths[level].length; tile++) {
+                table.putLong(mOffsets[level][tile]);
+                table.putInt(mLengths[level][tile]);
+            }
+            table.flip();
+            write(table);
+        }
+
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putShort((short) VERSION);
+        header.putShort((short) 0);
+        header.putInt(mInfo.getWidth());
+        header.putInt(mInfo.getHeight());
+        header.putShort((short) mInfo.getTileSize());
+        header.putShort((short) mInfo.getOverlap());
+        header.putShort((short) levelCount);
+        header.putShort((short) mFormatCode);
+        header.putLong(indexOffset);
+        header.flip();
+
+        mChannel.write(header, 0);
+
+        mOutput.close();
+        mOutput = null;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (mOutput == null) return;
+
+        // The writer is not finished, so the file has no header and is deleted.
+        mOutput.close();
+        mOutput = null;
+
+        if (!mFile.delete()) {
+            throw new IOException("File cannot be deleted: " + mFile);
+        }
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            mPosition += mChannel.write(buffer, mPosition);
+        }
+    }
+
+    private static int getFormatCode(String format) throws IOException {
+        switch (format) {
+            case "jpg":
+            case "jpeg":
+                return 0;
+            case "png":
+                return 1;
+            case "webp":
+                return 2;
+            default:
+                throw new IOException("Unsupported tile format: " + format);
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package ru.astrocode.ziv.tiler;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Builds every level of the pyramid from the full resolution rows streamed top to bottom.
+ * <p>
+ * Each level keeps only the rows of the current tile row(plus overlap) and feeds 2x2 averaged rows
+ * to the next coarser level, so memory doesn't depend on the image height. Tiles are encoded
+ * in parallel by the fork-join pool.
+ */
+
+final class ZIVPyramidBuilder {
+    private static final int MAX_PENDING_TASKS_PER_THREAD = 4;
+
+    private final ZIVPyramidInfo mInfo;
+    private final ZIVTileWriter mWriter;
+    private final ForkJoinPool mPool;
+    private final float mQuality;
+    private final boolean mHasAlpha;
+
+    private final Level mMaxLevel;
+    private final ArrayDeque<ForkJoinTask<?>> mPendingTasks = new ArrayDeque<>();
+
+    private int mTileCount;
+
+    ZIVPyramidBuilder(ZIVPyramidInfo info, ZIVTileWriter writer, ForkJoinPool pool, float quality) {
+        mInfo = info;
+        mWriter = writer;
+        mPool = pool;
+        mQuality = quality;
+        mHasAlpha = !"jpg".equalsIgnoreCase(info.getFormat()) && !"jpeg".equalsIgnoreCase(info.getFormat());
+
+        Level level = null;
+        for (int i = 0; i <= info.getMaxLevel(); i++) {
+            level = new Level(i, level);
+        }
+        mMaxLevel = level;
+    }
+
+    /**
+     * Adds full resolution rows.
+     *
+     * @param pixels   ARGB pixels of the rows.
+     * @param rowCount Count of rows.
+     * @throws IOException If a tile cannot be encoded or written.
+     */
+    void addRows(int[] pixels, int rowCount) throws IOException {
+        final int width = mInfo.getWidth();
+
+        for (int i = 0; i < rowCount; i++) {
+            final int[] row = new int[width];
+            System.arraycopy(pixels, i * width, row, 0, width);
+            mMaxLevel.add(row);
+        }
+    }
+
+    /**
+     * Flushes the last rows of every level and waits until all tiles are written.
+     *
+     * @return Count of written tiles.
+     * @throws IOException If a tile cannot be encoded or written.
+     */
+    int finish() throws IOException {
+        mMaxLevel.finish();
+
+        while (!mPendingTasks.isEmpty()) {
+            join(mPendingTasks.poll());
+        }
+
+        return mTileCount;
+    }
+
+    private void submit(ForkJoinTask<?> task) throws IOException {
+        while (mPendingTasks.size() >= mPool.getParallelism() * MAX_PENDING_TASKS_PER_THREAD) {
+            join(mPendingTasks.poll());
+        }
+
+        mPendingTasks.add(mPool.submit(task));
+        mTileCount++;
+    }
+
+    /**
+     * Waits for the task and rethrows the {@link IOException} it has failed with.
+     */
+    private static void join(ForkJoinTask<?> task) throws IOException {
+        try {
+            task.join();
+        } catch (RuntimeException e) {
+            // The pool may rethrow a copy of the task exception, so the whole cause chain is checked.
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+            }
+            throw e;
+        }
+    }
+
+    private byte[] encode(BufferedImage image) throws IOException {
+        final Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(mInfo.getFormat());
+        if (!writers.hasNext()) {
+            throw new IOException("Unsupported tile format: " + mInfo.getFormat());
+        }
+
+        final ImageWriter writer = writers.next();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(bytes)) {
+            writer.setOutput(stream);
+
+            final ImageWriteParam param = writer.getDefaultWriteParam();
+            if (param.canWriteCompressed() && !mHasAlpha) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(mQuality);
+            }
+
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private final class Level {
+        final int mLevel;
+        final int mWidth, mHeight;
+        final Level mNext;
+
+        final ArrayList<int[]> mRows = new ArrayList<>();
+        int mFirstRow;
+        int mReceivedRows;
+        int mNextTileRow;
+
+        int[] mPendingRow;
+
+        Level(int level, Level next) {
+            mLevel = level;
+            mWidth = mInfo.getLevelWidth(level);
+            mHeight = mInfo.getLevelHeight(level);
+            mNext = next;
+        }
+
+        void add(int[] row) throws IOException {
+            mRows.add(row);
+            mReceivedRows++;
+
+            final int tileSize = mInfo.getTileSize();
+            final int overlap = mInfo.getOverlap();
+
+            while (mNextTileRow < mInfo.getRowCount(mLevel) &&
+                    mReceivedRows >= Math.min((mNextTileRow + 1) * tileSize + overlap, mHeight)) {
+                emitTileRow(mNextTileRow);
+                mNextTileRow++;
+
+                final int firstNeededRow = Math.max(0, mNextTileRow * tileSize - overlap);
+                while (mFirstRow < firstNeededRow && !mRows.isEmpty()) {
+                    mRows.remove(0);
+                    mFirstRow++;
+                }
+            }
+
+            if (mNext != null) {
+                if (mPendingRow == null) {
+                    mPendingRow = row;
+                } else {
+                    mNext.add(downsample(mPendingRow, row));
+                    mPendingRow = null;
+                }
+            }
+        }
+
+        void finish() throws IOException {
+            if (mNext != null) {
+                if (mPendingRow != null) {
+                    mNext.add(downsample(mPendingRow, null));
+                    mPendingRow = null;
+                }
+                mNext.finish();
+            }
+        }
+
+        private int[] downsample(int[] top, int[] bottom) {
+            final int[] out = new int[mNext.mWidth];
+
+            for (int x = 0; x < out.length; x++) {
+                final int x0 = x * 2;
+                final int x1 = Math.min(x0 + 1, mWidth - 1);
+
+                int a = 0, r = 0, g = 0, b = 0, count = 0;
+
+                for (int i = 0; i < 4; i++) {
+                    final int[] row = i < 2 ? top : bottom;
+                    if (row == null) continue;
+
+                    final int pixel = row[(i & 1) == 0 ? x0 : x1];
+
+                    a += pixel >>> 24;
+                    r += (pixel >> 16) & 0xFF;
+                    g += (pixel >> 8) & 0xFF;
+                    b += pixel & 0xFF;
+                    count++;
+                }
+
+                out[x] = ((a / count) << 24) | ((r / count) << 16) | ((g / count) << 8) | (b / count);
+            }
+
+            return out;
+        }
+
+        private void emitTileRow(int tileRow) throws IOException {
+            final int tileSize = mInfo.getTileSize();
+            final int overlap = mInfo.getOverlap();
+
+            final int y0 = Math.max(0, tileRow * tileSize - overlap);
+            final int y1 = Math.min(mHeight, (tileRow + 1) * tileSize + overlap);
+
+            for (int column = 0; column < mInfo.getColumnCount(mLevel); column++) {
+                final int x0 = Math.max(0, column * tileSize - overlap);
+                final int x1 = Math.min(mWidth, (column + 1) * tileSize + overlap);
+
+                final BufferedImage tile = new BufferedImage(x1 - x0, y1 - y0,
+                        mHasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+
+                for (int y = y0; y < y1; y++) {
+                    tile.setRGB(0, y - y0, x1 - x0, 1, mRows.get(y - mFirstRow), x0, x1 - x0);
+                }
+
+                submit(new EncodeTask(tile, mLevel, column, tileRow));
+            }
+        }
+    }
+
+    private final class EncodeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final BufferedImage mTile;
+        private final int mLevel, mColumn, mRow;
+
+        EncodeTask(BufferedImage tile, int level, int column, int row) {
+            mTile = tile;
+            mLevel = level;
+            mColumn = column;
+            mRow = row;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                mWriter.writeTile(mLevel, mColumn, mRow, encode(mTile));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package ru.astrocode.ziv.tiler;
+
+/**
+ * Geometry of a Deep Zoom style tile pyramid.
+ * <p>
+ * Level {@link #getMaxLevel()} is the full resolution image, every previous level is half the size
+ * (rounded up) of the next one, level 0 is 1x1 pixel. Tiles are {@link #getTileSize()} pixels wide and high
+ * plus {@link #getOverlap()} pixels shared with every neighbour tile.
+ */
+
+public final class ZIVPyramidInfo {
+    private final int mWidth, mHeight;
+    private final int mTileSize, mOverlap;
+    private final String mFormat;
+    private final int mMaxLevel;
+
+    public ZIVPyramidInfo(int width, int height, int tileSize, int overlap, String format) {
+        mWidth = width;
+        mHeight = height;
+        mTileSize = tileSize;
+        mOverlap = overlap;
+        mFormat = format;
+
+        int maxLevel = 0;
+        while ((1L << maxLevel) < Math.max(width, height)) {
+            maxLevel++;
+        }
+        mMaxLevel = maxLevel;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getTileSize() {
+        return mTileSize;
+    }
+
+    public int getOverlap() {
+        return mOverlap;
+    }
+
+    public String getFormat() {
+        return mFormat;
+    }
+
+    public int getMaxLevel() {
+        return mMaxLevel;
+    }
+
+    public int getLevelCount() {
+        return mMaxLevel + 1;
+    }
+
+    public int getLevelWidth(int level) {
+        return scale(mWidth, mMaxLevel - level);
+    }
+
+    public int getLevelHeight(int level) {
+        return scale(mHeight, mMaxLevel - level);
+    }
+
+    public int getColumnCount(int level) {
+        return (getLevelWidth(level) + mTileSize - 1) / mTileSize;
+    }
+
+    public int getRowCount(int level) {
+        return (getLevelHeight(level) + mTileSize - 1) / mTileSize;
+    }
+
+    private static int scale(int size, int shift) {
+        return (int) ((size + (1L << shift) - 1) >> shift);
+    }
+}
@@ -0,0 +1,22 @@
+package ru.astrocode.ziv.tiler;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destination of the encoded tiles. {@link #writeTile} is called concurrently from the worker threads.
+ * The output becomes readable only after {@link #finish}, closing an unfinished writer discards it.
+ */
+
+public interface ZIVTileWriter extends Closeable {
+
+    void begin(ZIVPyramidInfo info) throws IOException;
+
+    void writeTile(int level, int column, int row, byte[] data) throws IOException;
+
+    /**
+     * Writes the index or descriptor after all tiles are written.
+     */
+    void finish() throws IOException;
+
+}
@@ -0,0 +1,237 @@
+package ru.astrocode.ziv.tiler;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Command line tool that slices a large image into a multi-resolution tile pyramid for ZIVImageView.
+ * <p>
+ * The image is read in horizontal bands, so only one band and a few tile rows per level are kept in memory.
+ * Tiles are encoded in parallel on a fork-join pool.
+ * <p>
+ * Readers of the formats that cannot seek, e.g. jpeg and png, decode the image from the top for every band,
+ * so the read time grows with the square of the band count. By default a band may take a quarter of the heap,
+ * which reads most images in a single pass. Set a smaller band memory only for images that don't fit the heap.
+ * <pre>
+ * usage: ZIVTiler [options] input output_directory
+ *   --tile-size N     tile size(default 254)
+ *   --overlap N       tile overlap(default 1)
+ *   --format F        jpg, png or webp if ImageIO has a webp writer(default jpg)
+ *   --quality Q       jpeg quality 0..1(default 0.9)
+ *   --band-memory MB  memory for a band of the input image(default a quarter of the heap)
+ *   --threads N       worker threads(default count of cores)
+ *   --packed          write a single name.zivp file instead of the Deep Zoom directory
+ * </pre>
+ */
+
+public final class ZIVTiler {
+    private static final String USAGE = "usage: ZIVTiler [--tile-size N] [--overlap N] [--format jpg|png|webp] [--quality Q] " +
+            "[--band-memory MB] [--threads N] [--packed] input output_directory";
+
+    private static final int DEFAULT_BAND_MEMORY_DIVIDER = 4;
+    private static final int ROWS_PER_CHUNK = 64;
+
+    private int mTileSize = 254;
+    private int mOverlap = 1;
+    private String mFormat = "jpg";
+    private float mQuality = 0.9f;
+    /**
+     * Band memory(MB), 0 - a quarter of the heap.
+     */
+    private int mBandMemory;
+    private int mThreadCount = Runtime.getRuntime().availableProcessors();
+    private boolean mIsPacked;
+
+    private File mInput, mOutput;
+
+    public static void main(String[] args) {
+        final ZIVTiler tiler = new ZIVTiler();
+
+        try {
+            tiler.parseArguments(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        try {
+            tiler.run();
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private void parseArguments(String[] args) {
+        int i = 0;
+
+        while (i < args.length && args[i].startsWith("--")) {
+            if (args[i].equals("--packed")) {
+                mIsPacked = true;
+                i++;
+                continue;
+            }
+
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value of " + args[i]);
+            }
+
+            final String name = args[i], value = args[i + 1];
+
+            switch (name) {
+                case "--tile-size":
+                    mTileSize = parsePositive(name, value);
+                    break;
+                case "--overlap":
+                    mOverlap = Integer.parseInt(value);
+                    break;
+                case "--format":
+                    mFormat = value.toLowerCase();
+                    break;
+                case "--quality":
+                    mQuality = Float.parseFloat(value);
+                    break;
+                case "--band-memory":
+                    mBandMemory = parsePositive(name, value);
+                    break;
+                case "--threads":
+                    mThreadCount = parsePositive(name, value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + name);
+            }
+            i += 2;
+        }
+
+        if (args.length - i != 2) {
+            throw new IllegalArgumentException("Input and output have to be set.");
+        }
+
+        if (mOverlap < 0 || mOverlap >= mTileSize) {
+            throw new IllegalArgumentException("Overlap value cannot be less than 0 or not less than tile size.");
+        }
+
+        if (!isSupportedFormat(mFormat)) {
+            throw new IllegalArgumentException("Unsupported tile format: " + mFormat);
+        }
+
+        mInput = new File(args[i]);
+        mOutput = new File(args[i + 1]);
+    }
+
+    /**
+     * Only the formats ZIVImageView can decode, webp also needs a writer plugin.
+     */
+    private static boolean isSupportedFormat(String format) {
+        switch (format) {
+            case "jpg":
+            case "jpeg":
+            case "png":
+                return true;
+            case "webp":
+                return ImageIO.getImageWritersByFormatName(format).hasNext();
+            default:
+                return false;
+        }
+    }
+
+    private static int parsePositive(String name, String value) {
+        final int ret = Integer.parseInt(value);
+        if (ret < 1) {
+            throw new IllegalArgumentException(name + " value cannot be less than 1.");
+        }
+        return ret;
+    }
+
+    private void run() throws IOException {
+        if (!mOutput.isDirectory() && !mOutput.mkdirs()) {
+            throw new IOException("Directory cannot be created: " + mOutput);
+        }
+
+        String name = mInput.getName();
+        if (name.lastIndexOf('.') > 0) {
+            name = name.substring(0, name.lastIndexOf('.'));
+        }
+
+        final long startTime = System.currentTimeMillis();
+
+        final int tileCount;
+        try (ZIVTileWriter writer = mIsPacked ? new ZIVPackedTileWriter(mOutput, name) :
+                new ZIVDirectoryTileWriter(mOutput, name)) {
+            tileCount = slice(writer);
+            writer.finish();
+        }
+
+        System.out.println("tiles=" + tileCount + " time_ms=" + (System.currentTimeMillis() - startTime));
+    }
+
+    private int slice(ZIVTileWriter writer) throws IOException {
+        final ImageInputStream stream = ImageIO.createImageInputStream(mInput);
+        if (stream == null) {
+            throw new IOException("Input cannot be opened: " + mInput);
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool(mThreadCount);
+
+        try {
+            final Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+            if (!readers.hasNext()) {
+                throw new IOException("Unsupported input format: " + mInput);
+            }
+
+            final ImageReader reader = readers.next();
+
+            try {
+                reader.setInput(stream, false, true);
+
+                final int width = reader.getWidth(0);
+                final int height = reader.getHeight(0);
+
+                final ZIVPyramidInfo info = new ZIVPyramidInfo(width, height, mTileSize, mOverlap, mFormat);
+                writer.begin(info);
+
+                final ZIVPyramidBuilder builder = new ZIVPyramidBuilder(info, writer, pool, mQuality);
+
+                final long bandMemory = mBandMemory > 0 ? mBandMemory * 1024L * 1024L :
+                        Runtime.getRuntime().maxMemory() / DEFAULT_BAND_MEMORY_DIVIDER;
+
+                final int bandHeight = (int) Math.max(1, Math.min(height, bandMemory / (width * 4L)));
+                final int[] pixels = new int[width * Math.min(bandHeight, ROWS_PER_CHUNK)];
+
+                for (int y = 0; y < height; y += bandHeight) {
+                    final int rowCount = Math.min(bandHeight, height - y);
+
+                    final ImageReadParam param = reader.getDefaultReadParam();
+                    param.setSourceRegion(new Rectangle(0, y, width, rowCount));
+
+                    final BufferedImage band = reader.read(0, param);
+
+                    // The band is passed in chunks, so it is the only copy of its rows.
+                    for (int row = 0; row < rowCount; row += ROWS_PER_CHUNK) {
+                        final int chunkRowCount = Math.min(ROWS_PER_CHUNK, rowCount - row);
+
+                        band.getRGB(0, row, width, chunkRowCount, pixels, 0, width);
+                        builder.addRows(pixels, chunkRowCount);
+                    }
+                }
+
+                return builder.finish();
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            pool.shutdown();
+            stream.close();
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package ru.astrocode.ziv.tiler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class ZIVPyramidBuilderTest {
+    private static final int WIDTH = 10, HEIGHT = 7;
+    private static final int TILE_SIZE = 4, OVERLAP = 1;
+
+    private ForkJoinPool mPool;
+
+    @Before
+    public void setUp() {
+        mPool = new ForkJoinPool(2);
+    }
+
+    @After
+    public void tearDown() {
+        mPool.shutdownNow();
+    }
+
+    @Test
+    public void edgeTiles_areClippedWithOverlap() throws IOException {
+        final ZIVPyramidInfo info = new ZIVPyramidInfo(WIDTH, HEIGHT, TILE_SIZE, OVERLAP, "png");
+        final RecordingWriter writer = new RecordingWriter();
+
+        final int tileCount = build(info, writer, 3);
+
+        int expectedCount = 0;
+        for (int level = 0; level <= info.getMaxLevel(); level++) {
+            expectedCount += info.getColumnCount(level) * info.getRowCount(level);
+
+            for (int row = 0; row < info.getRowCount(level); row++) {
+                for (int column = 0; column < info.getColumnCount(level); column++) {
+                    final BufferedImage tile = writer.getTile(level, column, row);
+
+                    final int x0 = Math.max(0, column * TILE_SIZE - OVERLAP);
+                    final int x1 = Math.min(info.getLevelWidth(level), (column + 1) * TILE_SIZE + OVERLAP);
+                    final int y0 = Math.max(0, row * TILE_SIZE - OVERLAP);
+                    final int y1 = Math.min(info.getLevelHeight(level), (row + 1) * TILE_SIZE + OVERLAP);
+
+                    assertEquals(x1 - x0, tile.getWidth());
+                    assertEquals(y1 - y0, tile.getHeight());
+                }
+            }
+        }
+
+        assertEquals(expectedCount, tileCount);
+        assertEquals(expectedCount, writer.mTiles.size());
+
+        final int maxLevel = info.getMaxLevel();
+
+        // Columns 0..5, 3..9, 7..10 and rows 0..5, 3..7 of the full resolution level.
+        assertEquals(5, writer.getTile(maxLevel, 0, 0).getWidth());
+        assertEquals(6, writer.getTile(maxLevel, 1, 0).getWidth());
+        assertEquals(3, writer.getTile(maxLevel, 2, 0).getWidth());
+        assertEquals(5, writer.getTile(maxLevel, 0, 0).getHeight());
+        assertEquals(4, writer.getTile(maxLevel, 0, 1).getHeight());
+    }
+
+    @Test
+    public void maxLevelTiles_containSourcePixels() throws IOException {
+        final ZIVPyramidInfo info = new ZIVPyramidInfo(WIDTH, HEIGHT, TILE_SIZE, OVERLAP, "png");
+        final RecordingWriter writer = new RecordingWriter();
+
+        build(info, writer, 2);
+
+        final int level = info.getMaxLevel();
+
+        for (int row = 0; row < info.getRowCount(level); row++) {
+            for (int column = 0; column < info.getColumnCount(level); column++) {
+                final BufferedImage tile = writer.getTile(level, column, row);
+
+                final int x0 = Math.max(0, column * TILE_SIZE - OVERLAP);
+                final int y0 = Math.max(0, row * TILE_SIZE - OVERLAP);
+
+                for (int y = 0; y < tile.getHeight(); y++) {
+                    for (int x = 0; x < tile.getWidth(); x++) {
+                        assertEquals(pixel(x0 + x, y0 + y), tile.getRGB(x, y));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void coarserLevel_averagesPixels() throws IOException {
+        final ZIVPyramidInfo info = new ZIVPyramidInfo(WIDTH, HEIGHT, TILE_SIZE, OVERLAP, "png");
+        final RecordingWriter writer = new RecordingWriter();
+
+        build(info, writer, HEIGHT);
+
+        final BufferedImage tile = writer.getTile(info.getMaxLevel() - 1, 0, 0);
+        final int expected = average(pixel(0, 0), pixel(1, 0), pixel(0, 1), pixel(1, 1));
+
+        assertEquals(expected, tile.getRGB(0, 0));
+    }
+
+    @Test(expected = IOException.class)
+    public void writeFailure_isRethrownAsIOException() throws IOException {
+        final ZIVPyramidInfo info = new ZIVPyramidInfo(WIDTH, HEIGHT, TILE_SIZE, OVERLAP, "png");
+
+        build(info, new ZIVTileWriter() {
+            @Override
+            public void begin(ZIVPyramidInfo info) {
+            }
+
+            @Override
+            public void writeTile(int level, int column, int row, byte[] data) throws IOException {
+                throw new IOException("Disk is full.");
+            }
+
+            @Override
+            public void finish() {
+            }
+
+            @Override
+            public void close() {
+            }
+        }, HEIGHT);
+    }
+
+    private int build(ZIVPyramidInfo info, ZIVTileWriter writer, int bandHeight) throws IOException {
+        writer.begin(info);
+
+        final ZIVPyramidBuilder builder = new ZIVPyramidBuilder(info, writer, mPool, 1f);
+        final int[] pixels = new int[WIDTH * bandHeight];
+
+        for (int y = 0; y < HEIGHT; y += bandHeight) {
+            final int rowCount = Math.min(bandHeight, HEIGHT - y);
+
+            for (int i = 0; i < rowCount; i++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    pixels[i * WIDTH + x] = pixel(x, y + i);
+                }
+            }
+
+            builder.addRows(pixels, rowCount);
+        }
+
+        return builder.finish();
+    }
+
+    private static int pixel(int x, int y) {
+        return 0xFF000000 | (x * 20) << 16 | (y * 30) << 8 | (x + y) * 8;
+    }
+
+    private static int average(int... pixels) {
+        int r = 0, g = 0, b = 0;
+
+        for (int pixel : pixels) {
+            r += (pixel >> 16) & 0xFF;
+            g += (pixel >> 8) & 0xFF;
+            b += pixel & 0xFF;
+        }
+
+        return 0xFF000000 | (r / pixels.length) << 16 | (g / pixels.length) << 8 | b / pixels.length;
+    }
+
+    private static final class RecordingWriter implements ZIVTileWriter {
+        final Map<String, byte[]> mTiles = new HashMap<>();
+
+        @Override
+        public void begin(ZIVPyramidInfo info) {
+        }
+
+        @Override
+        public synchronized void writeTile(int level, int column, int row, byte[] data) {
+            mTiles.put(level + "/" + column + "_" + row, data);
+        }
+
+        @Override
+        public void finish() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        synchronized BufferedImage getTile(int level, int column, int row) throws IOException {
+            final byte[] data = mTiles.get(level + "/" + column + "_" + row);
+            assertNotNull("Missing tile " + level + "/" + column + "_" + row, data);
+
+            return ImageIO.read(new ByteArrayInputStream(data));
+        }
+    }
+}
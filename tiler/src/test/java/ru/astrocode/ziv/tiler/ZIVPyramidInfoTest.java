@@ -0,0 +1,60 @@
+package ru.astrocode.ziv.tiler;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ZIVPyramidInfoTest {
+
+    @Test
+    public void levels_halveRoundedUp() {
+        final ZIVPyramidInfo info = new ZIVPyramidInfo(1000, 600, 254, 1, "jpg");
+
+        assertEquals(10, info.getMaxLevel());
+        assertEquals(11, info.getLevelCount());
+
+        assertEquals(1000, info.getLevelWidth(10));
+        assertEquals(600, info.getLevelHeight(10));
+        assertEquals(500, info.getLevelWidth(9));
+        assertEquals(300, info.getLevelHeight(9));
+        assertEquals(125, info.getLevelWidth(7));
+        assertEquals(75, info.getLevelHeight(7));
+        assertEquals(2, info.getLevelWidth(1));
+        assertEquals(2, info.getLevelHeight(1));
+        assertEquals(1, info.getLevelWidth(0));
+        assertEquals(1, info.getLevelHeight(0));
+    }
+
+    @Test
+    public void maxLevel_powerOfTwoBoundaries() {
+        assertEquals(0, new ZIVPyramidInfo(1, 1, 254, 1, "jpg").getMaxLevel());
+        assertEquals(1, new ZIVPyramidInfo(2, 1, 254, 1, "jpg").getMaxLevel());
+        assertEquals(10, new ZIVPyramidInfo(1024, 1024, 254, 1, "jpg").getMaxLevel());
+        assertEquals(11, new ZIVPyramidInfo(1025, 1, 254, 1, "jpg").getMaxLevel());
+        assertEquals(11, new ZIVPyramidInfo(1, 1025, 254, 1, "jpg").getMaxLevel());
+    }
+
+    @Test
+    public void columnsAndRows_coverLevel() {
+        final ZIVPyramidInfo info = new ZIVPyramidInfo(1000, 600, 254, 1, "jpg");
+
+        assertEquals(4, info.getColumnCount(10));
+        assertEquals(3, info.getRowCount(10));
+        assertEquals(2, info.getColumnCount(9));
+        assertEquals(2, info.getRowCount(9));
+        assertEquals(1, info.getColumnCount(8));
+        assertEquals(1, info.getRowCount(8));
+        assertEquals(1, info.getColumnCount(0));
+        assertEquals(1, info.getRowCount(0));
+    }
+
+    @Test
+    public void columnsAndRows_exactMultipleOfTileSize() {
+        final ZIVPyramidInfo info = new ZIVPyramidInfo(512, 256, 256, 0, "png");
+
+        assertEquals(2, info.getColumnCount(info.getMaxLevel()));
+        assertEquals(1, info.getRowCount(info.getMaxLevel()));
+        assertEquals(1, info.getColumnCount(info.getMaxLevel() - 1));
+        assertEquals(1, info.getRowCount(info.getMaxLevel() - 1));
+    }
+}